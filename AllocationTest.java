@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import static enigma.TestUtils.*;
+
+/** Checks that the conversion paths allocate nothing per character once
+ *  warmed up.  Allocation is measured per thread with
+ *  com.sun.management.ThreadMXBean.
+ *  @author
+ */
+public class AllocationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Number of characters converted per measurement. */
+    private static final int CHARS = 1 << 20;
+
+    /** Number of untimed rounds before measuring. */
+    private static final int WARMUP = 5;
+
+    /** Bytes a measured run may allocate whatever its length: the
+     *  measurement itself and the occasional allocation of the harness. */
+    private static final long SMALL_SLACK = 4096;
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+    private static final String PLUGS = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** Sink for results, so the work is not optimized away. */
+    private int _sink;
+
+    /** Return the bytes allocated so far by the current thread. */
+    private static long allocated() {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Run BODY WARMUP times, then once more, asserting that the last run
+     *  allocated no more than SMALL_SLACK bytes in all, however many
+     *  characters it converted.  TESTID identifies the test. */
+    private void checkAllocationFree(String testId, Runnable body) {
+        for (int i = 0; i < WARMUP; i += 1) {
+            body.run();
+        }
+        long before = allocated();
+        body.run();
+        long bytes = allocated() - before;
+        assertTrue(msg(testId, "allocated %d bytes for %d characters",
+                       bytes, CHARS),
+                   bytes <= SMALL_SLACK);
+    }
+
+    @Test
+    public void singleCharacter() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGS);
+        checkAllocationFree("Machine.convert(int)", () -> {
+            for (int i = 0; i < CHARS; i += 1) {
+                _sink += m.convert(i % 26);
+            }
+        });
+    }
+
+    @Test
+    public void bulk() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGS);
+        int[] buf = new int[4096];
+        checkAllocationFree("Machine.convert(int[])", () -> {
+            for (int done = 0; done < CHARS; done += buf.length) {
+                m.convert(buf, 0, buf.length);
+            }
+        });
+    }
+
+    @Test
+    public void streaming() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGS);
+        char[] src = new char[4096], dst = new char[4096];
+        for (int i = 0; i < src.length; i += 1) {
+            src[i] = "Hiawatha shoulder".charAt(i % 17);
+        }
+        checkAllocationFree("Machine.convert(char[])", () -> {
+            for (int done = 0; done < CHARS; done += src.length) {
+                _sink += m.convert(src, 0, src.length, dst, 0);
+            }
+        });
+    }
+
+    @Test
+    public void keystream() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGS);
+        Keystream schedule = new Keystream(m, 512);
+        checkAllocationFree("Keystream", () -> {
+            for (int done = 0; done < CHARS; done += 1024) {
+                m.useKeystream(schedule);
+                for (int i = 0; i < 1024; i += 1) {
+                    _sink += m.convert(i % 26);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void permutationAndRotors() {
+        Permutation perm = new Permutation(NAVALA.get("I"), UPPER);
+        Rotor rotor = new MovingRotor("I", perm, "Q");
+        checkAllocationFree("Permutation and Rotor", () -> {
+            for (int i = 0; i < CHARS; i += 1) {
+                rotor.advance();
+                _sink += perm.permute(i) + perm.invert(i)
+                    + rotor.convertForward(i % 26)
+                    + rotor.convertBackward(i % 26)
+                    + (rotor.atNotch() ? 1 : 0);
+            }
+        });
+    }
+
+    @Test
+    public void compiledPaths() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGS);
+        Wiring wiring = new Wiring(m);
+        int[] settings = m.settings();
+        EnigmaEngine conv = Specializer.specialize(m);
+        checkAllocationFree("Wiring and Specializer", () -> {
+            for (int i = 0; i < CHARS; i += 1) {
+                wiring.step(settings);
+                _sink += wiring.convert(settings, i % 26)
+                    + conv.convert(i % 26);
+            }
+        });
+        int[][] lanes = new int[16][];
+        for (int j = 0; j < lanes.length; j += 1) {
+            lanes[j] = m.settings();
+        }
+        BatchConverter batch = new BatchConverter(wiring, lanes);
+        int[] msg = new int[256];
+        int[][] out = new int[lanes.length][msg.length];
+        checkAllocationFree("BatchConverter", () -> {
+            for (int done = 0; done < CHARS; done += msg.length * 16) {
+                batch.convert(msg, 0, msg.length, out);
+            }
+        });
+    }
+
+    /** The keys checked all have one rotor order, whose wiring
+     *  KeyVerifier builds once, on the first check. */
+    @Test
+    public void keyVerifier() {
+        KeySpace keys = new KeySpace(new Machine(UPPER, 5, 3,
+                                                 navalRotors()));
+        KeyVerifier verifier = new KeyVerifier(keys, new int[200]);
+        int[] crib = new int[20];
+        double[] scores = new double[26];
+        scores[0] = 1;
+        checkAllocationFree("KeyVerifier", () -> {
+            for (int i = 0; i < CHARS; i += 1) {
+                long key = i % keys.positions();
+                if (verifier.matchesCrib(key, null, crib, 10)
+                    || verifier.score(key, null, scores, 150) > 0) {
+                    _sink += 1;
+                }
+            }
+        });
+    }
+
+}
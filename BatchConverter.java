@@ -0,0 +1,177 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Converts one message under many independent starting settings of the
+ *  same Wiring at once, as needed when searching for or verifying keys.
+ *  Each starting setting occupies a lane.  The state of all lanes is held
+ *  slot by slot in flat arrays (one entry per lane), and every pass of the
+ *  conversion is a loop over lanes.  Those loops are table lookups, which
+ *  the JIT does not vectorize, so when the module jdk.incubator.vector is
+ *  present they are done by VectorLanes, several lanes per instruction;
+ *  otherwise, they are the plain loops here.
+ *  @author Jennifer Hu
+ */
+class BatchConverter {
+
+    /** True iff the module jdk.incubator.vector is present (it must be
+     *  added with --add-modules), so that lanes may be converted with
+     *  the Vector API. */
+    static final boolean VECTORS =
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** A converter for WIRING with one lane for each entry of SETTINGS,
+     *  each in the form returned by Machine.settings(), using the Vector
+     *  API if it is present. */
+    BatchConverter(Wiring wiring, int[][] settings) {
+        this(wiring, settings, true);
+    }
+
+    /** A converter for WIRING with one lane for each entry of SETTINGS,
+     *  each in the form returned by Machine.settings(), using the Vector
+     *  API iff VECTORS is true and it is present. */
+    BatchConverter(Wiring wiring, int[][] settings, boolean vectors) {
+        _wiring = wiring;
+        _lanes = settings.length;
+        int n = wiring.numRotors();
+        boolean vectorize = vectors && VECTORS;
+        int width = vectorize ? VectorLanes.width() : 1;
+        _posn = new int[n][(_lanes + width - 1) / width * width];
+        _steps = new boolean[n][_lanes];
+        _signal = new int[_lanes];
+        for (int j = 0; j < _lanes; j += 1) {
+            if (settings[j].length != n) {
+                throw error("lane %d has the wrong number of settings", j);
+            }
+            for (int i = 0; i < n; i += 1) {
+                _posn[i][j] = settings[j][i];
+            }
+        }
+        _vectors = vectorize ? new VectorLanes(wiring, _lanes) : null;
+    }
+
+    /** Return true iff I convert with the Vector API. */
+    boolean vectorized() {
+        return _vectors != null;
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the current settings of LANE, in the form returned by
+     *  Machine.settings(). */
+    int[] settings(int lane) {
+        int[] result = new int[_wiring.numRotors()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _posn[i][lane];
+        }
+        return result;
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF (as indices)
+     *  in every lane, advancing each lane as a Machine would, and store
+     *  the result for lane j at OUT[j][OFF..OFF+LEN-1]. */
+    void convert(int[] msg, int off, int len, int[][] out) {
+        if (_vectors != null) {
+            _vectors.convert(msg, off, len, out, _posn);
+            return;
+        }
+        for (int t = off; t < off + len; t += 1) {
+            step();
+            int c = msg[t];
+            for (int j = 0; j < _lanes; j += 1) {
+                _signal[j] = c;
+            }
+            pass();
+            for (int j = 0; j < _lanes; j += 1) {
+                out[j][t] = _signal[j];
+            }
+        }
+    }
+
+    /** Advance every lane one keypress. */
+    private void step() {
+        int last = _wiring.numRotors() - 1;
+        int size = _wiring.size();
+        boolean[] stepsLast = _steps[last];
+        boolean rotatesLast = _wiring.rotates(last);
+        for (int j = 0; j < _lanes; j += 1) {
+            stepsLast[j] = rotatesLast;
+        }
+        for (int i = last; i > 1; i -= 1) {
+            int[] posn = _posn[i];
+            boolean[] steps = _steps[i], stepsPrev = _steps[i - 1];
+            boolean self = _wiring.rotates(i),
+                prev = _wiring.rotates(i - 1);
+            for (int j = 0; j < _lanes; j += 1) {
+                boolean notched = _wiring.atNotch(i, posn[j]);
+                steps[j] |= notched && self;
+                stepsPrev[j] = notched && prev;
+            }
+        }
+        for (int i = last; i > 0; i -= 1) {
+            int[] posn = _posn[i];
+            boolean[] steps = _steps[i];
+            for (int j = 0; j < _lanes; j += 1) {
+                if (steps[j]) {
+                    posn[j] = posn[j] + 1 == size ? 0 : posn[j] + 1;
+                }
+            }
+        }
+    }
+
+    /** Send _signal through the plugboard and the rotors in every lane. */
+    private void pass() {
+        int n = _wiring.numRotors();
+        gather(_wiring.plugboard());
+        for (int i = n - 1; i >= 0; i -= 1) {
+            shift(_wiring.forward(i), _posn[i]);
+        }
+        for (int i = 1; i < n; i += 1) {
+            shift(_wiring.backward(i), _posn[i]);
+        }
+        gather(_wiring.plugboard());
+    }
+
+    /** Replace each lane of _signal by its image under TABLE. */
+    private void gather(int[] table) {
+        for (int j = 0; j < _lanes; j += 1) {
+            _signal[j] = table[_signal[j]];
+        }
+    }
+
+    /** Replace each lane j of _signal by its image under TABLE as seen by
+     *  a rotor at setting POSN[j]. */
+    private void shift(int[] table, int[] posn) {
+        int size = _wiring.size();
+        for (int j = 0; j < _lanes; j += 1) {
+            int v = _signal[j] + posn[j];
+            v = v >= size ? v - size : v;
+            v = table[v] - posn[j];
+            _signal[j] = v < 0 ? v + size : v;
+        }
+    }
+
+    /** The wiring shared by all lanes. */
+    private final Wiring _wiring;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** _posn[i][j] is the setting of slot i in lane j. */
+    private final int[][] _posn;
+
+    /** _steps[i][j] is true iff slot i of lane j advances on the current
+     *  keypress. */
+    private final boolean[][] _steps;
+
+    /** The signal being converted in each lane. */
+    private final int[] _signal;
+
+    /** The lane loops using the Vector API, or null if they are not
+     *  used. */
+    private final VectorLanes _vectors;
+
+}
@@ -0,0 +1,75 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchConverter class.
+ *  @author
+ */
+public class BatchConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void lanesMatchMachine() {
+        for (int lanes : new int[] { 1, 37 }) {
+            check(lanes, false);
+        }
+    }
+
+    /** Lane counts around the vector width exercise both whole and
+     *  masked partial groups of lanes. */
+    @Test
+    public void vectorLanesMatchMachine() {
+        for (int lanes : new int[] { 1, 3, 16, 37, 64 }) {
+            check(lanes, true);
+        }
+    }
+
+    /** Check that a BatchConverter of LANES random lanes, using the
+     *  Vector API iff VECTORS and it is present, converts every lane as
+     *  a Machine does. */
+    private static void check(int lanes, boolean vectors) {
+        String[] rotors = {"B", "Beta", "VI", "II", "VIII"};
+        String plugs = "(HQ) (EX) (IP) (TR) (BY)";
+        Random rand = new Random(61 + lanes);
+        int len = 2000;
+        String[] starts = new String[lanes];
+        int[][] settings = new int[lanes][];
+        for (int j = 0; j < lanes; j += 1) {
+            starts[j] = "";
+            for (int k = 0; k < 4; k += 1) {
+                starts[j] += UPPER_STRING.charAt(rand.nextInt(26));
+            }
+            settings[j] = navalMachine(rotors, starts[j], plugs).settings();
+        }
+        Machine template = navalMachine(rotors, "AAAA", plugs);
+        BatchConverter batch =
+            new BatchConverter(new Wiring(template), settings, vectors);
+        assertEquals(vectors && BatchConverter.VECTORS, batch.vectorized());
+        int[] msg = new int[len];
+        for (int t = 0; t < len; t += 1) {
+            msg[t] = rand.nextInt(26);
+        }
+        int[][] out = new int[lanes][len];
+        batch.convert(msg, 0, len / 2, out);
+        batch.convert(msg, len / 2, len - len / 2, out);
+        for (int j = 0; j < lanes; j += 1) {
+            Machine m = navalMachine(rotors, starts[j], plugs);
+            for (int t = 0; t < len; t += 1) {
+                assertEquals(msg("lane", "%d of %d at %d", j, lanes, t),
+                             m.convert(msg[t]), out[j][t]);
+            }
+            assertArrayEquals(m.settings(), batch.settings(j));
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The alphabet of the 256 byte values, for enciphering binary data.  The
+ *  character of index i is the char with code i, so that a byte b is the
+ *  symbol of index b & 0xff.  In configuration files and setting lines,
+ *  symbols of this alphabet are written as pairs of hexadecimal digits,
+ *  cycles as "(0a1b2c) (ff00)" and the alphabet itself as BYTES.
+ *  @author Jennifer Hu
+ */
+class ByteAlphabet extends Alphabet {
+
+    /** The name of this alphabet in configuration files. */
+    static final String NAME = "BYTES";
+
+    /** Pattern matching a token of cycles in hexadecimal. */
+    static final String CYCLES = "([(]([0-9a-fA-F]{2})+[)])+";
+
+    @Override
+    int size() {
+        return SIZE;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        return ch < SIZE;
+    }
+
+    @Override
+    char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("character index out of range");
+        }
+        return (char) index;
+    }
+
+    @Override
+    int toInt(char ch) {
+        if (ch >= SIZE) {
+            throw error("character out of range");
+        }
+        return ch;
+    }
+
+    /** Return the symbols written in hexadecimal as HEX, as a string of
+     *  characters of this alphabet. */
+    static String symbols(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("odd number of hexadecimal digits: %s", hex);
+        }
+        char[] result = new char[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16),
+                lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hexadecimal symbol in %s", hex);
+            }
+            result[i] = (char) (hi * 16 + lo);
+        }
+        return new String(result);
+    }
+
+    /** Return the cycles written in hexadecimal in TEXT, in the form
+     *  "(0a1b2c) (ff00) ...", as arrays of symbol indices. */
+    static int[][] cycles(String text) {
+        String[] parts = text.replace("(", " ").replace(")", " ").trim()
+            .split("\\s+");
+        if (parts.length == 1 && parts[0].isEmpty()) {
+            return new int[0][];
+        }
+        int[][] result = new int[parts.length][];
+        for (int i = 0; i < parts.length; i += 1) {
+            String symbols = symbols(parts[i]);
+            result[i] = new int[symbols.length()];
+            for (int j = 0; j < result[i].length; j += 1) {
+                result[i][j] = symbols.charAt(j);
+            }
+        }
+        return result;
+    }
+
+    /** Number of symbols. */
+    static final int SIZE = 256;
+
+}
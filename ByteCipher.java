@@ -0,0 +1,375 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Enciphers binary data with a machine over a ByteAlphabet, each byte
+ * being one symbol.  Data passes through direct ByteBuffers, or from a
+ * file by FileChannel.transferTo into a channel that converts what it
+ * is given (see ConvertingChannel), and is never decoded into
+ * characters.  As with letters, the same setting deciphers what it
+ * enciphered.
+ *
+ * @author Jennifer Hu
+ */
+public final class ByteCipher {
+
+    /**
+     * Convert or benchmark, as specified by ARGS:
+     *     [--engine=NAME] CONFIG SETTING [INPUT [OUTPUT]]
+     *         converts the file INPUT (default the standard input) into
+     *         the file OUTPUT (default the standard output) with the
+     *         machine described by configuration file CONFIG, whose
+     *         alphabet must be BYTES, set up by the setting line SETTING
+     *         (as for Main, with positions and plugboard in hexadecimal,
+     *         such as "* A F1 R1 R2 R3 00a1ff (0a1b)").  An input that
+     *         is gzip-compressed is decompressed, and an OUTPUT whose
+     *         name ends in .gz is compressed (see Gzip).
+     *     --bench=MB [--engine=NAME] [--target=MBPS] CONFIG SETTING
+     *         converts MB megabytes of random data from and to temporary
+     *         files with the engine NAME (default each of reference,
+     *         table and specialized in turn) and reports the throughput;
+     *         it is an error if it is below MBPS megabytes per second.
+     *     --generate=SEED
+     *         prints a configuration with random wirings for BYTES,
+     *         with reflectors A and B, fixed rotor F1 and moving rotors
+     *         R1-R8, five slots and three pawls.
+     */
+    public static void main(String... args) {
+        try {
+            String engine = null;
+            long bench = 0;
+            double target = 0;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--engine":
+                    engine = opt[1];
+                    break;
+                case "--bench":
+                    bench = Long.parseLong(opt[1]);
+                    break;
+                case "--target":
+                    target = Double.parseDouble(opt[1]);
+                    break;
+                case "--generate":
+                    System.out.print(randomConfig(Long.parseLong(opt[1])));
+                    return;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            int left = args.length - first;
+            if (left < 2 || left > 4 || bench > 0 && left != 2) {
+                throw error("usage: ByteCipher [options] CONFIG SETTING "
+                            + "[INPUT [OUTPUT]]");
+            }
+            Machine config = ConfigReader.read(args[first]);
+            String setting = args[first + 1];
+            if (bench > 0) {
+                bench(config, setting, engine, bench << 20, target);
+                return;
+            }
+            try (ReadableByteChannel in = left > 2
+                     ? input(new File(args[first + 2]))
+                     : Channels.newChannel(Gzip.input(System.in));
+                 WritableByteChannel out = left > 3
+                     ? output(new File(args[first + 3]))
+                     : Channels.newChannel(System.out)) {
+                Machine M = setUp(config, setting);
+                EnigmaEngine e = Engines.create(
+                    engine == null ? "auto" : engine, M,
+                    in instanceof FileChannel ? ((FileChannel) in).size()
+                    : Long.MAX_VALUE);
+                convert(e, in, out);
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return a channel reading FILE, decompressing it if it is
+     * gzip-compressed, and otherwise a FileChannel, from which data can
+     * be transferred directly.
+     */
+    static ReadableByteChannel input(File file) throws IOException {
+        if (Gzip.compressed(file)) {
+            return Channels.newChannel(Gzip.input(file));
+        }
+        return new FileInputStream(file).getChannel();
+    }
+
+    /**
+     * Return a channel writing FILE, compressing what is written if the
+     * name of FILE ends in Gzip.SUFFIX, and otherwise a FileChannel.
+     */
+    static WritableByteChannel output(File file) throws IOException {
+        if (file.getName().endsWith(Gzip.SUFFIX)) {
+            return Channels.newChannel(Gzip.output(file));
+        }
+        return new FileOutputStream(file).getChannel();
+    }
+
+    /**
+     * Return M set up by SETTING, which has the form of a setting line
+     * whose positions and plugboard are in hexadecimal.  M's alphabet
+     * must be a ByteAlphabet.
+     */
+    static Machine setUp(Machine M, String setting) {
+        if (!(M.alphabet() instanceof ByteAlphabet)) {
+            throw error("configuration alphabet is not %s",
+                        ByteAlphabet.NAME);
+        }
+        String[] tokens = setting.trim().split("\\s+");
+        int n = M.numRotors();
+        if (tokens.length < n + 2 || !tokens[0].equals("*")) {
+            throw error("Wrong setting format");
+        }
+        HashSet<String> names = new HashSet<>();
+        String[] rotors = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            rotors[i] = tokens[i + 1];
+            if (!names.add(rotors[i].toUpperCase())) {
+                throw error("Repeated Rotor");
+            }
+        }
+        M.insertRotors(rotors);
+        for (int i = 0; i < n; i += 1) {
+            Rotor r = M.getRotorsList()[i];
+            if (r == null || !r.name().equalsIgnoreCase(rotors[i])) {
+                throw error("no rotor named %s", rotors[i]);
+            }
+        }
+        if (!M.getRotorsList()[0].reflecting()) {
+            throw error("First Rotor should be a reflector");
+        }
+        String positions = ByteAlphabet.symbols(tokens[n + 1]);
+        if (positions.length() != n - 1) {
+            throw error("wrong number of rotor positions");
+        }
+        M.setRotors(positions);
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = n + 2; i < tokens.length; i += 1) {
+            plugboard.append(tokens[i]);
+        }
+        M.setPlugboard(new Permutation(
+            ByteAlphabet.cycles(plugboard.toString()), M.alphabet()));
+        return M;
+    }
+
+    /**
+     * Convert everything from IN to OUT with ENGINE, and return the
+     * number of bytes converted.  A FileChannel is read by transferTo
+     * into a ConvertingChannel; any other channel through a direct
+     * buffer.
+     */
+    static long convert(EnigmaEngine engine, ReadableByteChannel in,
+                        WritableByteChannel out) throws IOException {
+        if (in instanceof FileChannel) {
+            FileChannel file = (FileChannel) in;
+            WritableByteChannel target = new ConvertingChannel(engine, out);
+            long start = file.position(), size = file.size();
+            for (long pos = start; pos < size;
+                 pos += file.transferTo(pos, size - pos, target)) {
+                continue;
+            }
+            file.position(size);
+            return size - start;
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long total = 0;
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            buf.flip();
+            engine.convert(buf.duplicate());
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+            total += n;
+        }
+        return total;
+    }
+
+    /** A channel that converts the bytes written to it and writes the
+     *  results to another channel.  Bytes are copied into a direct
+     *  buffer of its own and converted there, so that the buffers
+     *  written are left unchanged. */
+    static class ConvertingChannel implements WritableByteChannel {
+
+        /** A channel converting with ENGINE into OUT. */
+        ConvertingChannel(EnigmaEngine engine, WritableByteChannel out) {
+            _engine = engine;
+            _out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            while (src.hasRemaining()) {
+                _buf.clear();
+                ByteBuffer part = src.slice();
+                part.limit(Math.min(part.remaining(), _buf.capacity()));
+                _buf.put(part);
+                src.position(src.position() + part.limit());
+                _buf.flip();
+                _engine.convert(_buf.duplicate());
+                while (_buf.hasRemaining()) {
+                    _out.write(_buf);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _out.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+
+        /** The engine. */
+        private final EnigmaEngine _engine;
+
+        /** Destination of converted bytes. */
+        private final WritableByteChannel _out;
+
+        /** Bytes being converted. */
+        private final ByteBuffer _buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Report the throughput of converting SIZE random bytes from one
+     * temporary file to another with a copy of CONFIG set up by SETTING,
+     * with the engine named ENGINE, or each of the concrete engines if
+     * it is null.  Throw an exception if any is below TARGET megabytes
+     * per second.
+     */
+    private static void bench(Machine config, String setting, String engine,
+                              long size, double target) throws IOException {
+        File in = File.createTempFile("enigma", ".bin"),
+            out = File.createTempFile("enigma", ".out");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        try (FileChannel file = new RandomAccessFile(in, "rw").getChannel()) {
+            SplittableRandom random = new SplittableRandom(size);
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (long left = size; left > 0; left -= buf.limit()) {
+                buf.clear();
+                while (buf.remaining() >= 8) {
+                    buf.putLong(random.nextLong());
+                }
+                buf.flip();
+                buf.limit((int) Math.min(buf.limit(), left));
+                while (buf.hasRemaining()) {
+                    file.write(buf);
+                }
+            }
+        }
+        List<String> names = new ArrayList<>();
+        if (engine != null) {
+            names.add(engine);
+        } else {
+            names.add("reference");
+            names.add("table");
+            if (Specializer.available()) {
+                names.add("specialized");
+            }
+        }
+        double worst = Double.MAX_VALUE;
+        for (String name : names) {
+            EnigmaEngine e = Engines.create(name,
+                                            setUp(config.copy(), setting),
+                                            size);
+            long start = System.nanoTime();
+            try (FileChannel src = new FileInputStream(in).getChannel();
+                 FileChannel dst = new FileOutputStream(out).getChannel()) {
+                convert(e, src, dst);
+                dst.force(false);
+            }
+            double seconds = (System.nanoTime() - start) * 1e-9,
+                rate = size / seconds / (1 << 20);
+            worst = Math.min(worst, rate);
+            System.out.printf("%-12s %d MB in %.2f s  %8.1f MB/s%n", e.name(),
+                              size >> 20, seconds, rate);
+        }
+        in.delete();
+        out.delete();
+        if (worst < target) {
+            throw error("throughput %.1f MB/s is below target %.1f MB/s",
+                        worst, target);
+        }
+    }
+
+    /**
+     * Return the text of a configuration file for BYTES with random
+     * wirings chosen by SEED (see main).
+     */
+    static String randomConfig(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder result = new StringBuilder(ByteAlphabet.NAME)
+            .append("\n5 3\n");
+        for (String name : new String[] { "A", "B" }) {
+            int[] symbols = shuffled(random);
+            result.append(name).append(" R");
+            for (int i = 0; i < symbols.length; i += 2) {
+                result.append(String.format(" (%02x%02x)", symbols[i],
+                                            symbols[i + 1]));
+            }
+            result.append('\n');
+        }
+        for (int k = 0; k <= 8; k += 1) {
+            result.append(k == 0 ? "F1 N" : "R" + k + " M"
+                          + String.format("%02x",
+                                          random.nextInt(ByteAlphabet.SIZE)));
+            result.append(" (");
+            for (int s : shuffled(random)) {
+                result.append(String.format("%02x", s));
+            }
+            result.append(")\n");
+        }
+        return result.toString();
+    }
+
+    /** Return the byte values in an order chosen by RANDOM. */
+    private static int[] shuffled(SplittableRandom random) {
+        int[] result = new int[ByteAlphabet.SIZE];
+        for (int i = 0; i < result.length; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Size of the buffers through which data is converted. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+}
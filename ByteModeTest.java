@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for conversion of bytes over a
+ *  ByteAlphabet.
+ *  @author
+ */
+public class ByteModeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private static final String SETTING = "* B F1 R4 R2 R7 00ff2801 "
+        + "(0a20) (2829) (ff00)";
+
+    /** Return the machine of a random configuration, set up by
+     *  SETTING. */
+    private static Machine machine() {
+        Machine config = new ConfigReader(new Scanner(
+            ByteCipher.randomConfig(61))).read();
+        return ByteCipher.setUp(config, SETTING);
+    }
+
+    /** Return N bytes chosen by SEED. */
+    private static byte[] data(int n, long seed) {
+        byte[] result = new byte[n];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void hexCycles() {
+        ByteAlphabet bytes = new ByteAlphabet();
+        Permutation p = new Permutation(ByteAlphabet.cycles("(0a20) (2829)"),
+                                        bytes);
+        assertEquals(0x20, p.permute(0x0a));
+        assertEquals(0x28, p.permute(0x29));
+        assertEquals(0x41, p.permute(0x41));
+        assertEquals("\u0000\u00ff", ByteAlphabet.symbols("00FF"));
+    }
+
+    @Test
+    public void enginesAgreeAndInvert() {
+        byte[] plain = data(5000, 1);
+        byte[] cipher = plain.clone();
+        Engines.create("reference", machine(), 0).convert(cipher, 0,
+                                                          cipher.length);
+        assertFalse(Arrays.equals(plain, cipher));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(plain.length);
+        direct.put(plain).flip();
+        Engines.create("table", machine(), 0).convert(direct);
+        assertEquals(plain.length, direct.position());
+        byte[] fromDirect = new byte[plain.length];
+        direct.flip();
+        direct.get(fromDirect);
+        assertArrayEquals(cipher, fromDirect);
+
+        if (Specializer.available()) {
+            byte[] special = plain.clone();
+            Engines.create("specialized", machine(), 0)
+                .convert(ByteBuffer.wrap(special));
+            assertArrayEquals(cipher, special);
+        }
+
+        Engines.create("table", machine(), 0).convert(cipher, 0,
+                                                      cipher.length);
+        assertArrayEquals(plain, cipher);
+    }
+
+    @Test
+    public void channels() throws IOException {
+        byte[] plain = data(3 << 20, 2);
+        byte[] expected = plain.clone();
+        Engines.create("table", machine(), 0).convert(expected, 0,
+                                                      expected.length);
+        File in = File.createTempFile("enigma", ".bin");
+        in.deleteOnExit();
+        Files.write(in.toPath(), plain);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel file = FileChannel.open(in.toPath(),
+                                                 StandardOpenOption.READ)) {
+            assertEquals(plain.length,
+                         ByteCipher.convert(Engines.create("table",
+                                                           machine(), 0),
+                                            file, Channels.newChannel(out)));
+        }
+        assertArrayEquals(expected, out.toByteArray());
+
+        out.reset();
+        ByteCipher.convert(Engines.create("table", machine(), 0),
+                           Channels.newChannel(Files.newInputStream(
+                               in.toPath())),
+                           Channels.newChannel(out));
+        assertArrayEquals(expected, out.toByteArray());
+        in.delete();
+    }
+
+}
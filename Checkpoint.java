@@ -0,0 +1,375 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * The persistent progress of a long-running search over a range of work
+ * units (such as key ordinals): the completed subranges, the best results
+ * found so far, and the state of the search's random number generator.
+ *
+ * The file is append-only.  It begins with a magic number and a
+ * fingerprint identifying the search, followed by records of the form
+ *     LENGTH (4 bytes)  PAYLOAD (LENGTH bytes)  CRC32 of PAYLOAD (4 bytes)
+ * where each payload holds the ranges completed since the previous record
+ * (merged, and packed as variable-length deltas), followed by the whole
+ * current list of best results and generator state.  A record is thus
+ * complete in itself, and a record torn by a crash fails its length or
+ * checksum test; when the file is reopened such a tail is discarded, and
+ * only the work it described is repeated.  Records are buffered and
+ * written and forced to disk together, at most once per BATCH completed
+ * ranges or INTERVAL milliseconds.  When the file has grown to several
+ * times the size of its contents, it is rewritten as a single record and
+ * atomically renamed over the original.
+ *
+ * A Checkpoint may be used by several threads at once.
+ *
+ * @author Jennifer Hu
+ */
+class Checkpoint {
+
+    /**
+     * A checkpoint in FILE for the search identified by FINGERPRINT,
+     * resuming its state if FILE exists, and forcing new records to disk
+     * after BATCH completed ranges or INTERVAL milliseconds, whichever
+     * comes first.  It is an error if FILE belongs to another search.
+     */
+    Checkpoint(File file, long fingerprint, int batch, long interval) {
+        _file = file;
+        _fingerprint = fingerprint;
+        _batch = Math.max(1, batch);
+        _interval = interval;
+        try {
+            _channel = new RandomAccessFile(file, "rw").getChannel();
+            if (_channel.size() == 0) {
+                writeHeader(_channel, fingerprint);
+            } else {
+                replay();
+            }
+            _compacted = _channel.size();
+        } catch (IOException excp) {
+            throw error("could not open checkpoint %s: %s", file,
+                        excp.getMessage());
+        }
+        _lastSync = System.currentTimeMillis();
+    }
+
+    /** Return true iff all of the range FROM <= i < TO is completed. */
+    synchronized boolean completed(long from, long to) {
+        if (from >= to) {
+            return true;
+        }
+        Map.Entry<Long, Long> range = _done.floorEntry(from);
+        return range != null && range.getValue() >= to;
+    }
+
+    /** Return the number of units completed. */
+    synchronized long completedCount() {
+        long result = 0;
+        for (Map.Entry<Long, Long> range : _done.entrySet()) {
+            result += range.getValue() - range.getKey();
+        }
+        return result;
+    }
+
+    /** Return the number of disjoint completed ranges. */
+    synchronized int rangeCount() {
+        return _done.size();
+    }
+
+    /**
+     * Record that the range FROM <= i < TO is completed, with KEYS and
+     * SCORES the best results found so far in all completed ranges, and
+     * RNG the state of the search's generator.  The record is durable
+     * once sync() has been called, which this does itself from time to
+     * time.
+     */
+    synchronized void complete(long from, long to, long[] keys,
+                               double[] scores, long rng) {
+        if (keys.length != scores.length) {
+            throw error("results and scores differ in number");
+        }
+        add(_done, from, to);
+        add(_fresh, from, to);
+        _keys = keys.clone();
+        _scores = scores.clone();
+        _rng = rng;
+        _unsynced += 1;
+        if (_unsynced >= _batch
+            || System.currentTimeMillis() - _lastSync >= _interval) {
+            sync();
+        }
+    }
+
+    /** Return the keys of the best results recorded, in the order
+     *  given. */
+    synchronized long[] keys() {
+        return _keys.clone();
+    }
+
+    /** Return the scores of the results of keys(). */
+    synchronized double[] scores() {
+        return _scores.clone();
+    }
+
+    /** Return the recorded generator state (0 if none). */
+    synchronized long rng() {
+        return _rng;
+    }
+
+    /** Write and force to disk everything recorded so far. */
+    synchronized void sync() {
+        if (_unsynced == 0) {
+            return;
+        }
+        try {
+            ByteBuffer record = record(_fresh);
+            while (record.hasRemaining()) {
+                _channel.write(record);
+            }
+            _channel.force(false);
+            _fresh.clear();
+            _unsynced = 0;
+            _lastSync = System.currentTimeMillis();
+            if (_channel.size() > COMPACT_FACTOR * _compacted
+                && _channel.size() > COMPACT_MIN) {
+                compact();
+            }
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s: %s", _file,
+                        excp.getMessage());
+        }
+    }
+
+    /** Sync and close the file. */
+    synchronized void close() {
+        if (_channel.isOpen()) {
+            sync();
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                throw error("could not close checkpoint %s", _file);
+            }
+        }
+    }
+
+    /** Rewrite the file as a single record of my state, replacing the
+     *  original only once the copy is safely on disk. */
+    private void compact() throws IOException {
+        File temp = new File(_file.getPath() + ".tmp");
+        try (FileChannel out =
+             new RandomAccessFile(temp, "rw").getChannel()) {
+            out.truncate(0);
+            writeHeader(out, _fingerprint);
+            ByteBuffer record = record(_done);
+            while (record.hasRemaining()) {
+                out.write(record);
+            }
+            out.force(false);
+        }
+        _channel.close();
+        Files.move(temp.toPath(), _file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        _channel = new RandomAccessFile(_file, "rw").getChannel();
+        _channel.position(_channel.size());
+        _compacted = _channel.size();
+    }
+
+    /** Read the header and all intact records of _channel into my state,
+     *  and discard anything after them. */
+    private void replay() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) _channel.size());
+        while (data.hasRemaining() && _channel.read(data) >= 0) {
+            continue;
+        }
+        data.flip();
+        if (data.remaining() < HEADER_SIZE || data.getLong() != MAGIC) {
+            throw error("%s is not a checkpoint", _file);
+        }
+        if (data.getLong() != _fingerprint) {
+            throw error("checkpoint %s belongs to another search", _file);
+        }
+        long good = data.position();
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= 8) {
+            int length = data.getInt();
+            if (length < 0 || length + 4 > data.remaining()) {
+                break;
+            }
+            ByteBuffer payload = data.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            data.position(data.position() + length);
+            if ((int) crc.getValue() != data.getInt()) {
+                break;
+            }
+            apply(payload);
+            good = data.position();
+        }
+        _channel.truncate(good);
+        _channel.position(good);
+    }
+
+    /** Apply the record payload PAYLOAD to my state. */
+    private void apply(ByteBuffer payload) {
+        long prev = 0;
+        for (long n = getVarLong(payload); n > 0; n -= 1) {
+            long from = prev + getVarLong(payload);
+            long to = from + getVarLong(payload);
+            add(_done, from, to);
+            prev = to;
+        }
+        int n = (int) getVarLong(payload);
+        _keys = new long[n];
+        _scores = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            _keys[i] = payload.getLong();
+            _scores[i] = payload.getDouble();
+        }
+        _rng = payload.getLong();
+    }
+
+    /** Return a complete record of RANGES and my current results and
+     *  generator state, ready to write. */
+    private ByteBuffer record(TreeMap<Long, Long> ranges)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        putVarLong(out, ranges.size());
+        long prev = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            putVarLong(out, range.getKey() - prev);
+            putVarLong(out, range.getValue() - range.getKey());
+            prev = range.getValue();
+        }
+        putVarLong(out, _keys.length);
+        for (int i = 0; i < _keys.length; i += 1) {
+            out.writeLong(_keys[i]);
+            out.writeDouble(_scores[i]);
+        }
+        out.writeLong(_rng);
+        out.writeInt(0);
+        ByteBuffer result = ByteBuffer.wrap(bytes.toByteArray());
+        int length = result.capacity() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(result.array(), 4, length);
+        result.putInt(0, length);
+        result.putInt(4 + length, (int) crc.getValue());
+        return result;
+    }
+
+    /** Write the file header for FINGERPRINT to OUT. */
+    private static void writeHeader(FileChannel out, long fingerprint)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putLong(fingerprint).flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+        out.force(false);
+    }
+
+    /** Add the range FROM <= i < TO to RANGES, merging it with any
+     *  ranges it overlaps or adjoins. */
+    private static void add(TreeMap<Long, Long> ranges, long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        Map.Entry<Long, Long> below = ranges.floorEntry(from);
+        if (below != null && below.getValue() >= from) {
+            from = below.getKey();
+            to = Math.max(to, below.getValue());
+        }
+        for (Map.Entry<Long, Long> next = ranges.ceilingEntry(from);
+             next != null && next.getKey() <= to;
+             next = ranges.ceilingEntry(from)) {
+            to = Math.max(to, next.getValue());
+            ranges.remove(next.getKey());
+        }
+        ranges.put(from, to);
+    }
+
+    /** Write the non-negative X to OUT in 7-bit groups, low first. */
+    private static void putVarLong(DataOutputStream out, long x)
+        throws IOException {
+        while ((x & ~0x7fL) != 0) {
+            out.writeByte((int) (x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte((int) x);
+    }
+
+    /** Read a value written by putVarLong from IN. */
+    private static long getVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Identifies checkpoint files. */
+    private static final long MAGIC = 0x454e49474d43504bL;
+
+    /** Size of the file header. */
+    private static final int HEADER_SIZE = 16;
+
+    /** The file is compacted when it grows to this many times its size
+     *  after the last compaction, and to at least COMPACT_MIN bytes. */
+    private static final int COMPACT_FACTOR = 4, COMPACT_MIN = 1 << 16;
+
+    /** The checkpoint file. */
+    private final File _file;
+
+    /** Fingerprint of the search. */
+    private final long _fingerprint;
+
+    /** Completed ranges per forced write, and longest time between
+     *  forced writes in milliseconds. */
+    private final int _batch;
+    private final long _interval;
+
+    /** Open channel to _file, positioned at its end. */
+    private FileChannel _channel;
+
+    /** Size of _file after it was opened or last compacted. */
+    private long _compacted;
+
+    /** All completed ranges, as a map from start to end. */
+    private final TreeMap<Long, Long> _done = new TreeMap<>();
+
+    /** Ranges completed since the last forced write. */
+    private final TreeMap<Long, Long> _fresh = new TreeMap<>();
+
+    /** Number of completed ranges recorded since the last forced write. */
+    private int _unsynced;
+
+    /** Time of the last forced write. */
+    private long _lastSync;
+
+    /** Best results and their scores. */
+    private long[] _keys = new long[0];
+    private double[] _scores = new double[0];
+
+    /** Generator state. */
+    private long _rng;
+
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class and resumed
+ *  KeySearches.
+ *  @author
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return a new, empty temporary file. */
+    private static File tempFile() throws IOException {
+        File result = File.createTempFile("enigma", ".ckpt");
+        result.delete();
+        result.deleteOnExit();
+        return result;
+    }
+
+    @Test
+    public void recordsAndResumes() throws IOException {
+        File file = tempFile();
+        Checkpoint cp = new Checkpoint(file, 42, 2, 60_000);
+        cp.complete(0, 10, new long[] {7}, new double[] {-1.5}, 99);
+        cp.complete(20, 30, new long[] {7, 25}, new double[] {-1.5, -2},
+                    99);
+        cp.complete(10, 20, new long[] {7, 25}, new double[] {-1.5, -2},
+                    99);
+        assertEquals(1, cp.rangeCount());
+        cp.close();
+
+        cp = new Checkpoint(file, 42, 2, 60_000);
+        assertTrue(cp.completed(0, 30));
+        assertFalse(cp.completed(25, 31));
+        assertEquals(30, cp.completedCount());
+        assertArrayEquals(new long[] {7, 25}, cp.keys());
+        assertArrayEquals(new double[] {-1.5, -2}, cp.scores(), 0);
+        assertEquals(99, cp.rng());
+        cp.close();
+    }
+
+    @Test
+    public void discardsTornRecord() throws IOException {
+        File file = tempFile();
+        Checkpoint cp = new Checkpoint(file, 42, 1, 60_000);
+        cp.complete(0, 10, new long[0], new double[0], 1);
+        long intact = file.length();
+        cp.complete(50, 60, new long[0], new double[0], 2);
+        cp.close();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+
+        cp = new Checkpoint(file, 42, 1, 60_000);
+        assertEquals(intact, file.length());
+        assertTrue(cp.completed(0, 10));
+        assertFalse(cp.completed(50, 60));
+        assertEquals(1, cp.rng());
+        cp.close();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsOtherSearch() throws IOException {
+        File file = tempFile();
+        new Checkpoint(file, 42, 1, 60_000).close();
+        new Checkpoint(file, 43, 1, 60_000);
+    }
+
+    @Test
+    public void resumedSearchMatchesUninterrupted() throws IOException {
+        Machine config = new Machine(UPPER, 3, 2, navalRotors());
+        KeySpace keys = new KeySpace(config);
+        Machine m = navalMachine(new String[] {"B", "IV", "II"}, "QE", "");
+        int[] cipher = KeySearch.indices(UPPER,
+            m.convert("THEREISNOTHINGLIKELOOKINGIFYOUWANTTOFINDSOMETHING"));
+
+        KeySearch whole = new KeySearch(keys, cipher, null, 0, 5, 1000);
+        List<KeySearch.Result> expected = whole.run(null, 2, 1, 1000);
+        assertEquals("B IV II QE", keys.describe(expected.get(0).key()));
+
+        File file = tempFile();
+        KeySearch part = new KeySearch(keys, cipher, null, 0, 5, 1000);
+        Checkpoint cp = new Checkpoint(file, part.fingerprint(), 4, 60_000);
+        part.run(cp, 2, 7, 30);
+        cp.close();
+        assertEquals(30 * 1000, part.searched());
+
+        cp = new Checkpoint(file, part.fingerprint(), 4, 60_000);
+        assertEquals(expected, part.run(cp, 3, 8, Long.MAX_VALUE));
+        assertEquals(30 * 1000, part.resumed());
+        assertEquals(keys.size() - 30 * 1000, part.searched());
+        cp.close();
+    }
+
+}
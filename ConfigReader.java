@@ -0,0 +1,186 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Reads machine configurations in the format accepted by Main.
+ *
+ * @author Jennifer Hu
+ */
+class ConfigReader {
+
+    /**
+     * A reader of the configuration read from CONFIG.
+     */
+    ConfigReader(Scanner config) {
+        _config = config;
+    }
+
+    /**
+     * Return a machine configured from the file named NAME, whose rotors
+     * are parsed only as they are used (see RotorCatalog).
+     */
+    static Machine read(String name) {
+        return RotorCatalog.open(name).machine();
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of the
+     * configuration.
+     * "I" indicates its name
+     * "M" indicates it's type, in this case, moving
+     * "Q" indicates its notch position, in this case, at Q only.
+     * (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S) indicates it's cycles
+     * USE READ ROTOR AS HELPER FUNCTION
+     */
+    Machine read() {
+        try {
+            readHeader();
+            while (_config.hasNextLine()) {
+                Rotor addedRotor = readRotor();
+                allrotors.add(addedRotor);
+            }
+            return new Machine(_alphabet, _rotators, _pawls, allrotors);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+
+    }
+
+    /**
+     * Read the alphabet, number of rotors and number of pawls at the
+     * start of the configuration, as read() does, and return the
+     * alphabet.
+     */
+    Alphabet readHeader() {
+        try {
+            String letters = _config.nextLine();
+            _bytes = letters.trim().equals(ByteAlphabet.NAME);
+            _alphabet = _bytes ? new ByteAlphabet()
+                : new CharacterRange(letters.charAt(0),
+                                     letters.charAt(letters.length() - 1));
+            if (letters.contains("(")) {
+                throw new EnigmaException("Wrong configuration format for (");
+            }
+            if (letters.contains(")")) {
+                throw new EnigmaException("Wrong configuration format for ) ");
+            }
+            if (letters.contains("*")) {
+                throw new EnigmaException("Wrong configuration format for * ");
+            }
+            if (!_config.hasNextInt()) {
+                throw new EnigmaException("Wrong configuration format");
+            }
+            if (!_config.hasNextInt()) {
+                throw new EnigmaException("Wrong configuration format");
+            }
+            _rotators = _config.nextInt();
+            _pawls = _config.nextInt();
+            if (_pawls > _rotators) {
+                throw error("Number of pawls "
+                        + "cannot be greater than amount of rotors");
+            }
+            return _alphabet;
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /**
+     * Return the number of rotor slots read by readHeader.
+     */
+    int numRotors() {
+        return _rotators;
+    }
+
+    /**
+     * Return the number of pawls read by readHeader.
+     */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /**
+     * Return the rotor described by DESCRIPTION, the text of one rotor
+     * of a configuration whose alphabet is ALPHABET.
+     */
+    static Rotor readRotor(String description, Alphabet alphabet) {
+        ConfigReader reader = new ConfigReader(new Scanner(description));
+        reader._alphabet = alphabet;
+        reader._bytes = alphabet instanceof ByteAlphabet;
+        return reader.readRotor();
+    }
+
+
+    /**
+     * Return a rotor, reading its description from _config.
+     */
+    private Rotor readRotor() {
+        try {
+            String currname = _config.next();
+            if (currname.contains("(") || currname.contains(")")) {
+                throw error("Not an acceptable name");
+            }
+            String typeNotch = _config.next();
+            String cycle = "";
+            while (_config.hasNext(_bytes ? ByteAlphabet.CYCLES
+                                   : "([(][A-Z]+[)])+")) {
+                cycle += _config.next();
+            }
+            Permutation perm = _bytes
+                ? new Permutation(ByteAlphabet.cycles(cycle), _alphabet)
+                : new Permutation(cycle, _alphabet);
+            char canmove = typeNotch.charAt(0);
+            if (_config.hasNextLine()) {
+                _config.nextLine();
+            }
+            if (canmove == 'M' && typeNotch.length() == 1) {
+                throw error("No notches given");
+            }
+            if (canmove == 'M') {
+                String notches = typeNotch.substring(1);
+                return new MovingRotor(currname, perm,
+                                       _bytes ? ByteAlphabet.symbols(notches)
+                                       : notches);
+            } else if (canmove == 'R') {
+                return new Reflector(currname, perm);
+            } else {
+                return new FixedRotor(currname, perm);
+            }
+
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+
+    }
+
+    /**
+     * Number of rotor slots and of pawls.
+     */
+    private int _rotators, _pawls;
+
+    /**
+     * Alphabet used in this machine.
+     */
+    private Alphabet _alphabet;
+
+    /**
+     * True iff the alphabet is a ByteAlphabet, whose symbols are written
+     * in hexadecimal.
+     */
+    private boolean _bytes;
+
+    /**
+     * Source of machine configuration.
+     */
+    private Scanner _config;
+
+    /**
+     * Makes an array list of all of the Rotors..
+     */
+    private ArrayList<Rotor> allrotors = new ArrayList<>();
+}
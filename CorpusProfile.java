@@ -0,0 +1,675 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Profiles a corpus of ciphertext before an attack is chosen: the
+ * frequencies of single symbols and of pairs, the index of coincidence
+ * of the whole corpus and of each message, and the periodicity of
+ * repeated n-grams, found as Kasiski did by counting the distances
+ * between repetitions of each n-gram within a message that are
+ * multiples of each small period.  Messages are found as for
+ * DepthFinder, by the rule of Normalizer.message: each line is a
+ * message, except for setting lines (those whose first non-blank
+ * character is '*'), and characters not in the alphabet (in either
+ * case) are ignored.  With the alphabet BYTES, every byte is a symbol
+ * and each block of CHUNK bytes is a message.
+ *
+ * The files are mapped into memory and cut into chunks of CHUNK bytes,
+ * each extended to whole lines, which are counted in parallel: each
+ * thread takes chunk after chunk, copying each a piece at a time out of
+ * the mapping, and adds to counts of its own held in arrays of
+ * primitives, which are merged once all chunks are counted.  Symbols
+ * are classified by a table of the 256 byte values, so alphabets must
+ * be of ASCII characters or BYTES.
+ *
+ * @author Jennifer Hu
+ */
+public final class CorpusProfile {
+
+    /**
+     * Profile the files specified by ARGS:
+     *     [--threads=N] [--ngram=N] [--periods=P] [--top=K]
+     *     CONFIG FILE...
+     * over the alphabet of the configuration file CONFIG, on N threads
+     * (default one per processor), reporting the periodicity of repeated
+     * N-grams (default trigrams, or pairs for BYTES) for periods up to P
+     * (default 30) and the K most frequent pairs (default 20).
+     */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int ngram = 0, periods = 30, top = 20;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--threads":
+                    threads = Integer.parseInt(opt[1]);
+                    break;
+                case "--ngram":
+                    ngram = Integer.parseInt(opt[1]);
+                    break;
+                case "--periods":
+                    periods = Integer.parseInt(opt[1]);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(opt[1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            if (args.length - first < 2) {
+                throw error("usage: CorpusProfile [options] CONFIG FILE...");
+            }
+            if (threads < 1) {
+                throw error("bad number of threads: %d", threads);
+            }
+            CorpusProfile profile = new CorpusProfile(
+                ConfigReader.read(args[first]).alphabet(), ngram, periods);
+            List<File> files = new ArrayList<>();
+            for (int i = first + 1; i < args.length; i += 1) {
+                files.add(new File(args[i]));
+            }
+            long start = System.nanoTime();
+            Counts counts = profile.count(files, threads, CHUNK);
+            double seconds = (System.nanoTime() - start) * 1e-9;
+            long bytes = 0;
+            for (File f : files) {
+                bytes += f.length();
+            }
+            System.out.printf("%d files, %.1f MB, %d messages, %d symbols "
+                              + "in %.2f s (%.1f MB/s on %d threads)%n",
+                              files.size(), bytes * 1e-6, counts.messages(),
+                              counts.symbols(), seconds,
+                              bytes * 1e-6 / seconds, threads);
+            profile.report(counts, top);
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Default bytes per chunk counted by one thread at a time. */
+    static final int CHUNK = 16 << 20;
+
+    /**
+     * A profiler for text over ALPHA that counts repetitions of NGRAM
+     * symbols (if 0, as many up to 3 as can be counted) at multiples of
+     * periods up to PERIODS.
+     */
+    CorpusProfile(Alphabet alpha, int ngram, int periods) {
+        int size = alpha.size();
+        if (ngram == 0) {
+            ngram = 3;
+            while (ngram > 1 && Math.pow(size, ngram) > NGRAM_LIMIT) {
+                ngram -= 1;
+            }
+        }
+        if (ngram < 1 || periods < 2) {
+            throw error("bad n-gram length or number of periods");
+        }
+        if (Math.pow(size, ngram) > NGRAM_LIMIT) {
+            throw error("%d-grams of %d symbols are too many to count",
+                        ngram, size);
+        }
+        _alphabet = alpha;
+        _bytes = alpha instanceof ByteAlphabet;
+        _ngram = ngram;
+        _periods = periods;
+        Normalizer normalizer =
+            _bytes ? null : new Normalizer(alpha, Normalizer.Policy.DROP);
+        _index = new int[256];
+        for (int b = 0; b < 256; b += 1) {
+            if (_bytes) {
+                _index[b] = b;
+            } else {
+                _index[b] = b < 128 ? normalizer.index((char) b) : -1;
+            }
+        }
+        for (int i = 0; i < size; i += 1) {
+            if (!_bytes && alpha.toChar(i) >= 128) {
+                throw error("alphabet is not of ASCII characters");
+            }
+        }
+    }
+
+    /**
+     * Return the counts of FILES, cut into chunks of about CHUNKSIZE
+     * bytes counted on THREADS threads.
+     */
+    Counts count(List<File> files, int threads, int chunkSize)
+        throws IOException {
+        List<FileChannel> channels = new ArrayList<>();
+        List<long[]> chunks = new ArrayList<>();
+        try {
+            for (File f : files) {
+                FileChannel channel = FileChannel.open(
+                    f.toPath(), StandardOpenOption.READ);
+                channels.add(channel);
+                long size = channel.size();
+                for (long pos = 0; pos < size; pos += chunkSize) {
+                    chunks.add(new long[] { channels.size() - 1, pos,
+                                            Math.min(size, pos + chunkSize)
+                    });
+                }
+            }
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Counts>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t += 1) {
+                results.add(pool.submit(() -> {
+                    Counts counts = new Counts();
+                    byte[] piece = new byte[PIECE];
+                    Mapping map = null;
+                    for (int k = next.getAndIncrement(); k < chunks.size();
+                         k = next.getAndIncrement()) {
+                        long[] chunk = chunks.get(k);
+                        FileChannel file = channels.get((int) chunk[0]);
+                        if (map == null || map.file() != file) {
+                            map = new Mapping(file, piece);
+                        }
+                        countChunk(map, chunk[1], chunk[2], counts);
+                    }
+                    return counts;
+                }));
+            }
+            pool.shutdown();
+            Counts result = new Counts();
+            for (Future<Counts> f : results) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw error("could not profile: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    /** Return the counts of TEXT, as if it were a file's contents. */
+    Counts count(byte[] text) {
+        Counts result = new Counts();
+        result.count(text, 0, text.length);
+        result.endMessage();
+        return result;
+    }
+
+    /**
+     * Add to COUNTS the lines of the file of MAP that start from position
+     * START up to END.  With the alphabet BYTES, add the bytes from START
+     * to END as a message.
+     */
+    private void countChunk(Mapping map, long start, long end,
+                            Counts counts)
+        throws IOException {
+        byte[] piece = map.piece();
+        long pos = start;
+        if (!_bytes && start > 0) {
+            pos = start - 1;
+            for (boolean found = false; !found; ) {
+                int n = map.read(pos);
+                if (n == 0) {
+                    return;
+                }
+                int k = 0;
+                while (k < n && piece[k] != '\n') {
+                    k += 1;
+                }
+                found = k < n;
+                pos += found ? k + 1 : n;
+            }
+        }
+        for (boolean done = pos >= end; !done; ) {
+            int n = map.read(pos);
+            if (n == 0) {
+                break;
+            }
+            int to = n;
+            if (_bytes) {
+                to = (int) Math.min(n, end - pos);
+                done = pos + to >= end;
+            } else if (pos + n >= end) {
+                int k = (int) Math.max(0, end - 1 - pos);
+                while (k < n && piece[k] != '\n') {
+                    k += 1;
+                }
+                if (k < n) {
+                    to = k + 1;
+                    done = true;
+                }
+            }
+            counts.count(piece, 0, to);
+            pos += to;
+        }
+        counts.endMessage();
+    }
+
+    /** A file read a piece at a time out of windows mapped into memory. */
+    private static final class Mapping {
+
+        /** A mapping of FILE, read into PIECE. */
+        Mapping(FileChannel file, byte[] piece) throws IOException {
+            _file = file;
+            _size = file.size();
+            _piece = piece;
+        }
+
+        /** Return my file. */
+        FileChannel file() {
+            return _file;
+        }
+
+        /** Return where I copy bytes. */
+        byte[] piece() {
+            return _piece;
+        }
+
+        /** Copy the bytes of my file from POS into my piece, as many as
+         *  fit, and return how many (0 at the end of the file). */
+        int read(long pos) throws IOException {
+            if (pos >= _size) {
+                return 0;
+            }
+            if (_window == null || pos < _start
+                || pos >= _start + _window.limit()) {
+                _start = pos;
+                _window = _file.map(FileChannel.MapMode.READ_ONLY, pos,
+                                    Math.min(_size - pos, WINDOW));
+            }
+            int off = (int) (pos - _start);
+            int n = Math.min(_piece.length, _window.limit() - off);
+            _window.get(off, _piece, 0, n);
+            return n;
+        }
+
+        /** The file and its size. */
+        private final FileChannel _file;
+        private final long _size;
+
+        /** Where bytes are copied. */
+        private final byte[] _piece;
+
+        /** The current window and its position in the file. */
+        private MappedByteBuffer _window;
+        private long _start;
+    }
+
+    /**
+     * Print a report of COUNTS on the standard output, listing the TOP
+     * most frequent pairs.
+     */
+    void report(Counts counts, int top) {
+        int size = _alphabet.size();
+        System.out.printf("index of coincidence %.6f (uniform %.6f, "
+                          + "English-like %.6f)%n", counts.ioc(),
+                          1.0 / size, DepthFinder.ENGLISH_KAPPA * 26 / size);
+        System.out.printf("per message of 2 or more: %d, mean %.6f, "
+                          + "sd %.6f, 10%% %.4f, median %.4f, 90%% %.4f%n",
+                          counts.rated(), counts.meanIoc(), counts.sdIoc(),
+                          counts.iocQuantile(0.1), counts.iocQuantile(0.5),
+                          counts.iocQuantile(0.9));
+        double chi = 0, expected = (double) counts.symbols() / size;
+        for (int x = 0; x < size; x += 1) {
+            chi += Math.pow(counts.unigram(x) - expected, 2) / expected;
+        }
+        System.out.printf("symbols (chi-squared against uniform %.1f, "
+                          + "%d degrees of freedom):%n", chi, size - 1);
+        for (int x = 0; x < size; x += 1) {
+            System.out.printf("  %s %12d %.5f%n", symbol(x),
+                              counts.unigram(x),
+                              (double) counts.unigram(x)
+                              / Math.max(1, counts.symbols()));
+        }
+        Integer[] pairs = new Integer[size * size];
+        for (int i = 0; i < pairs.length; i += 1) {
+            pairs[i] = i;
+        }
+        Arrays.sort(pairs, (a, b) ->
+                    Long.compare(counts.bigram(b / size, b % size),
+                                 counts.bigram(a / size, a % size)));
+        System.out.printf("most frequent pairs of %d:%n", counts.pairs());
+        for (int i = 0; i < Math.min(top, pairs.length); i += 1) {
+            int a = pairs[i] / size, b = pairs[i] % size;
+            System.out.printf("  %s%s %12d %.5f%n", symbol(a), symbol(b),
+                              counts.bigram(a, b), (double) counts.bigram(a, b)
+                              / Math.max(1, counts.pairs()));
+        }
+        long repeats = counts.repeats();
+        System.out.printf("repeated %d-grams: %d distances; share that are "
+                          + "multiples of each period, times the period "
+                          + "(1 for no periodicity):%n", _ngram, repeats);
+        for (int p = 2; p <= _periods; p += 1) {
+            System.out.printf("  %3d %12d %7.3f%n", p, counts.multiples(p),
+                              repeats == 0 ? 0
+                              : (double) counts.multiples(p) * p / repeats);
+        }
+    }
+
+    /** Return the printed form of symbol X. */
+    private String symbol(int x) {
+        return _bytes ? String.format("%02x", x)
+            : String.valueOf(_alphabet.toChar(x));
+    }
+
+    /** Counts of symbols, pairs, messages and repeated n-grams, for one
+     *  thread. */
+    final class Counts {
+
+        /** Empty counts. */
+        Counts() {
+            int size = _alphabet.size();
+            _size = size;
+            _unigrams = new long[size];
+            _bigrams = new long[size * size];
+            _message = new int[size];
+            int grams = (int) Math.pow(size, _ngram);
+            _high = (int) Math.pow(size, _ngram - 1);
+            _lastMessage = new int[grams];
+            _lastPosition = new int[grams];
+            _recent = new int[_ngram];
+            _distances = new long[DISTANCE_LIMIT];
+            _multiples = new long[_periods + 1];
+            _iocs = new long[IOC_BINS + 1];
+            _messageId = 1;
+        }
+
+        /** Return the number of messages with at least one symbol. */
+        long messages() {
+            return _messages;
+        }
+
+        /** Return the number of symbols. */
+        long symbols() {
+            return _symbols;
+        }
+
+        /** Return the number of adjacent pairs of symbols in messages. */
+        long pairs() {
+            return _pairs;
+        }
+
+        /** Return the occurrences of symbol X. */
+        long unigram(int x) {
+            return _unigrams[x];
+        }
+
+        /** Return the occurrences of symbol X followed by symbol Y. */
+        long bigram(int x, int y) {
+            return _bigrams[x * _size + y];
+        }
+
+        /** Return the index of coincidence of all symbols. */
+        double ioc() {
+            double same = 0;
+            for (long n : _unigrams) {
+                same += (double) n * (n - 1);
+            }
+            return _symbols < 2 ? 0
+                : same / ((double) _symbols * (_symbols - 1));
+        }
+
+        /** Return the number of messages of at least two symbols. */
+        long rated() {
+            return _rated;
+        }
+
+        /** Return the mean index of coincidence of messages of at least
+         *  two symbols. */
+        double meanIoc() {
+            return _rated == 0 ? 0 : _iocSum / _rated;
+        }
+
+        /** Return the standard deviation of the indices of coincidence of
+         *  messages of at least two symbols. */
+        double sdIoc() {
+            double mean = meanIoc();
+            return _rated == 0 ? 0
+                : Math.sqrt(Math.max(0, _iocSquares / _rated - mean * mean));
+        }
+
+        /** Return the index of coincidence below which the fraction Q of
+         *  messages of at least two symbols fall, to within 1 /
+         *  IOC_BINS. */
+        double iocQuantile(double q) {
+            long seen = 0;
+            for (int i = 0; i < _iocs.length; i += 1) {
+                seen += _iocs[i];
+                if (seen > q * _rated) {
+                    return (i + 0.5) / IOC_BINS;
+                }
+            }
+            return 1;
+        }
+
+        /** Return the number of distances between repetitions of an
+         *  n-gram within a message. */
+        long repeats() {
+            long result = 0;
+            for (long n : _distances) {
+                result += n;
+            }
+            return result + _farRepeats;
+        }
+
+        /** Return the number of those distances that are multiples of
+         *  P, where 2 <= P <= the number of periods. */
+        long multiples(int p) {
+            long result = _multiples[p];
+            for (int d = p; d < _distances.length; d += p) {
+                result += _distances[d];
+            }
+            return result;
+        }
+
+        /** Add OTHER's counts to mine. */
+        void add(Counts other) {
+            _messages += other._messages;
+            _symbols += other._symbols;
+            _pairs += other._pairs;
+            _rated += other._rated;
+            _iocSum += other._iocSum;
+            _iocSquares += other._iocSquares;
+            _farRepeats += other._farRepeats;
+            addAll(_unigrams, other._unigrams);
+            addAll(_bigrams, other._bigrams);
+            addAll(_distances, other._distances);
+            addAll(_multiples, other._multiples);
+            addAll(_iocs, other._iocs);
+        }
+
+        /** Count the bytes of TEXT from FROM to TO, continuing the
+         *  current message. */
+        void count(byte[] text, int from, int to) {
+            int[] index = _index;
+            for (int i = from; i < to; i += 1) {
+                byte b = text[i];
+                if (_setting) {
+                    if (b == '\n') {
+                        _setting = false;
+                        _started = false;
+                    }
+                    continue;
+                }
+                int x = index[b & 0xff];
+                if (x >= 0) {
+                    symbol(x);
+                } else if (b == '\n') {
+                    endMessage();
+                } else if (b == Normalizer.SETTING && !_started) {
+                    _setting = true;
+                } else if (!Normalizer.isBlank(b)) {
+                    _started = true;
+                }
+            }
+        }
+
+        /** Count symbol X, continuing the current message. */
+        private void symbol(int x) {
+            _started = true;
+            _unigrams[x] += 1;
+            _coincidences += _message[x];
+            _message[x] += 1;
+            if (_prev >= 0) {
+                _bigrams[_prev * _size + x] += 1;
+                _pairs += 1;
+            }
+            _prev = x;
+            int k = _length % _ngram;
+            _code = (_code - _recent[k] * _high) * _size + x;
+            _recent[k] = x;
+            _length += 1;
+            if (_length >= _ngram) {
+                int c = _code;
+                if (_lastMessage[c] == _messageId) {
+                    repeat(_length - _lastPosition[c]);
+                }
+                _lastMessage[c] = _messageId;
+                _lastPosition[c] = _length;
+            }
+        }
+
+        /** Count a repetition of an n-gram DISTANCE symbols apart. */
+        private void repeat(int distance) {
+            if (distance < _distances.length) {
+                _distances[distance] += 1;
+            } else {
+                _farRepeats += 1;
+                for (int p = 2; p < _multiples.length; p += 1) {
+                    if (distance % p == 0) {
+                        _multiples[p] += 1;
+                    }
+                }
+            }
+        }
+
+        /** End the current message, if any, and line. */
+        void endMessage() {
+            _started = _setting = false;
+            if (_length == 0) {
+                return;
+            }
+            _messages += 1;
+            _symbols += _length;
+            if (_length >= 2) {
+                double ioc = 2.0 * _coincidences
+                    / ((double) _length * (_length - 1));
+                _rated += 1;
+                _iocSum += ioc;
+                _iocSquares += ioc * ioc;
+                _iocs[(int) Math.min(IOC_BINS, ioc * IOC_BINS)] += 1;
+            }
+            Arrays.fill(_message, 0);
+            Arrays.fill(_recent, 0);
+            _coincidences = 0;
+            _length = 0;
+            _code = 0;
+            _prev = -1;
+            _messageId += 1;
+        }
+
+        /** Number of symbols, and of n-grams less one. */
+        private final int _size, _high;
+
+        /** Messages, symbols, pairs and messages of two or more. */
+        private long _messages, _symbols, _pairs, _rated;
+
+        /** Occurrences of each symbol and pair. */
+        private final long[] _unigrams, _bigrams;
+
+        /** Sum and sum of squares of the index of coincidence of each
+         *  message of two or more, and their numbers in each of
+         *  IOC_BINS bins of width 1 / IOC_BINS. */
+        private double _iocSum, _iocSquares;
+        private final long[] _iocs;
+
+        /** Repetitions at each distance below DISTANCE_LIMIT, and at
+         *  greater distances, the number of them, and the number that
+         *  are multiples of each period. */
+        private final long[] _distances, _multiples;
+        private long _farRepeats;
+
+        /** Message in which each n-gram last occurred and the symbol
+         *  count at its end. */
+        private final int[] _lastMessage, _lastPosition;
+
+        /** The current message: occurrences of each symbol, pairs of
+         *  equal symbols, length, the previous symbol (-1 for none), the
+         *  latest n-gram, its symbols by position modulo the n-gram
+         *  length, and a number identifying the message. */
+        private final int[] _message;
+        private long _coincidences;
+        private int _length, _prev = -1, _code;
+        private final int[] _recent;
+        private int _messageId;
+
+        /** True in a setting line, and once the current line has had
+         *  anything but blanks. */
+        private boolean _setting, _started;
+    }
+
+    /** Set each element of INTO to its sum with that of FROM. */
+    private static void addAll(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i += 1) {
+            into[i] += from[i];
+        }
+    }
+
+    /** Bytes copied out of a mapping at a time. */
+    private static final int PIECE = 1 << 16;
+
+    /** Bytes of a file mapped at a time. */
+    private static final long WINDOW = 64 << 20;
+
+    /** Largest number of distinct n-grams counted. */
+    private static final double NGRAM_LIMIT = 1 << 22;
+
+    /** Distances between repetitions tallied individually. */
+    private static final int DISTANCE_LIMIT = 1 << 16;
+
+    /** Bins of the histogram of indices of coincidence of messages. */
+    private static final int IOC_BINS = 1000;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** True iff every byte is a symbol. */
+    private final boolean _bytes;
+
+    /** Length of the n-grams whose repetitions are counted, and the
+     *  largest period examined. */
+    private final int _ngram, _periods;
+
+    /** Index of the symbol of each byte value, or -1. */
+    private final int[] _index;
+
+}
@@ -0,0 +1,252 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the CorpusProfile class.
+ *  @author
+ */
+public class CorpusProfileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    private static final Alphabet UPPER = new CharacterRange('A', 'Z');
+
+    @Test
+    public void matchesNaiveCounts() {
+        String text = sample(new Random(50), 300, 0, 0);
+        CorpusProfile profile = new CorpusProfile(UPPER, 3, 12);
+        CorpusProfile.Counts counts = profile.count(text.getBytes());
+        List<String> messages = messages(text);
+        long symbols = 0, pairs = 0;
+        long[] unigrams = new long[26], bigrams = new long[26 * 26];
+        long[] multiples = new long[13];
+        long repeats = 0;
+        double iocSum = 0;
+        int rated = 0;
+        for (String m : messages) {
+            symbols += m.length();
+            long[] here = new long[26];
+            for (int i = 0; i < m.length(); i += 1) {
+                unigrams[m.charAt(i) - 'A'] += 1;
+                here[m.charAt(i) - 'A'] += 1;
+                if (i > 0) {
+                    bigrams[(m.charAt(i - 1) - 'A') * 26 + m.charAt(i) - 'A']
+                        += 1;
+                    pairs += 1;
+                }
+                if (i >= 3) {
+                    int prev = m.lastIndexOf(m.substring(i - 2, i + 1),
+                                             i - 3);
+                    if (prev >= 0) {
+                        repeats += 1;
+                        for (int p = 2; p <= 12; p += 1) {
+                            multiples[p] += (i - 2 - prev) % p == 0 ? 1 : 0;
+                        }
+                    }
+                }
+            }
+            if (m.length() >= 2) {
+                long same = 0;
+                for (long n : here) {
+                    same += n * (n - 1);
+                }
+                iocSum += (double) same / m.length() / (m.length() - 1);
+                rated += 1;
+            }
+        }
+        assertEquals(messages.size(), counts.messages());
+        assertEquals(symbols, counts.symbols());
+        assertEquals(pairs, counts.pairs());
+        for (int x = 0; x < 26; x += 1) {
+            assertEquals(unigrams[x], counts.unigram(x));
+            for (int y = 0; y < 26; y += 1) {
+                assertEquals(bigrams[x * 26 + y], counts.bigram(x, y));
+            }
+        }
+        assertTrue(repeats > 0);
+        assertEquals(repeats, counts.repeats());
+        for (int p = 2; p <= 12; p += 1) {
+            assertEquals(multiples[p], counts.multiples(p));
+        }
+        assertEquals(rated, counts.rated());
+        assertEquals(iocSum / rated, counts.meanIoc(), 1e-12);
+        long same = 0;
+        for (long n : unigrams) {
+            same += n * (n - 1);
+        }
+        assertEquals((double) same / symbols / (symbols - 1), counts.ioc(),
+                     1e-12);
+    }
+
+    @Test
+    public void settingsAndCase() {
+        CorpusProfile profile = new CorpusProfile(UPPER, 2, 4);
+        CorpusProfile.Counts counts = profile.count(
+            ("* B Beta III IV I AXLE (HQ)\n  \n hello, World\n"
+             + "  * B Beta III IV I AXLE\nABAB\n123\nZ").getBytes());
+        assertEquals(3, counts.messages());
+        assertEquals(15, counts.symbols());
+        assertEquals(3, counts.unigram('L' - 'A'));
+        assertEquals(0, counts.unigram('X' - 'A'));
+        assertEquals(1, counts.bigram('O' - 'A', 'W' - 'A'));
+        assertEquals(0, counts.bigram('B' - 'A', 'Z' - 'A'));
+        assertEquals(1, counts.repeats());
+        assertEquals(1, counts.multiples(2));
+    }
+
+    @Test
+    public void messagesAsNormalizer() {
+        String text = "* B Beta III IV I AXLE\nFrom his shoulder, Hiawatha!\n"
+            + "\t* B Beta\n1855\n\nab*c (DE) 7f\n , * x\n"
+            + sample(new Random(53), 50, 0, 4);
+        CorpusProfile.Counts counts =
+            new CorpusProfile(UPPER, 3, 30).count(text.getBytes());
+        Normalizer drop = new Normalizer(UPPER, Normalizer.Policy.DROP);
+        long messages = 0, symbols = 0;
+        long[] unigrams = new long[26];
+        for (String line : text.split("\n")) {
+            int[] msg = drop.message(line);
+            if (msg != null && msg.length > 0) {
+                messages += 1;
+                symbols += msg.length;
+                for (int x : msg) {
+                    unigrams[x] += 1;
+                }
+            }
+        }
+        assertEquals(messages, counts.messages());
+        assertEquals(symbols, counts.symbols());
+        for (int x = 0; x < 26; x += 1) {
+            assertEquals(unigrams[x], counts.unigram(x));
+        }
+    }
+
+    @Test
+    public void chunksAndThreads() throws IOException {
+        Random random = new Random(51);
+        List<File> files = new ArrayList<>();
+        StringBuilder all = new StringBuilder();
+        for (int f = 0; f < 3; f += 1) {
+            String text = sample(random, 400 + 300 * f, f, 5);
+            all.append(text);
+            File file = File.createTempFile("enigma", ".txt");
+            file.deleteOnExit();
+            Files.write(file.toPath(), text.getBytes());
+            files.add(file);
+        }
+        files.add(File.createTempFile("enigma", ".txt"));
+        files.get(files.size() - 1).deleteOnExit();
+        CorpusProfile profile = new CorpusProfile(UPPER, 3, 30);
+        String expected = summary(profile.count(all.toString().getBytes()));
+        for (int threads : new int[] { 1, 3 }) {
+            for (int chunk : new int[] { 1, 7, 64, 1000, 1 << 20 }) {
+                assertEquals(String.format("%d threads, chunk %d",
+                                           threads, chunk), expected,
+                             summary(profile.count(files, threads, chunk)));
+            }
+        }
+    }
+
+    @Test
+    public void bytes() throws IOException {
+        byte[] data = new byte[5000];
+        new Random(52).nextBytes(data);
+        File file = File.createTempFile("enigma", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        CorpusProfile profile = new CorpusProfile(new ByteAlphabet(), 0, 8);
+        CorpusProfile.Counts counts =
+            profile.count(Arrays.asList(file), 2, 1000);
+        assertEquals(5, counts.messages());
+        assertEquals(data.length, counts.symbols());
+        assertEquals(data.length - 5, counts.pairs());
+        long[] unigrams = new long[256];
+        for (byte b : data) {
+            unigrams[b & 0xff] += 1;
+        }
+        for (int x = 0; x < 256; x += 1) {
+            assertEquals(unigrams[x], counts.unigram(x));
+        }
+    }
+
+    @Test
+    public void tooManyNgrams() {
+        try {
+            new CorpusProfile(new ByteAlphabet(), 3, 30);
+            fail("too long n-grams accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("3-grams of 256 symbols are too many to count",
+                         excp.getMessage());
+        }
+    }
+
+    /** Return LINES lines of random letters over a few symbols, so that
+     *  n-grams repeat, with a setting line first if SETTING is odd and
+     *  one in every BLANKS lines (if positive) empty. */
+    private static String sample(Random random, int lines, int setting,
+                                 int blanks) {
+        StringBuilder result = new StringBuilder();
+        if (setting % 2 == 1) {
+            result.append("* B Beta III IV I AXLE\n");
+        }
+        for (int i = 0; i < lines; i += 1) {
+            if (blanks == 0 || random.nextInt(blanks) > 0) {
+                for (int n = random.nextInt(40); n > 0; n -= 1) {
+                    result.append((char) ('A' + random.nextInt(6)));
+                    if (random.nextInt(5) == 0) {
+                        result.append(' ');
+                    }
+                }
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the messages of TEXT, each the letters of a line, as
+     *  CorpusProfile finds them. */
+    private static List<String> messages(String text) {
+        List<String> result = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String letters = line.replaceAll("[^A-Z]", "");
+            if (!line.trim().startsWith("*") && !letters.isEmpty()) {
+                result.add(letters);
+            }
+        }
+        return result;
+    }
+
+    /** Return a summary of COUNTS, equal for equal counts. */
+    private static String summary(CorpusProfile.Counts counts) {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d %d %d %d %d %.12f %.12f %.12f%n",
+                                    counts.messages(), counts.symbols(),
+                                    counts.pairs(), counts.rated(),
+                                    counts.repeats(), counts.ioc(),
+                                    counts.meanIoc(), counts.sdIoc()));
+        for (int x = 0; x < 26; x += 1) {
+            result.append(counts.unigram(x)).append(' ');
+            for (int y = 0; y < 26; y += 1) {
+                result.append(counts.bigram(x, y)).append(' ');
+            }
+        }
+        for (int p = 2; p <= 30; p += 1) {
+            result.append(counts.multiples(p)).append(' ');
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,298 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Finds pairs of messages in depth, after Banburismus: messages enciphered
+ * with overlapping stretches of the same keystream.  Each pair of messages
+ * is slid against the other at every offset up to a limit, the letters
+ * that coincide in the overlap are counted, and the evidence for depth is
+ * scored in decibans (tenths of a power of ten of the odds), comparing
+ * the coincidence rate expected of two plaintexts in depth with that of
+ * random text over the same alphabet.
+ *
+ * @author Jennifer Hu
+ */
+public final class DepthFinder {
+
+    /**
+     * Rank the messages in files as specified by ARGS:
+     *     [--top=K] [--max-offset=N] [--min-overlap=N] [--kappa=P]
+     *     CONFIG FILE...
+     * The alphabet is taken from the configuration file CONFIG.  The
+     * messages are the lines of each FILE, as for addLines.  Prints the
+     * K best overlaps (default 20), best first.
+     */
+    public static void main(String... args) {
+        try {
+            int top = 20, maxOffset = 100, minOverlap = 20;
+            double kappa = 0;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--top":
+                    top = Integer.parseInt(opt[1]);
+                    break;
+                case "--max-offset":
+                    maxOffset = Integer.parseInt(opt[1]);
+                    break;
+                case "--min-overlap":
+                    minOverlap = Integer.parseInt(opt[1]);
+                    break;
+                case "--kappa":
+                    kappa = Double.parseDouble(opt[1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            if (args.length - first < 2) {
+                throw error("usage: DepthFinder [options] CONFIG FILE...");
+            }
+            Alphabet alpha = ConfigReader.read(args[first]).alphabet();
+            DepthFinder finder = new DepthFinder(alpha,
+                kappa == 0 ? ENGLISH_KAPPA * 26 / alpha.size() : kappa,
+                maxOffset, minOverlap);
+            for (int i = first + 1; i < args.length; i += 1) {
+                finder.addLines(args[i], Files.readAllLines(
+                    new File(args[i]).toPath()));
+            }
+            for (Depth d : finder.find(top)) {
+                System.out.println(d);
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Coincidence rate of English plaintext over 26 letters. */
+    static final double ENGLISH_KAPPA = 0.0667;
+
+    /**
+     * A finder for messages over ALPHA whose plaintexts coincide with
+     * probability KAPPA when in depth, trying offsets up to MAXOFFSET in
+     * either direction and ignoring overlaps shorter than MINOVERLAP.
+     */
+    DepthFinder(Alphabet alpha, double kappa, int maxOffset,
+                int minOverlap) {
+        double random = 1.0 / alpha.size();
+        if (kappa <= random || kappa >= 1) {
+            throw error("depth coincidence rate must exceed %.4f", random);
+        }
+        _normalizer = new Normalizer(alpha, Normalizer.Policy.DROP);
+        _maxOffset = maxOffset;
+        _minOverlap = Math.max(1, minOverlap);
+        _hit = 10 * Math.log10(kappa / random);
+        _miss = 10 * Math.log10((1 - kappa) / (1 - random));
+    }
+
+    /**
+     * Add the messages of LINES, the lines of the file NAME, the message
+     * of line K being identified as NAME:K.  Messages are found by
+     * Normalizer.message: setting lines and characters not in the
+     * alphabet are ignored, as are lines with no other characters.
+     */
+    void addLines(String name, List<String> lines) {
+        for (int k = 0; k < lines.size(); k += 1) {
+            int[] msg = _normalizer.message(lines.get(k));
+            if (msg != null && msg.length > 0) {
+                add(name + ":" + (k + 1), msg);
+            }
+        }
+    }
+
+    /**
+     * Add the message TEXT, identified by ID.  Case and characters not in
+     * the alphabet are ignored.
+     */
+    void add(String id, String text) {
+        add(id, _normalizer.indices(text));
+    }
+
+    /** Add the message MSG of alphabet indices, identified by ID. */
+    private void add(String id, int[] msg) {
+        if (_length + msg.length > _text.length) {
+            _text = Arrays.copyOf(_text,
+                                  Math.max(2 * _text.length,
+                                           _length + msg.length));
+        }
+        for (int i = 0; i < msg.length; i += 1) {
+            _text[_length + i] = (char) msg[i];
+        }
+        _ids.add(id);
+        _starts.add(_length);
+        _length += msg.length;
+    }
+
+    /**
+     * Return the TOP overlaps with the highest scores, best first,
+     * computed on all available cores.
+     */
+    List<Depth> find(int top) {
+        int n = _ids.size();
+        int[] starts = new int[n + 1];
+        for (int i = 0; i < n; i += 1) {
+            starts[i] = _starts.get(i);
+        }
+        starts[n] = _length;
+        char[] text = _text;
+        List<Depth> result = IntStream.range(0, n).parallel()
+            .mapToObj(a -> best(text, starts, a, top))
+            .reduce(new ArrayList<>(), (x, y) -> merge(x, y, top));
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Return the TOP best overlaps of message A of TEXT with each later
+     * message, where message i occupies TEXT[STARTS[i]..STARTS[i+1]-1].
+     */
+    private List<Depth> best(char[] text, int[] starts, int a, int top) {
+        PriorityQueue<Depth> kept = new PriorityQueue<>(BEST_FIRST
+                                                        .reversed());
+        int aStart = starts[a], aLen = starts[a + 1] - aStart;
+        for (int b = a + 1; b < starts.length - 1; b += 1) {
+            int bStart = starts[b], bLen = starts[b + 1] - bStart;
+            for (int d = -_maxOffset; d <= _maxOffset; d += 1) {
+                int from = Math.max(0, d), to = Math.min(aLen, bLen + d);
+                int overlap = to - from;
+                if (overlap < _minOverlap) {
+                    continue;
+                }
+                int hits = 0;
+                for (int i = aStart + from, j = bStart + from - d;
+                     i < aStart + to; i += 1, j += 1) {
+                    hits += text[i] == text[j] ? 1 : 0;
+                }
+                double score = hits * _hit + (overlap - hits) * _miss;
+                if (kept.size() < top || score > kept.peek().score()) {
+                    kept.add(new Depth(_ids.get(a), _ids.get(b), d,
+                                       overlap, hits, score));
+                    if (kept.size() > top) {
+                        kept.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(kept);
+    }
+
+    /** Return the TOP best of the overlaps in X and Y. */
+    private static List<Depth> merge(List<Depth> x, List<Depth> y,
+                                     int top) {
+        ArrayList<Depth> result = new ArrayList<>(x);
+        result.addAll(y);
+        result.sort(BEST_FIRST);
+        return new ArrayList<>(result.subList(0,
+                                              Math.min(top, result.size())));
+    }
+
+    /** An overlap of two messages and its score. */
+    static class Depth {
+
+        /** The overlap of messages FIRST and SECOND when SECOND starts
+         *  OFFSET letters after FIRST (before, if negative), with
+         *  COINCIDENCES equal letters among OVERLAP, scoring SCORE. */
+        Depth(String first, String second, int offset, int overlap,
+              int coincidences, double score) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _score = score;
+        }
+
+        /** Return the identifier of the first message. */
+        String first() {
+            return _first;
+        }
+
+        /** Return the identifier of the second message. */
+        String second() {
+            return _second;
+        }
+
+        /** Return the offset of the second message from the first. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the length of the overlap. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return the number of coinciding letters in the overlap. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return the score in decibans. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.1f dB  %s  %s  offset %d  %d/%d",
+                                 _score, _first, _second, _offset,
+                                 _coincidences, _overlap);
+        }
+
+        /** Message identifiers. */
+        private final String _first, _second;
+
+        /** Offset, overlap length and coincidences. */
+        private final int _offset, _overlap, _coincidences;
+
+        /** Score in decibans. */
+        private final double _score;
+    }
+
+    /** Orders overlaps best first. */
+    private static final Comparator<Depth> BEST_FIRST =
+        Comparator.comparingDouble(Depth::score).reversed();
+
+    /** Finds the messages in lines of text. */
+    private final Normalizer _normalizer;
+
+    /** Largest offset tried, and shortest overlap scored. */
+    private final int _maxOffset, _minOverlap;
+
+    /** Decibans of evidence for depth from a coincidence and from a
+     *  non-coincidence. */
+    private final double _hit, _miss;
+
+    /** All messages, as alphabet indices, one after another. */
+    private char[] _text = new char[1 << 12];
+
+    /** Number of characters of _text in use. */
+    private int _length;
+
+    /** Identifiers of the messages. */
+    private final ArrayList<String> _ids = new ArrayList<>();
+
+    /** Start of each message in _text. */
+    private final ArrayList<Integer> _starts = new ArrayList<>();
+
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author
+ */
+public class DepthFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+
+    private static final int LENGTH = 3000;
+
+    @Test
+    public void plantedDepthsRankFirst() throws Exception {
+        Random random = new Random(32);
+        DepthFinder finder = new DepthFinder(UPPER,
+                                             DepthFinder.ENGLISH_KAPPA,
+                                             100, 20);
+        finder.add("r0", uniform(random));
+        finder.add("a", encipher("AXLE", 0, english(random)));
+        finder.add("r1", uniform(random));
+        finder.add("c", encipher("QRST", 23, english(random)));
+        finder.add("r2", uniform(random));
+        finder.add("b", encipher("AXLE", 17, english(random)));
+        finder.add("r3", uniform(random));
+        finder.add("d", encipher("QRST", 0, english(random)));
+        for (int i = 4; i < 8; i += 1) {
+            finder.add("r" + i, uniform(random));
+        }
+
+        List<DepthFinder.Depth> found = finder.find(5);
+        assertEquals(5, found.size());
+        for (int i = 1; i < found.size(); i += 1) {
+            assertTrue(found.get(i - 1).score() >= found.get(i).score());
+        }
+        HashSet<String> planted = new HashSet<>(Arrays.asList(
+            describe(found.get(0)), describe(found.get(1))));
+        assertEquals(new HashSet<>(Arrays.asList("a b 17", "c d -23")),
+                     planted);
+        assertTrue(found.get(1).score() > found.get(2).score() + 20);
+
+        DepthFinder.Depth best = found.get(0);
+        assertEquals(LENGTH - Math.abs(best.offset()), best.overlap());
+        double hit = 10 * Math.log10(DepthFinder.ENGLISH_KAPPA * 26),
+            miss = 10 * Math.log10((1 - DepthFinder.ENGLISH_KAPPA)
+                                   / (1 - 1.0 / 26));
+        assertEquals(best.coincidences() * hit
+                     + (best.overlap() - best.coincidences()) * miss,
+                     best.score(), 1e-9);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<DepthFinder.Depth> parallel =
+            pool.submit(() -> finder.find(5)).get();
+        pool.shutdown();
+        assertEquals(found.toString(), parallel.toString());
+
+        List<DepthFinder.Depth> one = finder.find(1);
+        assertEquals(1, one.size());
+        assertEquals(describe(best), describe(one.get(0)));
+        assertEquals(best.score(), one.get(0).score(), 0);
+    }
+
+    @Test
+    public void offsetConvention() {
+        DepthFinder finder = new DepthFinder(UPPER, 0.5, 5, 3);
+        finder.add("x", "ABCDEFGH");
+        finder.add("y", "ZZDEFGH");
+        DepthFinder.Depth best = finder.find(1).get(0);
+        assertEquals("x y 1", describe(best));
+        assertEquals(7, best.overlap());
+        assertEquals(5, best.coincidences());
+    }
+
+    @Test
+    public void fewerOverlapsThanAsked() {
+        DepthFinder finder = new DepthFinder(UPPER, 0.5, 1, 4);
+        finder.add("x", "ABCD");
+        finder.add("y", "ABCD");
+        finder.add("z", "ABC");
+        List<DepthFinder.Depth> found = finder.find(10);
+        assertEquals(1, found.size());
+        assertEquals("x y 0", describe(found.get(0)));
+    }
+
+    @Test
+    public void linesOfAFile() {
+        DepthFinder finder = new DepthFinder(UPPER, 0.5, 0, 1);
+        finder.addLines("f", Arrays.asList(
+            "* B Beta III IV I AXLE", "From his shoulder, Hiawatha!", "",
+            "  * B Beta III IV I AXLE", "1855", "XY",
+            "FROM HIS SHOULDER * hiawatha"));
+        List<DepthFinder.Depth> found = finder.find(10);
+        assertEquals(3, found.size());
+        assertEquals("f:2 f:7 0", describe(found.get(0)));
+        assertEquals(23, found.get(0).coincidences());
+    }
+
+    /** Return D as its messages and offset. */
+    private static String describe(DepthFinder.Depth d) {
+        return d.first() + " " + d.second() + " " + d.offset();
+    }
+
+    /** Return LENGTH letters drawn uniformly by RANDOM. */
+    private static String uniform(Random random) {
+        char[] result = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    /** Return LENGTH letters drawn by RANDOM with the frequencies of
+     *  English letters. */
+    private static String english(Random random) {
+        double total = 0;
+        for (double f : ENGLISH) {
+            total += f;
+        }
+        char[] result = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i += 1) {
+            double x = random.nextDouble() * total;
+            int c = 0;
+            while (c < 25 && x >= ENGLISH[c]) {
+                x -= ENGLISH[c];
+                c += 1;
+            }
+            result[i] = (char) ('A' + c);
+        }
+        return new String(result);
+    }
+
+    /** Return PLAIN enciphered by the naval machine set to POSITIONS
+     *  after it has converted SKIP letters, so that messages enciphered
+     *  from the same POSITIONS are in depth at the difference of their
+     *  SKIPs. */
+    private static String encipher(String positions, int skip,
+                                   String plain) {
+        Machine m = navalMachine(ROTORS, positions, "(HQ) (EX) (IP)");
+        for (int i = 0; i < skip; i += 1) {
+            m.convert(0);
+        }
+        return m.convert(plain);
+    }
+
+    /** Relative frequencies of the English letters A-Z, in percent. */
+    private static final double[] ENGLISH = {
+        8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.15, 0.77, 4.0, 2.4,
+        6.7, 7.5, 1.9, 0.095, 6.0, 6.3, 9.1, 2.8, 0.98, 2.4, 0.15, 2.0,
+        0.074,
+    };
+
+}
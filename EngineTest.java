@@ -0,0 +1,177 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Cross-engine equivalence tests: every engine must convert exactly as
+ *  Machine.convert does.
+ *  @author
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Names of all concrete engines. */
+    private static final String[] ENGINES = {
+        "reference", "table", "specialized"
+    };
+
+    @Test
+    public void machineTestVectors() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        String plugs = "(HQ) (EX) (IP) (TR) (BY)";
+        for (String name : ENGINES) {
+            EnigmaEngine e = Engines.create(name,
+                navalMachine(rotors, "AXLE", plugs), 0);
+            assertEquals(name, "QVPQSOKOILPUBKJZPISFXDW",
+                         e.convert("FROM his shoulder Hiawatha"));
+            assertEquals(name, "BHCNSCXNUOAATZXSRCFYDGU",
+                         e.convert("Took the camera of rosewood"));
+        }
+        for (String name : ENGINES) {
+            EnigmaEngine e = Engines.create(name,
+                navalMachine(new String[] {"B", "Beta", "I", "II", "III"},
+                             "AAAA", "(AQ) (EP)"), 0);
+            assertEquals(name, "IHBDQQMTQZ", e.convert("Helloworld"));
+        }
+    }
+
+    /** Text is normalized as Machine.convert(String) and Main do. */
+    @Test
+    public void foreignCharacters() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        for (String name : ENGINES) {
+            EnigmaEngine e = Engines.create(name,
+                navalMachine(rotors, "AXLE", ""), 0);
+            try {
+                e.convert("FROM his shoulder, Hiawatha");
+                fail(name + " accepted a foreign character");
+            } catch (EnigmaException excp) {
+                assertEquals(name, "character not in alphabet: ','",
+                             excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void doubleStep() {
+        Alphabet ac = new CharacterRange('A', 'D');
+        for (String name : ENGINES) {
+            ArrayList<Rotor> rotors = new ArrayList<>(Arrays.asList(
+                new Reflector("R1", new Permutation("(AC) (BD)", ac)),
+                new MovingRotor("R2", new Permutation("(ABCD)", ac), "C"),
+                new MovingRotor("R3", new Permutation("(ABCD)", ac), "C"),
+                new MovingRotor("R4", new Permutation("(ABCD)", ac), "C")));
+            Machine ref = new Machine(ac, 4, 3, rotors);
+            ref.insertRotors(new String[] {"R1", "R2", "R3", "R4"});
+            ref.setRotors("ACB");
+            int[] start = ref.settings();
+            EnigmaEngine e = Engines.create(name, ref, 0);
+            int[] expected = new int[200];
+            for (int i = 0; i < expected.length; i += 1) {
+                expected[i] = e.convert(i % 4);
+            }
+            int[] endSettings = e.settings();
+            ref.setSettings(start);
+            for (int i = 0; i < expected.length; i += 1) {
+                assertEquals(msg(name, "character %d", i),
+                             ref.convert(i % 4), expected[i]);
+            }
+            assertArrayEquals(name, ref.settings(), endSettings);
+        }
+    }
+
+    @Test
+    public void randomMessages() {
+        Random rand = new Random(61);
+        String[] names = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        for (int trial = 0; trial < 10; trial += 1) {
+            String[] rotors = {
+                rand.nextBoolean() ? "B" : "C",
+                rand.nextBoolean() ? "Beta" : "Gamma",
+                names[trial % 8], names[(trial + 3) % 8],
+                names[(trial + 5) % 8]
+            };
+            String start = "";
+            for (int k = 0; k < 4; k += 1) {
+                start += UPPER_STRING.charAt(rand.nextInt(26));
+            }
+            int[] msg = new int[5000];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = rand.nextInt(26);
+            }
+            Machine ref = navalMachine(rotors, start, "(AZ) (BY) (CX)");
+            int[] expected = msg.clone();
+            ref.convert(expected, 0, expected.length);
+            for (String name : Engines.NAMES) {
+                EnigmaEngine e = Engines.create(name,
+                    navalMachine(rotors, start, "(AZ) (BY) (CX)"),
+                    msg.length);
+                int[] got = msg.clone();
+                e.convert(got, 0, got.length);
+                assertArrayEquals(msg(name, "trial %d", trial),
+                                  expected, got);
+            }
+        }
+    }
+
+    @Test
+    public void steppingTable() {
+        Machine m = navalMachine(new String[] {"B", "Beta", "VI", "II", "V"},
+                                 "AAAA", "");
+        Stepping st = new Wiring(m).stepping();
+        assertTrue(st.dense());
+        assertEquals(26 * 26 * 26, st.states());
+        int[] settings = m.settings(), probe = new int[settings.length];
+        for (int s = 0; s < st.states(); s += 1) {
+            st.settings(s, settings);
+            System.arraycopy(settings, 0, probe, 0, settings.length);
+            int presses = 1;
+            while (!st.step(probe) && presses < 100) {
+                presses += 1;
+            }
+            assertEquals(msg("turnover", "state %d", s),
+                         presses == 100 ? Integer.MAX_VALUE : presses,
+                         st.untilTurnover(settings));
+            st.step(settings);
+            assertEquals(st.state(settings), st.next(s));
+        }
+
+        Random rand = new Random(43);
+        for (int trial = 0; trial < 100; trial += 1) {
+            st.settings(rand.nextInt((int) st.states()), settings);
+            System.arraycopy(settings, 0, probe, 0, settings.length);
+            int presses = rand.nextInt(2000);
+            st.advance(settings, presses);
+            for (int k = 0; k < presses; k += 1) {
+                st.step(probe);
+            }
+            assertArrayEquals(probe, settings);
+        }
+    }
+
+    @Test
+    public void reselectKeepsPosition() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine ref = navalMachine(rotors, "AXLE", "");
+        Machine m = navalMachine(rotors, "AXLE", "");
+        EnigmaEngine e = Engines.reselect(null, m, 0);
+        assertEquals("reference", e.name());
+        for (int i = 0; i < 2 * Engines.TABLE_THRESHOLD; i += 1) {
+            e = Engines.reselect(e, m, i);
+            assertEquals(ref.convert(i % 26), e.convert(i % 26));
+        }
+        assertEquals("table", e.name());
+    }
+
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Chooses and creates EnigmaEngines.  Engines are named "reference"
+ *  (ReferenceEngine), "table" (TableEngine) and "specialized" (generated by
+ *  Specializer); "auto" picks one from the amount of text to convert, the
+ *  size of the tables an engine would need, and the memory available:
+ *  short messages use the reference engine, which costs nothing to set up,
+ *  and longer ones use engines whose setup cost is repaid by faster
+ *  conversion.
+ *  @author Jennifer Hu
+ */
+class Engines {
+
+    /** Names of the available engines, as accepted by create. */
+    static final String[] NAMES = {
+        "auto", "reference", "table", "specialized"
+    };
+
+    /** Number of characters from which "auto" uses a table engine. */
+    static final long TABLE_THRESHOLD = 1 << 12;
+
+    /** Number of characters from which "auto" uses a specialized
+     *  engine, whose first generation starts a compiler and so costs
+     *  the better part of a second. */
+    static final long SPECIALIZED_THRESHOLD = 1 << 26;
+
+    /** Return the engine named NAME for M, a configured machine, to
+     *  convert about LENGTH characters.  A reference engine shares M;
+     *  other engines copy its configuration and current settings. */
+    static EnigmaEngine create(String name, Machine M, long length) {
+        switch (name) {
+        case "auto":
+            return create(choose(M, length), M, length);
+        case "reference":
+            return new ReferenceEngine(M);
+        case "table":
+            return new TableEngine(new Wiring(M), M.settings());
+        case "specialized":
+            return Specializer.specialize(M);
+        default:
+            throw error("unknown engine: %s", name);
+        }
+    }
+
+    /** Return the name of the engine that "auto" picks for M to convert
+     *  about LENGTH characters. */
+    static String choose(Machine M, long length) {
+        Runtime rt = Runtime.getRuntime();
+        long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+        if (length < TABLE_THRESHOLD || 4 * tableBytes(M) > free) {
+            return "reference";
+        } else if (length < SPECIALIZED_THRESHOLD
+                   || !Specializer.available()) {
+            return "table";
+        } else {
+            return "specialized";
+        }
+    }
+
+    /** Return CURRENT, or, if "auto" now picks a different engine for M
+     *  after LENGTH characters, that engine, continuing from CURRENT's
+     *  settings.  M must have the configuration CURRENT was created
+     *  from. */
+    static EnigmaEngine reselect(EnigmaEngine current, Machine M,
+                                 long length) {
+        String name = choose(M, length);
+        if (current != null && name.equals(current.name())) {
+            return current;
+        }
+        if (current != null) {
+            M.setSettings(current.settings());
+        }
+        return create(name, M, length);
+    }
+
+    /** Return the approximate number of bytes of tables that a compiled
+     *  engine for M needs. */
+    static long tableBytes(Machine M) {
+        long size = M.alphabet().size();
+        return size * (4L * 2 * M.numRotors() + 4 + M.numRotors());
+    }
+
+}
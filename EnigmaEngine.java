@@ -0,0 +1,93 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** A configured machine compiled into some form suitable for conversion.
+ *  Every engine converts exactly as Machine.convert does for the
+ *  configuration and settings it was created from, but they differ in
+ *  setup cost, memory and speed.  See Engines for how one is chosen.
+ *  @author Jennifer Hu
+ */
+interface EnigmaEngine {
+
+    /** Return the name by which this kind of engine is selected. */
+    String name();
+
+    /** Return my alphabet. */
+    Alphabet alphabet();
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c);
+
+    /** Return my current rotor settings, in the form returned by
+     *  Machine.settings(). */
+    int[] settings();
+
+    /** Set my rotor settings to SETTINGS, as returned by settings(). */
+    void setSettings(int[] settings);
+
+    /** Convert the LEN characters (as indices) of MSG starting at OFF in
+     *  place, advancing the machine before each. */
+    default void convert(int[] msg, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            msg[i] = convert(msg[i]);
+        }
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF as
+     *  convert(String) does, storing the result in DST starting at
+     *  DSTOFF.  Returns the number of characters stored.  This builds a
+     *  Normalizer on each call; callers converting many messages should
+     *  keep one and convert with it. */
+    default int convert(char[] src, int off, int len,
+                        char[] dst, int dstOff) {
+        return new Normalizer(alphabet(), Normalizer.Policy.ERROR)
+            .convert(this, src, off, len, dst, dstOff);
+    }
+
+    /** Convert the LEN bytes of BUF starting at OFF in place, each as
+     *  the symbol of its unsigned value, advancing the machine before
+     *  each.  My alphabet must have 256 symbols (see ByteAlphabet). */
+    default void convert(byte[] buf, int off, int len) {
+        checkBytes();
+        for (int i = off; i < off + len; i += 1) {
+            buf[i] = (byte) convert(buf[i] & 0xff);
+        }
+    }
+
+    /** Convert the bytes of BUF between its position and limit in place,
+     *  as convert(byte[], ...) does, leaving its position at its limit.
+     *  BUF may be direct. */
+    default void convert(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            convert(buf.array(), buf.arrayOffset() + buf.position(),
+                    buf.remaining());
+        } else {
+            checkBytes();
+            for (int i = buf.position(); i < buf.limit(); i += 1) {
+                buf.put(i, (byte) convert(buf.get(i) & 0xff));
+            }
+        }
+        buf.position(buf.limit());
+    }
+
+    /** Check that my alphabet has one symbol per byte value. */
+    private void checkBytes() {
+        if (alphabet().size() != ByteAlphabet.SIZE) {
+            throw EnigmaException.error("byte conversion needs an alphabet"
+                                        + " of %d symbols",
+                                        ByteAlphabet.SIZE);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, ignoring blanks and case,
+     *  as Machine.convert(String) does: any other character not in my
+     *  alphabet is an error (see Normalizer.Policy.ERROR). */
+    default String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        return new String(buf, 0, convert(buf, 0, buf.length, buf, 0));
+    }
+
+}
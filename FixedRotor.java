@@ -13,6 +13,11 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return new FixedRotor(name(), permutation(0));
+    }
+
     /** Ensures fixed rotors do not advance. */
     @Override
     void advance() {
@@ -0,0 +1,170 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A walk through a range of a KeySpace in which consecutive keys of the
+ *  same rotor order differ by a single rotor step: the starting positions
+ *  of each order are visited in modular Gray-code order, so that from one
+ *  key to the next exactly one slot's setting advances by one (modulo the
+ *  alphabet size), and that slot is the rightmost one size-1 times out of
+ *  size.  Walks are over ranges of ordinals, where ordinal
+ *  order * positions() + i denotes the i-th position of the order in walk
+ *  order; a walk can be split into independent walks over disjoint
+ *  subranges, for parallel workers.
+ *  @author Jennifer Hu
+ */
+class GrayWalk {
+
+    /** A walk over all of KEYS. */
+    GrayWalk(KeySpace keys) {
+        this(keys, 0, keys.size());
+    }
+
+    /** A walk over the ordinals FROM <= i < TO of KEYS. */
+    GrayWalk(KeySpace keys, long from, long to) {
+        if (from < 0 || to > keys.size() || from > to) {
+            throw error("walk range out of bounds");
+        }
+        _keys = keys;
+        _from = from;
+        _to = to;
+        _ordinal = from - 1;
+        _digits = new int[keys.numRotors()];
+        _settings = new int[keys.numRotors()];
+        _started = System.nanoTime();
+    }
+
+    /** Advance to the next key, returning false if the walk is over. */
+    boolean next() {
+        if (_ordinal + 1 >= _to) {
+            _ordinal = _to;
+            return false;
+        }
+        _ordinal += 1;
+        long positions = _keys.positions();
+        int size = _keys.alphabet().size();
+        if (_ordinal == _from || _ordinal % positions == 0) {
+            _order = _ordinal / positions;
+            long rank = _ordinal % positions;
+            for (int i = _digits.length - 1; i > 0; i -= 1) {
+                _digits[i] = (int) (rank % size);
+                rank /= size;
+            }
+            for (int i = 1; i < _digits.length; i += 1) {
+                _settings[i] = Math.floorMod(_digits[i]
+                                             - (i > 1 ? _digits[i - 1] : 0),
+                                             size);
+            }
+            _changed = -1;
+            return true;
+        }
+        int j = _digits.length - 1;
+        while (_digits[j] == size - 1) {
+            _digits[j] = 0;
+            j -= 1;
+        }
+        _digits[j] += 1;
+        _settings[j] = _settings[j] + 1 == size ? 0 : _settings[j] + 1;
+        _changed = j;
+        return true;
+    }
+
+    /** Return the rotor order of the current key. */
+    long order() {
+        return _order;
+    }
+
+    /** Return the current key, packed as by KeySpace.key. */
+    long key() {
+        return _keys.key(_order, _keys.position(_settings));
+    }
+
+    /** Return the settings of the current key, in the form returned by
+     *  Machine.settings().  The array is updated in place by next(), and
+     *  must not be modified. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the slot whose setting advanced to give the current key,
+     *  or -1 if the current key starts a rotor order or the walk. */
+    int changedSlot() {
+        return _changed;
+    }
+
+    /** Return the number of keys visited so far. */
+    long done() {
+        return Math.max(0, Math.min(_ordinal + 1, _to) - _from);
+    }
+
+    /** Return the number of keys not yet visited. */
+    long remaining() {
+        return _to - _from - done();
+    }
+
+    /** Return the fraction of the walk visited so far. */
+    double progress() {
+        return _to == _from ? 1.0 : (double) done() / (_to - _from);
+    }
+
+    /** Return an estimate of the nanoseconds needed to finish the walk at
+     *  the rate observed since it was created, or -1 if there is no rate
+     *  yet. */
+    long remainingNanos() {
+        long done = done();
+        if (done == 0) {
+            return -1;
+        }
+        double perKey = (double) (System.nanoTime() - _started) / done;
+        return (long) (perKey * remaining());
+    }
+
+    /** Return the unvisited part of this walk split into at most PARTS
+     *  independent walks over consecutive, nearly equal ranges. */
+    GrayWalk[] split(int parts) {
+        long from = _from + done(), left = _to - from;
+        int n = (int) Math.max(1, Math.min(parts, left));
+        GrayWalk[] result = new GrayWalk[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = new GrayWalk(_keys, from + left * i / n,
+                                     from + left * (i + 1) / n);
+        }
+        return result;
+    }
+
+    /** Return the first ordinal of this walk. */
+    long from() {
+        return _from;
+    }
+
+    /** Return the ordinal just past the end of this walk. */
+    long to() {
+        return _to;
+    }
+
+    /** The key space walked. */
+    private final KeySpace _keys;
+
+    /** The range of ordinals walked. */
+    private final long _from, _to;
+
+    /** The current ordinal. */
+    private long _ordinal;
+
+    /** Rotor order of the current key. */
+    private long _order;
+
+    /** The current position within its order in walk order, as base-size
+     *  digits in slots 1..numRotors()-1. */
+    private final int[] _digits;
+
+    /** Settings of the current key. */
+    private final int[] _settings;
+
+    /** Slot changed by the last call to next. */
+    private int _changed;
+
+    /** Time at which the walk was created. */
+    private final long _started;
+
+}
@@ -0,0 +1,541 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Streams of files that may be gzip-compressed (RFC 1952).  An input
+ *  is decompressed if it starts with the gzip magic bytes, whatever its
+ *  name, on a thread of its own that reads ahead into a few reusable
+ *  blocks passed to the reader through RingBuffers, so that
+ *  decompression overlaps whatever the reader does with the data; every
+ *  member of a file of several concatenated members is read.  An output
+ *  file is compressed if its name ends in SUFFIX: each BLOCK bytes
+ *  written become one gzip member, deflated on a shared pool of threads
+ *  while later blocks are filled, and written in order, so that
+ *  compression is spread over the processors and overlaps the writer's
+ *  own work.  Concatenated members are a valid gzip file, which gzip and
+ *  java.util.zip.GZIPInputStream read as one.
+ *  @author Jennifer Hu
+ */
+class Gzip {
+
+    /** Suffix of the names of output files to be compressed. */
+    static final String SUFFIX = ".gz";
+
+    /** Bytes of output compressed into each member. */
+    static final int BLOCK = 1 << 18;
+
+    /** Return a buffered stream of the contents of FILE, decompressed if
+     *  they are gzip-compressed. */
+    static InputStream input(File file) throws IOException {
+        return input(new FileInputStream(file));
+    }
+
+    /** Return a buffered stream of the contents of IN, decompressed if
+     *  they are gzip-compressed.  Closing it closes IN. */
+    static InputStream input(InputStream in) throws IOException {
+        BufferedInputStream result = new BufferedInputStream(in, BUFFER);
+        result.mark(2);
+        int b0 = result.read(), b1 = result.read();
+        result.reset();
+        if (b0 == MAGIC0 && b1 == MAGIC1) {
+            return new Decompressor(result);
+        }
+        return result;
+    }
+
+    /** Return true iff FILE exists and starts with the gzip magic
+     *  bytes. */
+    static boolean compressed(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == MAGIC0 && in.read() == MAGIC1;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return a buffered stream writing to FILE, which compresses what
+     *  is written iff the name of FILE ends in SUFFIX.  The stream must
+     *  be closed to finish writing. */
+    static OutputStream output(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().endsWith(SUFFIX)) {
+            return new Compressor(out);
+        }
+        return new BufferedOutputStream(out, BUFFER);
+    }
+
+    /** Return a stream that writes what is written to it to OUT,
+     *  compressed as a series of gzip members.  Closing it closes OUT. */
+    static OutputStream compressor(OutputStream out) {
+        return new Compressor(out);
+    }
+
+    /** A block of data in the read-ahead of a Decompressor. */
+    private static final class Block {
+        /** The data, of which the first LENGTH bytes are in use. */
+        private final byte[] data = new byte[BUFFER];
+        private int length;
+        /** True for the block after the last. */
+        private boolean end;
+        /** For a block in place of data, the error met. */
+        private IOException error;
+    }
+
+    /** A stream of the decompressed contents of a gzip input, read
+     *  ahead on a thread of its own.  Only one thread may read it. */
+    private static final class Decompressor extends InputStream {
+
+        /** A stream of the decompressed contents of IN, which must start
+         *  with a gzip member. */
+        Decompressor(InputStream in) {
+            _in = in;
+            for (int i = 0; i < READ_AHEAD; i += 1) {
+                _free.put(new Block());
+            }
+            Thread inflater = new Thread(this::run, "gunzip");
+            inflater.setDaemon(true);
+            inflater.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (_current == null || _pos == _current.length) {
+                if (_current != null && _current.end) {
+                    return -1;
+                }
+                if (_current != null) {
+                    _free.put(_current);
+                }
+                _current = _filled.take();
+                _pos = 0;
+                if (_current.error != null) {
+                    IOException excp = _current.error;
+                    _current.end = true;
+                    _current.length = 0;
+                    throw excp;
+                }
+            }
+            int n = Math.min(len, _current.length - _pos);
+            System.arraycopy(_current.data, _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            if (_current != null) {
+                _free.put(_current);
+                _current = null;
+            }
+            for (Block b = _filled.poll(); b != null; b = _filled.poll()) {
+                _free.put(b);
+            }
+        }
+
+        /** Decompress every member of _in into blocks passed through
+         *  _filled, then a block marking the end, until closed. */
+        private void run() {
+            _block = _free.take();
+            Inflater inflater = new Inflater(true);
+            try {
+                int b0 = readByte();
+                do {
+                    readHeader(b0);
+                    if (!inflateMember(inflater)) {
+                        return;
+                    }
+                    b0 = readByte();
+                } while (b0 >= 0);
+                if (emit()) {
+                    _block.end = true;
+                    _filled.put(_block);
+                }
+            } catch (IOException excp) {
+                _block.error = excp;
+                _filled.put(_block);
+            } catch (DataFormatException excp) {
+                _block.error = new IOException("bad gzip input");
+                _filled.put(_block);
+            } finally {
+                inflater.end();
+                try {
+                    _in.close();
+                } catch (IOException excp) {
+                    /* Everything needed has been read. */
+                }
+            }
+        }
+
+        /** Decompress the data and check the trailer of a member whose
+         *  header has been read, with INFLATER, into _block and as many
+         *  blocks after it as it fills.  Return false if the reader has
+         *  closed me. */
+        private boolean inflateMember(Inflater inflater)
+            throws IOException, DataFormatException {
+            inflater.reset();
+            CRC32 crc = new CRC32();
+            long size = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (_inPos == _inLimit && !fill()) {
+                        throw new IOException("truncated gzip input");
+                    }
+                    inflater.setInput(_buf, _inPos, _inLimit - _inPos);
+                    _inPos = _inLimit;
+                }
+                Block b = _block;
+                int n = inflater.inflate(b.data, b.length,
+                                         BUFFER - b.length);
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new IOException("bad gzip input");
+                }
+                crc.update(b.data, b.length, n);
+                size += n;
+                b.length += n;
+                if (b.length == BUFFER && !emit()) {
+                    return false;
+                }
+            }
+            _inPos = _inLimit - inflater.getRemaining();
+            if (readInt() != (int) crc.getValue() || readInt() != (int) size) {
+                throw new IOException("corrupt gzip input");
+            }
+            return true;
+        }
+
+        /** Pass _block to the reader if it holds data, replacing it with
+         *  an empty block, and return true, or return false if the reader
+         *  has closed me. */
+        private boolean emit() {
+            if (_closed) {
+                return false;
+            }
+            if (_block.length > 0) {
+                _filled.put(_block);
+                _block = _free.take();
+                _block.length = 0;
+            }
+            return !_closed;
+        }
+
+        /** Read the header of a gzip member whose first byte, B0, has
+         *  been read. */
+        private void readHeader(int b0) throws IOException {
+            if (b0 != MAGIC0 || readByte() != MAGIC1 || readByte() != 8) {
+                throw new IOException("not in gzip format");
+            }
+            int flags = readByte();
+            skip(6);
+            if ((flags & FEXTRA) != 0) {
+                skip(readByte() | readByte() << 8);
+            }
+            for (int f : new int[] { FNAME, FCOMMENT }) {
+                if ((flags & f) != 0) {
+                    for (int b = readByte(); b != 0; b = readByte()) {
+                        if (b < 0) {
+                            throw new IOException("truncated gzip input");
+                        }
+                    }
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+
+        /** Return the next compressed byte, or -1 at the end. */
+        private int readByte() throws IOException {
+            if (_inPos == _inLimit && !fill()) {
+                return -1;
+            }
+            return _buf[_inPos++] & 0xff;
+        }
+
+        /** Return the next four compressed bytes as a little-endian
+         *  int. */
+        private int readInt() throws IOException {
+            int result = 0;
+            for (int i = 0; i < 4; i += 1) {
+                int b = readByte();
+                if (b < 0) {
+                    throw new IOException("truncated gzip input");
+                }
+                result |= b << (8 * i);
+            }
+            return result;
+        }
+
+        /** Skip N compressed bytes. */
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i += 1) {
+                if (readByte() < 0) {
+                    throw new IOException("truncated gzip input");
+                }
+            }
+        }
+
+        /** Refill _buf from _in, returning false at the end. */
+        private boolean fill() throws IOException {
+            int n = _in.read(_buf, 0, _buf.length);
+            _inPos = 0;
+            _inLimit = Math.max(n, 0);
+            return n > 0;
+        }
+
+        /** The compressed input. */
+        private final InputStream _in;
+
+        /** Compressed bytes read from _in, of which those from _inPos to
+         *  _inLimit are yet to be used. */
+        private final byte[] _buf = new byte[BUFFER];
+        private int _inPos, _inLimit;
+
+        /** Blocks of decompressed data waiting for the reader, and empty
+         *  blocks waiting for the decompressor. */
+        private final RingBuffer<Block> _filled = new RingBuffer<>(READ_AHEAD),
+            _free = new RingBuffer<>(READ_AHEAD);
+
+        /** The block being filled by the decompressor. */
+        private Block _block;
+
+        /** The block being read, and the position in it. */
+        private Block _current;
+        private int _pos;
+
+        /** True once the reader has closed me. */
+        private volatile boolean _closed;
+    }
+
+    /** A stream that compresses what is written to it as a series of
+     *  gzip members deflated in parallel (see the class comment).  Only
+     *  one thread may write to it. */
+    private static final class Compressor extends OutputStream {
+
+        /** A stream that writes compressed data to OUT. */
+        Compressor(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_current == null) {
+                    _current = _free.isEmpty() ? new Member() : _free.pop();
+                    _current.length = 0;
+                }
+                int n = Math.min(len, BLOCK - _current.length);
+                System.arraycopy(b, off, _current.input, _current.length, n);
+                _current.length += n;
+                off += n;
+                len -= n;
+                if (_current.length == BLOCK) {
+                    submit();
+                }
+            }
+        }
+
+        /** Write out everything written so far, ending the current member
+         *  early if need be. */
+        @Override
+        public void flush() throws IOException {
+            if (_current != null && _current.length > 0) {
+                submit();
+            }
+            while (!_pending.isEmpty()) {
+                writeOldest();
+            }
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_out == null) {
+                return;
+            }
+            try {
+                if (!_submitted) {
+                    if (_current == null) {
+                        _current = new Member();
+                    }
+                    submit();
+                }
+                flush();
+            } finally {
+                for (Member m : _free) {
+                    m.deflater.end();
+                }
+                _out.close();
+                _out = null;
+            }
+        }
+
+        /** Start compressing the current block, first writing out the
+         *  oldest member if too many are in progress. */
+        private void submit() throws IOException {
+            if (_pending.size() >= IN_FLIGHT) {
+                writeOldest();
+            }
+            Member m = _current;
+            _current = null;
+            m.future = pool().submit(m::deflate);
+            _pending.add(m);
+            _submitted = true;
+        }
+
+        /** Wait for the oldest member in progress and write it out. */
+        private void writeOldest() throws IOException {
+            Member m = _pending.remove();
+            try {
+                m.future.get();
+            } catch (ExecutionException | InterruptedException excp) {
+                throw new IOException("could not compress output", excp);
+            }
+            _out.write(m.output, 0, m.outputLength);
+            m.future = null;
+            _free.push(m);
+        }
+
+        /** Where compressed data goes, or null once closed. */
+        private OutputStream _out;
+
+        /** The member being filled, if any. */
+        private Member _current;
+
+        /** Members being compressed, oldest first, and those free for
+         *  reuse. */
+        private final ArrayDeque<Member> _pending = new ArrayDeque<>(),
+            _free = new ArrayDeque<>();
+
+        /** True once a member has been submitted. */
+        private boolean _submitted;
+    }
+
+    /** One gzip member of the output of a Compressor, with the buffers
+     *  and Deflater used to make it, all reused for later members. */
+    private static final class Member {
+
+        /** Compress the first LENGTH bytes of INPUT into a complete gzip
+         *  member in OUTPUT. */
+        void deflate() {
+            crc.reset();
+            crc.update(input, 0, length);
+            deflater.reset();
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+            outputLength = HEADER.length;
+            while (!deflater.finished()) {
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output,
+                                                     2 * output.length);
+                }
+                outputLength += deflater.deflate(output, outputLength,
+                                                 output.length
+                                                 - outputLength);
+            }
+            if (output.length - outputLength < 8) {
+                output = Arrays.copyOf(output, outputLength + 8);
+            }
+            long[] trailer = { crc.getValue(), length };
+            for (long v : trailer) {
+                for (int i = 0; i < 4; i += 1) {
+                    output[outputLength++] = (byte) (v >>> (8 * i));
+                }
+            }
+        }
+
+        /** Uncompressed data, of which the first LENGTH bytes are in
+         *  use. */
+        private final byte[] input = new byte[BLOCK];
+        private int length;
+
+        /** The member, of which the first OUTPUTLENGTH bytes are in
+         *  use. */
+        private byte[] output = new byte[BLOCK + BLOCK / 64 + 64];
+        private int outputLength;
+
+        /** Compressor and checksum of the data. */
+        private final Deflater deflater =
+            new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+
+        /** The compression in progress, if any. */
+        private Future<?> future;
+    }
+
+    /** Return the pool that compresses members, creating it if need
+     *  be. */
+    private static synchronized ExecutorService pool() {
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r, "gzip");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return _pool;
+    }
+
+    /** The first two bytes of every gzip member. */
+    private static final int MAGIC0 = 0x1f, MAGIC1 = 0x8b;
+
+    /** Header of each member written: deflate, no flags, no time, and an
+     *  unknown operating system. */
+    private static final byte[] HEADER = {
+        (byte) MAGIC0, (byte) MAGIC1, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    /** Header flags of optional fields. */
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    /** Size of read and write buffers and decompressed blocks. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Blocks decompressed ahead of the reader. */
+    private static final int READ_AHEAD = 16;
+
+    /** Threads that compress members, and the number of members a
+     *  Compressor may have in progress at once. */
+    private static final int THREADS =
+        Runtime.getRuntime().availableProcessors();
+    private static final int IN_FLIGHT = Math.min(2 * THREADS, 16) + 1;
+
+    /** The pool that compresses members, once created. */
+    private static ExecutorService _pool;
+
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** The suite of all JUnit tests for the Gzip class.
+ *  @author
+ */
+public class GzipTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] data = sample(3 * Gzip.BLOCK + 12345);
+        byte[] packed = compress(data, 1000);
+        assertArrayEquals(data, readAll(Gzip.input(
+            new ByteArrayInputStream(packed))));
+        assertArrayEquals(data, readAll(new GZIPInputStream(
+            new ByteArrayInputStream(packed))));
+        assertTrue(packed.length < data.length * 3 / 4);
+    }
+
+    @Test
+    public void plainInput() throws IOException {
+        byte[] data = "* B Beta III IV I AXLE\nHELLO WORLD\n".getBytes();
+        assertArrayEquals(data, readAll(Gzip.input(
+            new ByteArrayInputStream(data))));
+    }
+
+    @Test
+    public void foreignMembers() throws IOException {
+        byte[] first = sample(70000), second = sample(5);
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(packed)) {
+            out.write(first);
+        }
+        packed.write(compress(second, second.length));
+        byte[] expected = Arrays.copyOf(first,
+                                        first.length + second.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        assertArrayEquals(expected, readAll(Gzip.input(
+            new ByteArrayInputStream(packed.toByteArray()))));
+    }
+
+    @Test
+    public void emptyOutput() throws IOException {
+        byte[] packed = compress(new byte[0], 1);
+        assertTrue(packed.length > 0);
+        assertEquals(0, readAll(Gzip.input(
+            new ByteArrayInputStream(packed))).length);
+    }
+
+    @Test
+    public void corruptInput() throws IOException {
+        byte[] packed = compress(sample(200000), 4096);
+        for (int cut : new int[] { packed.length - 3, packed.length / 2 }) {
+            try {
+                readAll(Gzip.input(new ByteArrayInputStream(
+                    Arrays.copyOf(packed, cut))));
+                fail("truncated input accepted");
+            } catch (IOException excp) {
+                assertEquals("truncated gzip input", excp.getMessage());
+            }
+        }
+        packed[packed.length - 6] ^= 1;
+        try {
+            readAll(Gzip.input(new ByteArrayInputStream(packed)));
+            fail("bad checksum accepted");
+        } catch (IOException excp) {
+            assertEquals("corrupt gzip input", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void closeEarly() throws IOException {
+        InputStream in = Gzip.input(new ByteArrayInputStream(
+            compress(sample(5 * Gzip.BLOCK), Gzip.BLOCK)));
+        assertTrue(in.read(new byte[100]) > 0);
+        in.close();
+    }
+
+    /** Return N bytes of text-like data. */
+    private static byte[] sample(int n) {
+        Random random = new Random(n);
+        byte[] result = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (byte) (i % 6 == 5 ? ' ' : 'A' + random.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return DATA compressed by Gzip.compressor, written in pieces of
+     *  PIECE bytes. */
+    private static byte[] compress(byte[] data, int piece)
+        throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = Gzip.compressor(result)) {
+            for (int i = 0; i < data.length; i += piece) {
+                out.write(data, i, Math.min(piece, data.length - i));
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Return the rest of the contents of IN, closing it. */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buf = new byte[7000];
+            for (int n = input.read(buf); n >= 0; n = input.read(buf)) {
+                result.write(buf, 0, n);
+            }
+            return result.toByteArray();
+        }
+    }
+
+}
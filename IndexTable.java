@@ -0,0 +1,201 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An immutable table of non-negative ints indexed from 0, stored in the
+ *  narrowest form that holds its values: bytes for values below 256,
+ *  shorts below 32768, chars below 65536 and ints otherwise.  A table
+ *  that maps most indices to themselves, as the plugboard and other
+ *  permutations of a few short cycles do, instead keeps only the indices
+ *  it moves, with their values, in an open-addressed hash table whose
+ *  capacity is a power of two at least twice their number.  One class
+ *  with a switch on the form, rather than a subclass per form, keeps
+ *  calls of get monomorphic.
+ *  @author Jennifer Hu
+ */
+final class IndexTable {
+
+    /** Forms of storage, as reported by form(). */
+    static final int BYTE = 0, SHORT = 1, CHAR = 2, INT = 3, SPARSE = 4;
+
+    /** Names of the forms, indexed by form. */
+    private static final String[] FORM_NAMES = {
+        "byte", "short", "char", "int", "sparse"
+    };
+
+    /** A sparse table is used when it would take at most 1/SPARSE_RATIO
+     *  of the bytes of the dense one, and the dense one would take at
+     *  least SPARSE_MIN_BYTES: smaller tables stay in the L1 cache, and
+     *  lookups in them are several times faster than in a hash table. */
+    static final int SPARSE_RATIO = 4, SPARSE_MIN_BYTES = 4096;
+
+    /** Return a table holding the values in VALUES, which are
+     *  non-negative, in whichever form takes the fewest bytes. */
+    static IndexTable of(int[] values) {
+        int max = 0, moved = 0;
+        for (int i = 0; i < values.length; i += 1) {
+            max = Math.max(max, values[i]);
+            if (values[i] != i) {
+                moved += 1;
+            }
+        }
+        int form = max < 1 << 8 ? BYTE : max < 1 << 15 ? SHORT
+            : max < 1 << 16 ? CHAR : INT;
+        long dense = (long) values.length * WIDTHS[form];
+        if (dense >= SPARSE_MIN_BYTES
+            && (long) hashCapacity(moved) * SPARSE_ENTRY_BYTES * SPARSE_RATIO
+            <= dense) {
+            form = SPARSE;
+        }
+        return new IndexTable(values, form, moved);
+    }
+
+    /** A table of VALUES stored in FORM, where MOVED of VALUES differ
+     *  from their indices. */
+    private IndexTable(int[] values, int form, int moved) {
+        _form = form;
+        _length = values.length;
+        switch (form) {
+        case BYTE:
+            _bytes = new byte[_length];
+            for (int i = 0; i < _length; i += 1) {
+                _bytes[i] = (byte) values[i];
+            }
+            break;
+        case SHORT:
+            _shorts = new short[_length];
+            for (int i = 0; i < _length; i += 1) {
+                _shorts[i] = (short) values[i];
+            }
+            break;
+        case CHAR:
+            _chars = new char[_length];
+            for (int i = 0; i < _length; i += 1) {
+                _chars[i] = (char) values[i];
+            }
+            break;
+        case SPARSE:
+            int capacity = hashCapacity(moved);
+            _keys = new int[capacity];
+            _ints = new int[capacity];
+            Arrays.fill(_keys, -1);
+            _shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            _moved = moved;
+            for (int i = 0; i < _length; i += 1) {
+                if (values[i] != i) {
+                    int k = hash(i);
+                    while (_keys[k] >= 0) {
+                        k = (k + 1) & (capacity - 1);
+                    }
+                    _keys[k] = i;
+                    _ints[k] = values[i];
+                }
+            }
+            break;
+        default:
+            _ints = values.clone();
+            break;
+        }
+    }
+
+    /** Return the value at index I, where 0 <= I < length(). */
+    int get(int i) {
+        switch (_form) {
+        case BYTE:
+            return _bytes[i] & 0xff;
+        case SHORT:
+            return _shorts[i];
+        case CHAR:
+            return _chars[i];
+        case SPARSE:
+            for (int k = hash(i); ; k = (k + 1) & (_keys.length - 1)) {
+                if (_keys[k] == i) {
+                    return _ints[k];
+                } else if (_keys[k] < 0) {
+                    return i;
+                }
+            }
+        default:
+            return _ints[i];
+        }
+    }
+
+    /** Return the slot of _keys at which to start looking for I. */
+    private int hash(int i) {
+        return (i * HASH_MULTIPLIER) >>> _shift;
+    }
+
+    /** Return the capacity of a hash table for MOVED keys. */
+    private static int hashCapacity(int moved) {
+        return Integer.highestOneBit(Math.max(1, moved) * 2) * 2;
+    }
+
+    /** Return the number of indices. */
+    int length() {
+        return _length;
+    }
+
+    /** Return my form of storage: BYTE, SHORT, CHAR, INT or SPARSE. */
+    int form() {
+        return _form;
+    }
+
+    /** Return the number of bytes my arrays hold. */
+    long bytes() {
+        if (_form == SPARSE) {
+            return (long) _keys.length * SPARSE_ENTRY_BYTES;
+        }
+        return (long) _length * WIDTHS[_form];
+    }
+
+    /** Return all my values as a new array. */
+    int[] toArray() {
+        int[] result = new int[_length];
+        for (int i = 0; i < _length; i += 1) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    /** Return a description of my storage such as "char[26]" or
+     *  "sparse[4 of 65536]". */
+    @Override
+    public String toString() {
+        if (_form == SPARSE) {
+            return String.format("sparse[%d of %d]", _moved, _length);
+        }
+        return String.format("%s[%d]", FORM_NAMES[_form], _length);
+    }
+
+    /** Bytes per entry of each dense form, indexed by form. */
+    private static final int[] WIDTHS = { 1, 2, 2, 4 };
+
+    /** Bytes per slot of the hash table of a sparse table. */
+    private static final int SPARSE_ENTRY_BYTES = 8;
+
+    /** My form of storage. */
+    private final int _form;
+
+    /** Number of indices. */
+    private final int _length;
+
+    /** Number of indices whose values differ from them, and the shift
+     *  that reduces a hash to a slot, when my form is SPARSE. */
+    private int _moved, _shift;
+
+    /** Values, when my form is BYTE, SHORT or CHAR. */
+    private byte[] _bytes;
+    private short[] _shorts;
+    private char[] _chars;
+
+    /** Values, when my form is INT, or the values at _keys when it is
+     *  SPARSE. */
+    private int[] _ints;
+
+    /** The indices whose values differ from them, at their hash slots,
+     *  and -1 in unused slots, when my form is SPARSE. */
+    private int[] _keys;
+
+    /** Fibonacci hashing multiplier, 2^32 divided by the golden ratio. */
+    private static final int HASH_MULTIPLIER = 0x9e3779b9;
+}
@@ -0,0 +1,496 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * An exhaustive search of the rotor orders and starting positions of a
+ * key space (without plugboard) for those that best decrypt a message,
+ * optionally restricted to keys that decrypt a crib at a given offset.
+ * Decryptions are scored by English letter frequencies.  The key space is
+ * divided into chunks of consecutive ordinals, each walked in Gray-code
+ * order (see GrayWalk), and the chunks are visited in a pseudo-random
+ * order derived from a seed, so that a partial search samples all rotor
+ * orders.  With a Checkpoint, the completed chunks, best results and seed
+ * are recorded as the search goes, and a search restarted with the same
+ * checkpoint skips the completed chunks and ends with the same results
+ * as one that was never interrupted.
+ *
+ * @author Jennifer Hu
+ */
+public final class KeySearch {
+
+    /**
+     * Search as specified by ARGS:
+     *     [--crib=TEXT@OFFSET] [--top=K] [--threads=N] [--chunk=N]
+     *     [--seed=N] [--checkpoint=FILE] CONFIG MESSAGE
+     * The machine is described by configuration file CONFIG, and the
+     * ciphertext is the concatenation of the lines of the file MESSAGE
+     * that are not setting lines.  Prints the K best keys (default 20),
+     * best first.  With --checkpoint, progress is kept in FILE and an
+     * interrupted search resumes from it.
+     */
+    public static void main(String... args) {
+        try {
+            int top = 20, threads = Runtime.getRuntime()
+                .availableProcessors();
+            long chunk = DEFAULT_CHUNK, seed = System.nanoTime();
+            String crib = null, checkpoint = null;
+            int offset = 0;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--crib":
+                    int at = opt[1].lastIndexOf('@');
+                    if (at < 0) {
+                        throw error("crib must be TEXT@OFFSET");
+                    }
+                    crib = opt[1].substring(0, at);
+                    offset = Integer.parseInt(opt[1].substring(at + 1));
+                    break;
+                case "--top":
+                    top = Integer.parseInt(opt[1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(opt[1]);
+                    break;
+                case "--chunk":
+                    chunk = Long.parseLong(opt[1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(opt[1]);
+                    break;
+                case "--checkpoint":
+                    checkpoint = opt[1];
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            if (args.length - first != 2) {
+                throw error("usage: KeySearch [options] CONFIG MESSAGE");
+            }
+            KeySpace keys = new KeySpace(ConfigReader.read(args[first]));
+            KeySearch search =
+                new KeySearch(keys, indices(keys.alphabet(),
+                                            message(args[first + 1])),
+                              crib == null ? null
+                              : indices(keys.alphabet(), crib),
+                              offset, top, chunk);
+            Checkpoint progress = null;
+            if (checkpoint != null) {
+                progress = new Checkpoint(new File(checkpoint),
+                                          search.fingerprint(),
+                                          SYNC_BATCH, SYNC_INTERVAL);
+                Checkpoint last = progress;
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(last::close));
+            }
+            long start = System.nanoTime();
+            List<Result> best = search.run(progress, threads, seed,
+                                           Long.MAX_VALUE);
+            for (Result r : best) {
+                System.out.printf("%10.2f  %s%n", r.score(),
+                                  keys.describe(r.key()));
+            }
+            System.err.printf("%d keys in %.1f s (%d resumed)%n",
+                              search.searched(),
+                              (System.nanoTime() - start) * 1e-9,
+                              search.resumed());
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the concatenation of the lines of the file named NAME that
+     *  are not setting lines. */
+    static String message(String name) throws IOException {
+        StringBuilder result = new StringBuilder();
+        for (String line : Files.readAllLines(new File(name).toPath())) {
+            if (!line.contains("*")) {
+                result.append(line);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the indices in ALPHA of the letters of TEXT, ignoring
+     *  blanks and case. */
+    static int[] indices(Alphabet alpha, String text) {
+        String msg = text.replace(" ", "").toUpperCase();
+        int[] result = new int[msg.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(msg.charAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * A search of KEYS for the TOP keys that best decrypt CIPHERTEXT (as
+     * alphabet indices), restricted to those that decrypt it to CRIB at
+     * OFFSET unless CRIB is null, visiting CHUNK keys at a time.
+     */
+    KeySearch(KeySpace keys, int[] ciphertext, int[] crib, int offset,
+              int top, long chunk) {
+        if (chunk < 1 || (keys.size() + chunk - 1) / chunk
+            > Integer.MAX_VALUE) {
+            throw error("bad chunk size: %d", chunk);
+        }
+        if (crib != null
+            && (offset < 0 || offset + crib.length > ciphertext.length)) {
+            throw error("crib does not fit the ciphertext");
+        }
+        _keys = keys;
+        _cipher = ciphertext.clone();
+        _crib = crib == null ? null : crib.clone();
+        _offset = offset;
+        _top = Math.max(1, top);
+        _chunk = chunk;
+        _chunks = (keys.size() + chunk - 1) / chunk;
+        _scores = new double[keys.alphabet().size()];
+        for (int c = 0; c < _scores.length; c += 1) {
+            int letter = keys.alphabet().toChar(c) - 'A';
+            _scores[c] = Math.log(letter >= 0 && letter < ENGLISH.length
+                                  ? ENGLISH[letter] : ENGLISH_MIN);
+        }
+    }
+
+    /** Return a fingerprint of the parameters of this search, by which a
+     *  checkpoint is matched to it. */
+    long fingerprint() {
+        long hash = FNV_OFFSET;
+        String desc = String.format("%s/%s/%d/%d/%d/%d/%d",
+                                    _keys.describe(0),
+                                    _keys.describe(_keys.size() - 1),
+                                    _keys.size(), _offset, _top, _chunk,
+                                    _crib == null ? -1 : _crib.length);
+        for (char c : desc.toCharArray()) {
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        for (int c : _cipher) {
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        for (int c : _crib == null ? new int[0] : _crib) {
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Search on THREADS threads, visiting chunks in the order given by
+     * SEED, and stopping after at most LIMIT chunks have been searched.
+     * If PROGRESS is not null, resume from the chunks, results and seed
+     * it records (ignoring SEED if it records any chunks), and record
+     * each chunk searched.  Return the best results, best first.
+     */
+    List<Result> run(Checkpoint progress, int threads, long seed,
+                     long limit) {
+        _best.clear();
+        _searched.set(0);
+        _resumed = 0;
+        if (progress != null && progress.completedCount() > 0) {
+            seed = progress.rng();
+            _resumed = progress.completedCount();
+            long[] keys = progress.keys();
+            double[] scores = progress.scores();
+            for (int i = 0; i < keys.length; i += 1) {
+                offer(new Result(keys[i], scores[i]));
+            }
+        }
+        long[] visit = visitOrder(seed);
+        AtomicLong next = new AtomicLong(), claimed = new AtomicLong();
+        long finalSeed = seed;
+        inParallel(threads,
+                   () -> work(progress, visit, next, claimed, limit,
+                              finalSeed));
+        if (progress != null) {
+            progress.sync();
+        }
+        return best();
+    }
+
+    /**
+     * Search the keys with ordinals FROM <= i < TO (see GrayWalk) on
+     * THREADS threads, forgetting the results of any previous run, and
+     * ignoring results scoring below FLOOR.  Return the best results,
+     * best first.
+     */
+    List<Result> run(long from, long to, int threads, double floor) {
+        synchronized (_best) {
+            _best.clear();
+            _floor = floor;
+        }
+        _searched.set(0);
+        _resumed = 0;
+        AtomicLong next = new AtomicLong(from);
+        inParallel(threads, () -> {
+            KeyVerifier verifier = new KeyVerifier(_keys, _cipher);
+            for (long start = next.getAndAdd(_chunk); start < to;
+                 start = next.getAndAdd(_chunk)) {
+                search(start, Math.min(start + _chunk, to), verifier);
+            }
+        });
+        List<Result> result = best();
+        synchronized (_best) {
+            _floor = Double.NEGATIVE_INFINITY;
+        }
+        return result;
+    }
+
+    /** Run BODY on each of THREADS new threads, and wait for all of them
+     *  to finish, rethrowing any exception one of them threw. */
+    private static void inParallel(int threads, Runnable body) {
+        Thread[] workers = new Thread[Math.max(1, threads)];
+        RuntimeException[] failure = new RuntimeException[1];
+        for (int w = 0; w < workers.length; w += 1) {
+            workers[w] = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (RuntimeException excp) {
+                    failure[0] = excp;
+                }
+            });
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException excp) {
+                throw error("search interrupted");
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /** Return the number of keys searched by the last run. */
+    long searched() {
+        return _searched.get();
+    }
+
+    /** Return the number of keys the last run found already searched in
+     *  its checkpoint. */
+    long resumed() {
+        return _resumed;
+    }
+
+    /** Return the chunk visited at each step, in the form of the two
+     *  coefficients A and B of the permutation i -> (A i + B) mod
+     *  _chunks, chosen from SEED. */
+    private long[] visitOrder(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long a = 1 + random.nextLong(Math.max(1, _chunks - 1));
+        while (gcd(a, _chunks) != 1) {
+            a = a % _chunks + 1;
+        }
+        return new long[] { a, random.nextLong(_chunks) };
+    }
+
+    /** Return the greatest common divisor of X and Y. */
+    private static long gcd(long x, long y) {
+        return y == 0 ? x : gcd(y, x % y);
+    }
+
+    /** Search the chunks given by VISIT from steps claimed from NEXT,
+     *  until all are claimed or LIMIT chunks have been searched
+     *  (counted in CLAIMED), recording each in PROGRESS, if not null,
+     *  with generator state SEED. */
+    private void work(Checkpoint progress, long[] visit, AtomicLong next,
+                      AtomicLong claimed, long limit, long seed) {
+        KeyVerifier verifier = new KeyVerifier(_keys, _cipher);
+        for (long i = next.getAndIncrement(); i < _chunks;
+             i = next.getAndIncrement()) {
+            long chunk = (visit[0] * i + visit[1]) % _chunks;
+            long from = chunk * _chunk,
+                to = Math.min(from + _chunk, _keys.size());
+            if (progress != null && progress.completed(from, to)) {
+                continue;
+            }
+            if (claimed.getAndIncrement() >= limit) {
+                return;
+            }
+            search(from, to, verifier);
+            if (progress != null) {
+                synchronized (_best) {
+                    List<Result> best = best();
+                    long[] keys = new long[best.size()];
+                    double[] scores = new double[best.size()];
+                    for (int k = 0; k < keys.length; k += 1) {
+                        keys[k] = best.get(k).key();
+                        scores[k] = best.get(k).score();
+                    }
+                    progress.complete(from, to, keys, scores, seed);
+                }
+            }
+        }
+    }
+
+    /** Search the keys with ordinals FROM <= i < TO with VERIFIER,
+     *  offering each that passes to the best results. */
+    private void search(long from, long to, KeyVerifier verifier) {
+        double threshold = threshold();
+        for (GrayWalk walk = new GrayWalk(_keys, from, to); walk.next();) {
+            if (_crib != null
+                && !verifier.matchesCrib(walk, null, _crib, _offset)) {
+                continue;
+            }
+            long key = walk.key();
+            double score = verifier.score(key, null, _scores, threshold);
+            if (score != Double.NEGATIVE_INFINITY) {
+                threshold = offer(new Result(key, score));
+            }
+        }
+        _searched.addAndGet(to - from);
+    }
+
+    /** Add R to the best results if it is among them and not already
+     *  there (as it may be when a chunk is searched again after an
+     *  interruption), and return the score a result must now reach to be
+     *  kept. */
+    double offer(Result r) {
+        synchronized (_best) {
+            if ((_best.size() < _top
+                 || BEST_FIRST.compare(r, _best.peek()) < 0)
+                && !_best.contains(r)) {
+                _best.add(r);
+                if (_best.size() > _top) {
+                    _best.poll();
+                }
+            }
+            return threshold();
+        }
+    }
+
+    /** Return the score a result must reach to be kept. */
+    double threshold() {
+        synchronized (_best) {
+            return _best.size() < _top ? _floor
+                : Math.max(_floor, _best.peek().score());
+        }
+    }
+
+    /** Return the best results so far, best first. */
+    List<Result> best() {
+        synchronized (_best) {
+            ArrayList<Result> result = new ArrayList<>(_best);
+            result.sort(BEST_FIRST);
+            return result;
+        }
+    }
+
+    /** A key and the score of its decryption. */
+    static class Result {
+
+        /** The result for KEY, scoring SCORE. */
+        Result(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Return the key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return the score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Result && ((Result) obj)._key == _key
+                && ((Result) obj)._score == _score;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_key) * 31 + Double.hashCode(_score);
+        }
+
+        /** The key. */
+        private final long _key;
+
+        /** Its score. */
+        private final double _score;
+    }
+
+    /** Orders results best first, breaking ties by key. */
+    private static final Comparator<Result> BEST_FIRST =
+        Comparator.comparingDouble(Result::score).reversed()
+        .thenComparingLong(Result::key);
+
+    /** Relative frequencies of the letters A-Z in English text. */
+    private static final double[] ENGLISH = {
+        .08167, .01492, .02782, .04253, .12702, .02228, .02015, .06094,
+        .06966, .00153, .00772, .04025, .02406, .06749, .07507, .01929,
+        .00095, .05987, .06327, .09056, .02758, .00978, .02360, .00150,
+        .01974, .00074,
+    };
+
+    /** Frequency assumed for symbols that are not letters. */
+    private static final double ENGLISH_MIN = .0001;
+
+    /** Default number of keys per chunk. */
+    static final long DEFAULT_CHUNK = 1 << 20;
+
+    /** Chunks per forced checkpoint write, and longest time between
+     *  forced writes in milliseconds. */
+    private static final int SYNC_BATCH = 64;
+    private static final long SYNC_INTERVAL = 10_000;
+
+    /** Parameters of the FNV-1a hash. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** The key space. */
+    private final KeySpace _keys;
+
+    /** The ciphertext and the crib, if any, as alphabet indices. */
+    private final int[] _cipher, _crib;
+
+    /** Offset of the crib in the plaintext. */
+    private final int _offset;
+
+    /** Number of results kept. */
+    private final int _top;
+
+    /** Keys per chunk, and number of chunks. */
+    private final long _chunk, _chunks;
+
+    /** Score of each plaintext symbol. */
+    private final double[] _scores;
+
+    /** The best results so far, worst first. */
+    private final PriorityQueue<Result> _best =
+        new PriorityQueue<>(BEST_FIRST.reversed());
+
+    /** Least score of a result kept by the current run. */
+    private double _floor = Double.NEGATIVE_INFINITY;
+
+    /** Keys searched by the current run. */
+    private final AtomicLong _searched = new AtomicLong();
+
+    /** Keys found already searched at the start of the current run. */
+    private long _resumed;
+
+}
@@ -0,0 +1,196 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The space of keys of a configured machine type: every rotor order (a
+ *  reflector in slot 0, non-moving rotors in the slots without pawls and
+ *  moving rotors in the slots with pawls, all distinct) combined with
+ *  every starting position.  Keys, orders and positions are numbered
+ *  densely, so that a key is packed into a long as
+ *  order * positions() + position.  A position numbers the settings of
+ *  slots 1 to numRotors()-1, with slot 1 the most significant digit.
+ *  The plugboard is not part of the key space.
+ *  @author Jennifer Hu
+ */
+class KeySpace {
+
+    /** The key space of the rotors available to M, which need not have
+     *  rotors inserted. */
+    KeySpace(Machine M) {
+        _alphabet = M.alphabet();
+        _numRotors = M.numRotors();
+        _numPawls = M.numPawls();
+        for (Rotor r : M.allRotors()) {
+            if (r.reflecting()) {
+                _reflectors.add(r);
+            } else if (r.rotates()) {
+                _moving.add(r);
+            } else {
+                _fixed.add(r);
+            }
+        }
+        int fixedSlots = _numRotors - _numPawls - 1;
+        if (fixedSlots < 0) {
+            throw error("a machine whose reflector has a pawl has no keys");
+        }
+        try {
+            long orders = _reflectors.size();
+            orders = Math.multiplyExact(orders,
+                                        arrangements(_fixed.size(),
+                                                     fixedSlots));
+            _orders = Math.multiplyExact(orders,
+                                         arrangements(_moving.size(),
+                                                      _numPawls));
+            long positions = 1;
+            for (int i = 1; i < _numRotors; i += 1) {
+                positions = Math.multiplyExact(positions, _alphabet.size());
+            }
+            _positions = positions;
+            Math.multiplyExact(_orders, _positions);
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /** Return the number of ways of placing K of N distinct rotors. */
+    private static long arrangements(int n, int k) {
+        long result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result = Math.multiplyExact(result, Math.max(0, n - i));
+        }
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of rotor orders. */
+    long orders() {
+        return _orders;
+    }
+
+    /** Return the number of starting positions per rotor order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the total number of keys. */
+    long size() {
+        return _orders * _positions;
+    }
+
+    /** Return the key for ORDER at POSITION. */
+    long key(long order, long position) {
+        return order * _positions + position;
+    }
+
+    /** Return the rotor order of KEY. */
+    long order(long key) {
+        return key / _positions;
+    }
+
+    /** Return the position of KEY. */
+    long position(long key) {
+        return key % _positions;
+    }
+
+    /** Return the rotors of rotor order ORDER, reflector first. */
+    Rotor[] rotors(long order) {
+        if (order < 0 || order >= _orders) {
+            throw error("rotor order out of range");
+        }
+        Rotor[] result = new Rotor[_numRotors];
+        result[0] = _reflectors.get((int) (order % _reflectors.size()));
+        order /= _reflectors.size();
+        order = place(_fixed, result, 1, _numRotors - _numPawls, order);
+        place(_moving, result, _numRotors - _numPawls, _numRotors, order);
+        return result;
+    }
+
+    /** Fill RESULT[FROM..TO-1] with distinct rotors from CHOICES as
+     *  numbered by INDEX, returning what remains of INDEX. */
+    private static long place(ArrayList<Rotor> choices, Rotor[] result,
+                              int from, int to, long index) {
+        boolean[] used = new boolean[choices.size()];
+        for (int i = from; i < to; i += 1) {
+            int left = choices.size() - (i - from);
+            int pick = (int) (index % left);
+            index /= left;
+            for (int k = 0; ; k += 1) {
+                if (!used[k]) {
+                    if (pick == 0) {
+                        used[k] = true;
+                        result[i] = choices.get(k);
+                        break;
+                    }
+                    pick -= 1;
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Return the wiring of rotor order ORDER with plugboard PLUGBOARD
+     *  (none if null). */
+    Wiring wiring(long order, Permutation plugboard) {
+        return new Wiring(_alphabet, rotors(order), plugboard);
+    }
+
+    /** Store the settings of POSITION into SETTINGS[1..numRotors()-1], in
+     *  the form returned by Machine.settings(). */
+    void settings(long position, int[] settings) {
+        int size = _alphabet.size();
+        for (int i = _numRotors - 1; i > 0; i -= 1) {
+            settings[i] = (int) (position % size);
+            position /= size;
+        }
+        settings[0] = 0;
+    }
+
+    /** Return the position whose settings are SETTINGS. */
+    long position(int[] settings) {
+        long result = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            result = result * _alphabet.size() + settings[i];
+        }
+        return result;
+    }
+
+    /** Return KEY as it would appear on a setting line, without the
+     *  plugboard: rotor names followed by the starting position. */
+    String describe(long key) {
+        StringBuilder result = new StringBuilder();
+        for (Rotor r : rotors(order(key))) {
+            result.append(r.name()).append(' ');
+        }
+        int[] settings = new int[_numRotors];
+        settings(position(key), settings);
+        for (int i = 1; i < _numRotors; i += 1) {
+            result.append(_alphabet.toChar(settings[i]));
+        }
+        return result.toString();
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of slots and of pawls. */
+    private final int _numRotors, _numPawls;
+
+    /** Available rotors by kind. */
+    private final ArrayList<Rotor> _reflectors = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+
+    /** Number of rotor orders and of positions per order. */
+    private final long _orders, _positions;
+
+}
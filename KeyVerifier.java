@@ -0,0 +1,209 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Checks candidate keys against a ciphertext, either for a known
+ *  plaintext fragment (a crib) or for a minimum plaintext score.  Each
+ *  check decrypts incrementally and stops as soon as the outcome is
+ *  settled: at the first letter contradicting the crib, or once the
+ *  score can no longer reach the threshold even if every remaining letter
+ *  scored as well as possible.  A check allocates nothing; the wiring of
+ *  a rotor order is compiled when the first key of that order is checked,
+ *  so candidates are best presented grouped by order.  A KeyVerifier is
+ *  not safe for use by several threads at once.
+ *  @author Jennifer Hu
+ */
+class KeyVerifier {
+
+    /** A verifier of keys from KEYS for CIPHERTEXT, given as alphabet
+     *  indices. */
+    KeyVerifier(KeySpace keys, int[] ciphertext) {
+        _keys = keys;
+        _cipher = ciphertext.clone();
+        _settings = new int[keys.numRotors()];
+        _start = new int[keys.numRotors()];
+        _innerSettings = new int[keys.numRotors()];
+        _inner = new int[keys.alphabet().size()];
+        _innerStamp = new int[keys.alphabet().size()];
+        Arrays.fill(_innerStamp, -1);
+        _identity = new int[keys.alphabet().size()];
+        for (int c = 0; c < _identity.length; c += 1) {
+            _identity[c] = c;
+        }
+    }
+
+    /** Return true iff KEY with plugboard PLUGBOARD (a table of images,
+     *  or null for none) decrypts the ciphertext so that the letters
+     *  starting at OFFSET are CRIB (as indices). */
+    boolean matchesCrib(long key, int[] plugboard, int[] crib, int offset) {
+        if (offset < 0 || offset + crib.length > _cipher.length) {
+            throw error("crib does not fit the ciphertext");
+        }
+        Wiring wiring = start(key);
+        int[] plug = plugboard == null ? _identity : plugboard;
+        wiring.stepping().advance(_settings, offset);
+        for (int t = 0; t < crib.length; t += 1) {
+            wiring.step(_settings);
+            int c = wiring.convert(_settings, plug[_cipher[offset + t]]);
+            if (plug[c] != crib[t]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff the current key of WALK with plugboard PLUGBOARD
+     *  matches CRIB at OFFSET, as for matchesCrib(long, ...).  The
+     *  combined conversion of all but the rightmost rotor (see
+     *  Wiring.inner) at the starting position is memoized, entry by entry
+     *  as needed, and forgotten only when one of those rotors differs
+     *  from the previous key's.  A walk in which consecutive keys mostly
+     *  differ in the rightmost rotor thus converts most letters with
+     *  only the rightmost rotor's tables and one lookup. */
+    boolean matchesCrib(GrayWalk walk, int[] plugboard, int[] crib,
+                        int offset) {
+        if (offset < 0 || offset + crib.length > _cipher.length) {
+            throw error("crib does not fit the ciphertext");
+        }
+        if (walk.order() != _order) {
+            _wiring = _keys.wiring(walk.order(), null);
+            _order = walk.order();
+            _key = -2;
+            _innerValid = false;
+        }
+        Wiring wiring = _wiring;
+        int[] start = walk.settings();
+        int last = start.length - 1;
+        for (int i = 1; i < last && _innerValid; i += 1) {
+            _innerValid = _innerSettings[i] == start[i];
+        }
+        if (!_innerValid) {
+            System.arraycopy(start, 0, _innerSettings, 0, start.length);
+            _generation += 1;
+            if (_generation == 0) {
+                Arrays.fill(_innerStamp, -1);
+            }
+            _innerValid = true;
+        }
+        System.arraycopy(start, 0, _settings, 0, start.length);
+        int[] plug = plugboard == null ? _identity : plugboard;
+        int[] fLast = wiring.forward(last), bLast = wiring.backward(last);
+        boolean memo = true;
+        for (int t = 0; t < offset + crib.length; t += 1) {
+            memo &= !wiring.step(_settings);
+            if (t >= offset) {
+                int x = wiring.shift(fLast, plug[_cipher[t]],
+                                     _settings[last]);
+                if (!memo) {
+                    x = wiring.inner(_settings, x);
+                } else if (_innerStamp[x] == _generation) {
+                    x = _inner[x];
+                } else {
+                    _innerStamp[x] = _generation;
+                    x = _inner[x] = wiring.inner(_settings, x);
+                }
+                x = wiring.shift(bLast, x, _settings[last]);
+                if (plug[x] != crib[t - offset]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return the score of the decryption of the ciphertext by KEY with
+     *  plugboard PLUGBOARD (as for matchesCrib), where each plaintext
+     *  letter c contributes SCORES[c], or negative infinity as soon as
+     *  the score is certain to fall below THRESHOLD. */
+    double score(long key, int[] plugboard, double[] scores,
+                 double threshold) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (double s : scores) {
+            best = Math.max(best, s);
+        }
+        Wiring wiring = start(key);
+        int[] plug = plugboard == null ? _identity : plugboard;
+        double total = 0;
+        for (int t = 0; t < _cipher.length; t += 1) {
+            wiring.step(_settings);
+            total += scores[plug[wiring.convert(_settings,
+                                                 plug[_cipher[t]])]];
+            if (total + (_cipher.length - t - 1) * best < threshold) {
+                return Double.NEGATIVE_INFINITY;
+            }
+        }
+        return total;
+    }
+
+    /** Return the wiring of KEY's rotor order, and set _settings to its
+     *  starting position.  Consecutive keys of one order are found by
+     *  incrementing the previous position rather than decoding KEY. */
+    private Wiring start(long key) {
+        long order = _keys.order(key);
+        if (order != _order) {
+            _wiring = _keys.wiring(order, null);
+            _order = order;
+            _key = -2;
+            _innerValid = false;
+        }
+        if (key == _key + 1) {
+            int size = _identity.length;
+            for (int i = _start.length - 1; i > 0; i -= 1) {
+                _start[i] += 1;
+                if (_start[i] < size) {
+                    break;
+                }
+                _start[i] = 0;
+            }
+        } else if (key != _key) {
+            _keys.settings(_keys.position(key), _start);
+        }
+        _key = key;
+        System.arraycopy(_start, 0, _settings, 0, _start.length);
+        return _wiring;
+    }
+
+    /** The key space. */
+    private final KeySpace _keys;
+
+    /** The ciphertext. */
+    private final int[] _cipher;
+
+    /** Settings of the key being checked. */
+    private final int[] _settings;
+
+    /** Starting settings of _key. */
+    private final int[] _start;
+
+    /** The last key started. */
+    private long _key;
+
+    /** Settings at which _inner applies. */
+    private final int[] _innerSettings;
+
+    /** True iff _innerSettings are those of the last key walked. */
+    private boolean _innerValid;
+
+    /** Combined conversion of all but the rightmost rotor (see
+     *  Wiring.inner) at _innerSettings, where _innerStamp is
+     *  _generation. */
+    private final int[] _inner;
+
+    /** Generation in which each entry of _inner was computed. */
+    private final int[] _innerStamp;
+
+    /** Current generation of _inner. */
+    private int _generation;
+
+    /** The identity plugboard. */
+    private final int[] _identity;
+
+    /** Rotor order of _wiring, or -1. */
+    private long _order = -1;
+
+    /** Wiring of the last rotor order checked, without plugboard. */
+    private Wiring _wiring;
+
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyVerifier class.
+ *  @author
+ */
+public class KeyVerifierTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    private static final String PLAIN = "FROMHISSHOULDERHIAWATHA";
+
+    /** Return the indices of the letters of S. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the number of the rotor order of KEYS with the rotors
+     *  named ROTORS. */
+    private static long orderOf(KeySpace keys, String[] rotors) {
+        for (long k = 0; k < keys.orders(); k += 1) {
+            Rotor[] slots = keys.rotors(k);
+            boolean same = true;
+            for (int i = 0; i < slots.length; i += 1) {
+                same &= slots[i].name().equals(rotors[i]);
+            }
+            if (same) {
+                return k;
+            }
+        }
+        throw new AssertionError("no such order");
+    }
+
+    @Test
+    public void findsTheKey() {
+        Machine config = new Machine(UPPER, 5, 3, navalRotors());
+        KeySpace keys = new KeySpace(config);
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine m = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)");
+        int[] cipher = indices(m.convert(PLAIN));
+        int[] plug = new int[26];
+        for (int c = 0; c < 26; c += 1) {
+            plug[c] = m.plugboard().permute(c);
+        }
+        long order = orderOf(keys, rotors);
+        long key = keys.key(order, 0 * 26 * 26 * 26 + 23 * 26 * 26
+                            + 11 * 26 + 4);
+        assertEquals("B Beta III IV I AXLE", keys.describe(key));
+
+        KeyVerifier verifier = new KeyVerifier(keys, cipher);
+        int[] crib = indices("HIAWATHA");
+        assertTrue(verifier.matchesCrib(key, plug, crib, 15));
+        int matches = 0;
+        for (long p = 0; p < keys.positions(); p += 1) {
+            if (verifier.matchesCrib(keys.key(order, p), plug, crib, 15)) {
+                matches += 1;
+            }
+        }
+        assertEquals(1, matches);
+
+        double[] scores = new double[26];
+        for (char ch : PLAIN.toCharArray()) {
+            scores[UPPER.toInt(ch)] = 1;
+        }
+        assertEquals(PLAIN.length(),
+                     verifier.score(key, plug, scores, PLAIN.length()),
+                     1e-9);
+        assertEquals(Double.NEGATIVE_INFINITY,
+                     verifier.score(key + 1, plug, scores, PLAIN.length()),
+                     0);
+    }
+
+    @Test
+    public void grayWalk() {
+        Machine config = new Machine(UPPER, 5, 3, navalRotors());
+        KeySpace keys = new KeySpace(config);
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine m = navalMachine(rotors, "AXLE", "");
+        int[] cipher = indices(m.convert(PLAIN));
+        int[] crib = indices("SHOULDER");
+        long order = orderOf(keys, rotors);
+        KeyVerifier byKey = new KeyVerifier(keys, cipher),
+            byWalk = new KeyVerifier(keys, cipher);
+        GrayWalk whole = new GrayWalk(keys, order * keys.positions(),
+                                      (order + 1) * keys.positions());
+        boolean[] seen = new boolean[(int) keys.positions()];
+        int matches = 0;
+        int[] prev = null;
+        for (GrayWalk walk : whole.split(3)) {
+            while (walk.next()) {
+                int[] now = walk.settings();
+                if (walk.changedSlot() >= 0) {
+                    int changed = 0;
+                    for (int i = 1; i < now.length; i += 1) {
+                        if (now[i] != prev[i]) {
+                            changed += 1;
+                            assertEquals((prev[i] + 1) % 26, now[i]);
+                            assertEquals(walk.changedSlot(), i);
+                        }
+                    }
+                    assertEquals(1, changed);
+                }
+                prev = now.clone();
+                long key = walk.key();
+                assertEquals(order, keys.order(key));
+                assertFalse(seen[(int) keys.position(key)]);
+                seen[(int) keys.position(key)] = true;
+                boolean match = byKey.matchesCrib(key, null, crib, 7);
+                assertEquals(match, byWalk.matchesCrib(walk, null, crib, 7));
+                matches += match ? 1 : 0;
+            }
+            assertEquals(0, walk.remaining());
+            assertEquals(1.0, walk.progress(), 0);
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+        assertEquals(1, matches);
+    }
+
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A precomputed substitution schedule: the permutations that a configured
+ *  Machine applies to each of its next length() characters.  Converting
+ *  with a Keystream is a table lookup per character.  When the rotor
+ *  settings start repeating (see StepPeriod) within the positions asked
+ *  for, the schedule stops there and its last cycle() positions repeat
+ *  forever.
+ *  @author Jennifer Hu
+ */
+class Keystream {
+
+    /** A schedule for the next LENGTH positions of M, which must be fully
+     *  configured, or for fewer positions if they cover every setting
+     *  that M will ever reach.  M is stepped to compute the schedule and
+     *  is then restored to its original settings. */
+    Keystream(Machine M, int length) {
+        if (length < 0) {
+            throw error("negative keystream length");
+        }
+        _size = M.alphabet().size();
+        int[] start = M.settings();
+        long[] orbit = M.stepping().period().orbit(start, length);
+        if (orbit != null) {
+            length = (int) (orbit[0] + orbit[1]);
+            _cycle = (int) orbit[1];
+        } else {
+            _cycle = 0;
+        }
+        _length = length;
+        _table = new char[length * _size];
+        for (int p = 0, k = 0; p < length; p += 1) {
+            M.advanceRotors();
+            for (int c = 0; c < _size; c += 1, k += 1) {
+                _table[k] = (char) M.transform(c);
+            }
+        }
+        _finalSettings = M.settings();
+        M.setSettings(start);
+    }
+
+    /** Return the number of positions I cover. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of positions at my end that repeat after
+     *  length(), or 0 if conversion continues from finalSettings(). */
+    int cycle() {
+        return _cycle;
+    }
+
+    /** Return the size of the alphabet I permute. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the conversion of C (an index in the range 0..size()-1) at
+     *  position POSN, where 0 <= POSN < length(). */
+    int convert(int posn, int c) {
+        return _table[posn * _size + c];
+    }
+
+    /** Return the rotor settings of the machine after length()
+     *  characters, as given by Machine.settings(). */
+    int[] finalSettings() {
+        return _finalSettings;
+    }
+
+    /** Return the approximate number of bytes my schedule occupies. */
+    long bytes() {
+        return 2L * _table.length;
+    }
+
+    /** Number of positions covered, and of those that repeat. */
+    private final int _length, _cycle;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Conversion of character c at position p, at index p * _size + c. */
+    private final char[] _table;
+
+    /** Rotor settings after the last position. */
+    private final int[] _finalSettings;
+
+}
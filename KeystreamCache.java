@@ -0,0 +1,144 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of Keystreams keyed by setting line ("*" line), so that
+ *  messages sent under a repeated daily key are converted by table lookup.
+ *  Building a schedule costs far more than converting a short message
+ *  directly, so a schedule is built only when its setting line is seen
+ *  for the second time; the lines seen once are remembered in a bounded
+ *  set.  The least recently used schedules are evicted once the total
+ *  size of the cached schedules exceeds a byte capacity.
+ *  @author Jennifer Hu
+ */
+class KeystreamCache {
+
+    /** Default number of positions precomputed per setting line. */
+    static final int DEFAULT_POSITIONS = 256;
+
+    /** Default capacity in bytes. */
+    static final long DEFAULT_CAPACITY = 16L << 20;
+
+    /** Most setting lines remembered as seen once. */
+    static final int SEEN_LIMIT = 1 << 16;
+
+    /** A cache with the default number of positions and capacity. */
+    KeystreamCache() {
+        this(DEFAULT_POSITIONS, DEFAULT_CAPACITY);
+    }
+
+    /** A cache holding schedules of POSITIONS positions, evicting the
+     *  least recently used once they occupy more than CAPACITY bytes. */
+    KeystreamCache(int positions, long capacity) {
+        if (positions < 0 || capacity < 0) {
+            throw error("bad keystream cache dimensions");
+        }
+        _positions = positions;
+        _capacity = capacity;
+    }
+
+    /** Return the schedule for SETTING, a setting line to which M has just
+     *  been configured, computing it from M if it is not cached and
+     *  SETTING has been seen before.  Returns null the first time SETTING
+     *  is seen, and if the schedule would not fit in the cache at all. */
+    Keystream get(String setting, Machine M) {
+        String key = normalize(setting);
+        Keystream result = _entries.get(key);
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        _misses += 1;
+        long bytes = 2L * _positions * M.alphabet().size();
+        if (bytes > _capacity) {
+            return null;
+        }
+        if (_seen.remove(key) == null) {
+            _seen.put(key, Boolean.TRUE);
+            if (_seen.size() > SEEN_LIMIT) {
+                _seen.remove(_seen.keySet().iterator().next());
+            }
+            return null;
+        }
+        _builds += 1;
+        result = new Keystream(M, _positions);
+        _entries.put(key, result);
+        _bytes += result.bytes();
+        Iterator<Map.Entry<String, Keystream>> eldest =
+            _entries.entrySet().iterator();
+        while (_bytes > _capacity) {
+            _bytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+            _evictions += 1;
+        }
+        return result;
+    }
+
+    /** Return SETTING with surrounding whitespace removed and interior
+     *  whitespace collapsed to single blanks. */
+    static String normalize(String setting) {
+        return SettingCache.normalize(setting);
+    }
+
+    /** Return the number of lookups that found a cached schedule. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found no cached schedule. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of schedules computed. */
+    long builds() {
+        return _builds;
+    }
+
+    /** Return the number of schedules evicted to respect the capacity. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the fraction of lookups that were hits (0 if none). */
+    double hitRate() {
+        long total = _hits + _misses;
+        return total == 0 ? 0.0 : (double) _hits / total;
+    }
+
+    /** Return the number of schedules currently cached. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of bytes occupied by the cached schedules. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Positions per schedule. */
+    private final int _positions;
+
+    /** Maximum total bytes of cached schedules. */
+    private final long _capacity;
+
+    /** Cached schedules, least recently used first. */
+    private final LinkedHashMap<String, Keystream> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Setting lines seen once and not cached, least recently seen
+     *  first. */
+    private final LinkedHashMap<String, Boolean> _seen =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total bytes of cached schedules. */
+    private long _bytes;
+
+    /** Lookup statistics. */
+    private long _hits, _misses, _builds, _evictions;
+
+}
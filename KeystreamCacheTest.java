@@ -0,0 +1,120 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+    private static final String PLUGS = "(HQ) (EX) (IP) (TR) (BY)";
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void scheduleMatchesMachine() {
+        Machine plain = navalMachine(ROTORS, "AXLE", PLUGS);
+        Machine cached = navalMachine(ROTORS, "AXLE", PLUGS);
+        KeystreamCache cache = new KeystreamCache(40, 1 << 20);
+        assertNull(cache.get(SETTING, cached));
+        Keystream schedule = cache.get(SETTING, cached);
+        assertNotNull(schedule);
+        cached.useKeystream(schedule);
+        for (int i = 0; i < 100; i += 1) {
+            int c = (i * 7) % 26;
+            assertEquals(msg("schedule", "position %d", i),
+                         plain.convert(c), cached.convert(c));
+        }
+    }
+
+    @Test
+    public void builtOnSecondSight() {
+        KeystreamCache cache = new KeystreamCache(10, 1 << 20);
+        for (int i = 0; i < 3; i += 1) {
+            Machine m = navalMachine(ROTORS, "AAA" + (char) ('A' + i),
+                                     PLUGS);
+            assertNull(cache.get("* B Beta III IV I AAA" + (char) ('A' + i),
+                                 m));
+        }
+        assertEquals(0, cache.builds());
+        assertEquals(0, cache.size());
+        Machine m = navalMachine(ROTORS, "AAAB", PLUGS);
+        assertNotNull(cache.get("* B Beta III IV I AAAB", m));
+        assertEquals(1, cache.builds());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void settingsDuringSchedule() {
+        Machine plain = navalMachine(ROTORS, "AXLE", PLUGS);
+        Machine cached = navalMachine(ROTORS, "AXLE", PLUGS);
+        cached.useKeystream(new Keystream(cached, 40));
+        for (int i = 0; i < 30; i += 1) {
+            plain.convert(i % 26);
+            cached.convert(i % 26);
+        }
+        assertArrayEquals(plain.settings(), cached.settings());
+        assertEquals(plain.convert(3), cached.convert(3));
+    }
+
+    @Test
+    public void hitsAndEviction() {
+        KeystreamCache cache = new KeystreamCache(10, 2 * 10 * 26 * 2);
+        get(cache, "AXLE");
+        Keystream first = get(cache, "AXLE");
+        assertSame(first, cache.get("  " + SETTING.replace(" ", "   "),
+                                    navalMachine(ROTORS, "AXLE", PLUGS)));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        get(cache, "AAAA");
+        get(cache, "AAAA");
+        get(cache, "AXLE");
+        get(cache, "BBBB");
+        get(cache, "BBBB");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(2.0 / 8, cache.hitRate(), 1e-9);
+        assertNotNull(cache.get(SETTING,
+                                navalMachine(ROTORS, "AXLE", PLUGS)));
+    }
+
+    @Test
+    public void cachedSchedulesMatchKeys() {
+        KeystreamCache cache = new KeystreamCache(30, 1 << 20);
+        String[] positions = { "AXLE", "AAAA", "QRST", "AXLE", "AAAA" };
+        for (int round = 0; round < 2; round += 1) {
+            for (String p : positions) {
+                Keystream schedule = get(cache, p);
+                if (schedule == null) {
+                    continue;
+                }
+                Machine fresh = navalMachine(ROTORS, p, PLUGS);
+                for (int i = 0; i < schedule.length(); i += 1) {
+                    int c = (i * 5) % 26;
+                    assertEquals(msg(p, "position %d", i),
+                                 fresh.convert(c), schedule.convert(i, c));
+                }
+            }
+        }
+        assertEquals(3, cache.size());
+    }
+
+    /** Return the schedule from CACHE for the setting line with the
+     *  rotors ROTORS and plugboard PLUGS at POSITIONS, looked up with a
+     *  machine set up by that line. */
+    private static Keystream get(KeystreamCache cache, String positions) {
+        return cache.get(SETTING.replace("AXLE", positions),
+                         navalMachine(ROTORS, positions, PLUGS));
+    }
+
+}
@@ -1,7 +1,9 @@
 package enigma;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import static enigma.EnigmaException.*;
 
@@ -23,6 +25,76 @@ class Machine {
 
     }
 
+    /** A new Enigma machine as for Machine(ALPHA, NUMROTORS, PAWLS, ...)
+     *  whose available rotors are those of CATALOG.  Each is copied from
+     *  the catalog when first inserted, so that only the rotors used are
+     *  ever parsed. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
+        this(alpha, numRotors, pawls, (Collection<Rotor>) null);
+        _catalog = catalog;
+        _loaded = new HashMap<>();
+    }
+
+    /** Return a new machine with my alphabet, slots and pawls, and
+     *  copies of all my available rotors, with none inserted.  The copy
+     *  shares my rotors' permutations, which never change, and nothing
+     *  else, so that it may be used on another thread. */
+    Machine copy() {
+        if (_catalog != null) {
+            return new Machine(_alphabet, _numRotors, _numPawls, _catalog);
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors) {
+            rotors.add(r.copy());
+        }
+        return new Machine(_alphabet, _numRotors, _numPawls, rotors);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return all the rotors available to me.  For a machine made from
+     *  a RotorCatalog, this parses all of them. */
+    Collection<Rotor> allRotors() {
+        if (_catalog != null) {
+            ArrayList<Rotor> result = new ArrayList<>();
+            HashSet<String> seen = new HashSet<>();
+            for (String name : _catalog.names()) {
+                if (seen.add(name.toUpperCase())) {
+                    result.add(rotor(name));
+                }
+            }
+            return result;
+        }
+        return _allRotors;
+    }
+
+    /** Return my available rotor named NAME, in either case, or null if
+     *  there is none.  Where several have the name, returns the last. */
+    Rotor rotor(String name) {
+        if (_catalog != null) {
+            String key = name.toUpperCase();
+            Rotor result = _loaded.get(key);
+            if (result == null) {
+                result = _catalog.rotor(key);
+                if (result != null) {
+                    result = result.copy();
+                    _loaded.put(key, result);
+                }
+            }
+            return result;
+        }
+        Rotor result = null;
+        for (Rotor current : _allRotors) {
+            if (name.toUpperCase().equals(current.name().toUpperCase())) {
+                result = current;
+            }
+        }
+        return result;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -35,16 +107,61 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting, and the rotors
+     *  inserted are at ring setting 0. */
     void insertRotors(String[] rotors) {
         for (int i = 0; i < rotors.length; i++) {
-            for (Rotor current: _allRotors) {
-                if (rotors[i].toUpperCase()
-                        .equals(current.name().toUpperCase())) {
-                    rotorsList[i] = current;
-                }
+            Rotor current = rotor(rotors[i]);
+            if (current != null) {
+                rotorsList[i] = current;
+                current.setRing(0);
             }
         }
+        _keystream = null;
+    }
+
+    /** Set my rotor slots to ROTORS, which must be drawn from my set of
+     *  available rotors, as insertRotors(String[]) would. */
+    void insertRotors(Rotor[] rotors) {
+        System.arraycopy(rotors, 0, rotorsList, 0, rotors.length);
+        for (Rotor r : rotors) {
+            r.setRing(0);
+        }
+        _keystream = null;
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, a string
+     *  of numRotors()-1 characters of my alphabet, as for setRotors.
+     *  Each setting is folded into its rotor's permutation (see
+     *  Rotor.setRing), so conversion is no slower with rings. */
+    void setRings(String rings) {
+        if (rings.length() != _numRotors - 1) {
+            throw error("ring setting must have %d characters",
+                        _numRotors - 1);
+        }
+        int[] result = new int[_numRotors];
+        for (int i = 1; i < _numRotors; i += 1) {
+            result[i] = _alphabet.toInt(rings.charAt(i - 1));
+        }
+        setRings(result);
+    }
+
+    /** Set my ring settings to RINGS, as returned by rings(). */
+    void setRings(int[] rings) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            rotorsList[i].setRing(rings[i]);
+        }
+        _keystream = null;
+    }
+
+    /** Return the ring settings of my rotor slots, slot 0 (the
+     *  reflector, always 0) first. */
+    int[] rings() {
+        int[] result = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            result[i] = rotorsList[i].ring();
+        }
+        return result;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -54,83 +171,155 @@ class Machine {
         for (int i = 1; i < rotorsList.length; i += 1) {
             rotorsList[i].set(setting.charAt(i - 1));
         }
+        _keystream = null;
+    }
+
+    /** Return my plugboard, or null if none has been set. */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _keystream = null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-
      *  the machine. */
     int convert(int c) {
-        HashMap<String, Rotor> availrotors = new HashMap<String, Rotor>();
-        for (Rotor current : _allRotors) {
-            availrotors.put(current.name().toUpperCase(), current);
-        }
-        for (int i = 0; i < rotorsList.length; i += 1) {
-            String name = rotorsList[i].name().toUpperCase();
-            if (availrotors.containsKey(name)) {
-                rotorsList[i] = availrotors.get(name);
+        if (_keystream != null) {
+            if (_position == _keystream.length()) {
+                _position -= _keystream.cycle();
             }
-        }
-        boolean[] convertible = new boolean[numRotors()];
-        for (int i = rotorsList.length - 1; i > 1; i -= 1) {
-            if (rotorsList[i].atNotch()) {
-                if (rotorsList[i].rotates()) {
-                    convertible[i] = true;
-                }
-                if (rotorsList[i - 1].rotates()) {
-                    convertible[i - 1] = true;
-                }
+            if (_position < _keystream.length()) {
+                _position += 1;
+                return _keystream.convert(_position - 1, c);
             }
+            setSettings(_keystream.finalSettings());
         }
-        convertible[numRotors() - 1] = true;
+        advanceRotors();
+        return transform(c);
+    }
 
-        for (int i = 0; i < convertible.length; i++) {
-            if (convertible[i]) {
-                rotorsList[i].advance();
+    /** Advance the rotors one keypress, as is done before each character
+     *  is converted. */
+    void advanceRotors() {
+        Rotor[] rotors = rotorsList;
+        boolean advancePrev = true;
+        for (int i = rotors.length - 1; i > 0; i -= 1) {
+            Rotor r = rotors[i];
+            boolean notched = i > 1 && r.atNotch();
+            boolean advances = advancePrev || notched && r.rotates();
+            advancePrev = notched && rotors[i - 1].rotates();
+            if (advances) {
+                r.advance();
             }
         }
+    }
+
+    /** Returns the result of converting C (as an index in the range
+     *  0..alphabet size - 1) at the current rotor settings, without
+     *  advancing the machine. */
+    int transform(int c) {
+        int result = c;
         if (_plugboard != null) {
-            int result = _plugboard.permute(c);
-            for (int i = _numRotors - 1;  i >= 0; i--) {
-                result = rotorsList[i].convertForward(result);
-            }
-            for (int i = 1; i < _numRotors; i++) {
-                result = rotorsList[i].convertBackward(result);
-            }
             result = _plugboard.permute(result);
-            return result;
-        } else {
-            int result = c;
-            for (int i = _numRotors - 1;  i >= 0; i--) {
-                result = rotorsList[i].convertForward(result);
-            }
-            for (int i = 1; i < _numRotors; i++) {
-                result = rotorsList[i].convertBackward(result);
+        }
+        for (int i = _numRotors - 1;  i >= 0; i--) {
+            result = rotorsList[i].convertForward(result);
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            result = rotorsList[i].convertBackward(result);
+        }
+        if (_plugboard != null) {
+            result = _plugboard.permute(result);
+        }
+        return result;
+    }
+
+    /** Return the stepping of my rotors, which must all have been
+     *  inserted. */
+    Stepping stepping() {
+        return Stepping.of(_alphabet.size(), rotorsList);
+    }
+
+    /** Return the current settings of my rotor slots, slot 0 (the
+     *  reflector) first. */
+    int[] settings() {
+        leaveKeystream();
+        int[] result = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            result[i] = rotorsList[i].setting();
+        }
+        return result;
+    }
+
+    /** Set my rotor slots to SETTINGS, as returned by settings(). */
+    void setSettings(int[] settings) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            rotorsList[i].set(settings[i]);
+        }
+        _keystream = null;
+    }
+
+    /** Stop using the current keystream, if any, bringing my rotors to
+     *  the settings they would have had without it. */
+    private void leaveKeystream() {
+        if (_keystream != null) {
+            int consumed = _position;
+            _keystream = null;
+            for (int i = 0; i < consumed; i += 1) {
+                advanceRotors();
             }
-            return result;
         }
+    }
+
+    /** Use KEYSTREAM, which must have been built from my current
+     *  configuration, for the next KEYSTREAM.length() characters,
+     *  after which conversion continues from its final settings, or,
+     *  if KEYSTREAM repeats, for all characters.
+     *  A null KEYSTREAM converts without a schedule.  Inserting or
+     *  setting rotors, or changing the plugboard, discards it. */
+    void useKeystream(Keystream keystream) {
+        _keystream = keystream;
+        _position = 0;
+    }
 
+    /** Convert the LEN characters (as indices) of MSG starting at OFF in
+     *  place, advancing the machine before each. */
+    void convert(int[] msg, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            msg[i] = convert(msg[i]);
+        }
     }
 
+    /** Convert the LEN characters of SRC starting at OFF as
+     *  convert(String) does, ignoring blanks and case, and store the
+     *  result in DST starting at DSTOFF.  Returns the number of characters
+     *  stored.  SRC and DST may be the same array. */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        return normalizer().convert(_self, src, off, len, dst, dstOff);
+    }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  Blanks are ignored, and lower-case
+     *  letters converted as upper-case ones; any other character not in
+     *  my alphabet is an error. */
     String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        msg = msg.toUpperCase();
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char converted = _alphabet.toChar
-                    (convert(_alphabet.toInt(msg.charAt(i))));
-            result += converted;
-        }
-        return result;
+        return normalizer().convert(_self, msg);
+    }
 
+    /** Return the normalizer of text for convert, creating it if
+     *  need be. */
+    private Normalizer normalizer() {
+        if (_normalizer == null) {
+            _normalizer = new Normalizer(_alphabet,
+                                         Normalizer.Policy.ERROR);
+            _self = new ReferenceEngine(this);
+        }
+        return _normalizer;
     }
 
     /** Common alphabet of my rotors. */
@@ -142,15 +331,31 @@ class Machine {
     /** Number of pawls. */
     private int _numPawls;
 
-    /** Collection of rotors. */
+    /** Collection of rotors, or null if they come from _catalog. */
     private Collection<Rotor> _allRotors;
 
+    /** Catalog of my available rotors, or null if they are _allRotors,
+     *  and my copies of those inserted so far, by upper-cased name. */
+    private RotorCatalog _catalog;
+    private HashMap<String, Rotor> _loaded;
+
     /** Array of rotors. */
     private Rotor[] rotorsList;
 
     /** Saves plugboard as permutation. */
     private Permutation _plugboard;
 
+    /** Normalizer of text for convert, and an engine converting with me
+     *  for it to use, once created. */
+    private Normalizer _normalizer;
+    private ReferenceEngine _self;
+
+    /** Precomputed schedule in use, or null. */
+    private Keystream _keystream;
+
+    /** Number of characters of _keystream consumed so far. */
+    private int _position;
+
     /** /** Returns rotorsList. Allows for this to be
      * called in Main and thus able to be used.
      */
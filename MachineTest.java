@@ -138,5 +138,54 @@ public class MachineTest {
         assertEquals("IHBDQQMTQZ", machine2.convert("Helloworld"));
     }
 
+    @Test
+    public void copyIsIndependent() {
+        Machine original = new Machine(UPPER, 5, 3, navalRotors());
+        Machine copy = original.copy();
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        original.insertRotors(rotors);
+        original.setRotors("AXLE");
+        original.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        copy.insertRotors(rotors);
+        copy.setRotors("AXLE");
+        copy.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        String cipher = original.convert("FROMHISSHOULDERHIAWATHA");
+        assertEquals(cipher, copy.convert("FROMHISSHOULDERHIAWATHA"));
+        for (Rotor r : copy.allRotors()) {
+            assertFalse(original.allRotors().contains(r));
+        }
+    }
+
+    @Test
+    public void ringSettings() {
+        ArrayList<Rotor> rotors = navalRotors();
+        rotors.add(new Reflector("UKWB", new Permutation(
+            "(AY) (BR) (CU) (DH) (EQ) (FS) (GL) (IP) (JX) (KN) (MO) (TZ) "
+            + "(VW)", UPPER)));
+        Machine M = new Machine(UPPER, 4, 3, rotors);
+        M.insertRotors(new String[] {"UKWB", "I", "II", "III"});
+        M.setRotors("AAA");
+        M.setRings("AAA");
+        assertEquals("BDZGO", M.convert("AAAAA"));
+        M.setRotors("AAA");
+        M.setRings("BBB");
+        assertEquals("EWTYX", M.convert("AAAAA"));
+
+        SettingCache setups = new SettingCache();
+        KeystreamCache keystreams = new KeystreamCache(0, 0);
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(40);
+        for (int i = 0; i < 2; i += 1) {
+            Main.setUp(M, "* UKWB I II III AAA BBB", setups, keystreams);
+            assertEquals("EWTYX", M.convert("AAAAA"));
+            Main.setUp(M, "* UKWB I II III AAA", setups, keystreams);
+            assertEquals("BDZGO", M.convert("AAAAA"));
+            Main.setUp(M, "* UKWB I II III QDV FPX (AZ) (QT)", setups,
+                       keystreams);
+            String table = Engines.create("table", M, plain.length())
+                .convert(plain);
+            assertEquals(table, M.convert(plain));
+        }
+        assertEquals(3, setups.hits());
+    }
 
 }
@@ -1,11 +1,22 @@
 package enigma;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.error;
 
@@ -18,7 +29,28 @@ public final class Main {
 
     /**
      * Process a sequence of encryptions and decryptions, as
-     * specified by ARGS, where 1 <= ARGS.length <= 3.
+     * specified by ARGS, where 1 <= ARGS.length <= 3 after any leading
+     * options.  The option --engine=NAME selects the conversion engine by
+     * one of the names in Engines.NAMES (default auto).  With the option
+     * --batch, ARGS must be CONFIG INPUT OUTDIR after the options, where
+     * INPUT is a directory or a pattern such as dir/*.in, and each input
+     * file is processed as if named by ARGS[1] into a file of the same
+     * name in directory OUTDIR, on --jobs=N threads (default one per
+     * processor); a file that fails is reported and the rest processed.
+     * With the option --pipeline, input is read, converted and written
+     * on three threads (see processPipelined), and with --stats as well,
+     * the work and waiting time of each is reported on the standard
+     * error.  The option --foreign=POLICY says what becomes of message
+     * characters not in the alphabet (see Normalizer.Policy): with
+     * "error" (the default) they are errors, except for blanks; with
+     * "drop" they are left out; and with "pass" they are copied to the
+     * output unchanged, and message lines are written as converted,
+     * rather than in groups of five.  With --stats, the hits and misses
+     * of the caches of setting lines and keystreams are reported there
+     * too.  Input that is gzip-compressed, as its first bytes show, is
+     * decompressed as it is read, and an output file whose name ends in
+     * .gz is written gzip-compressed (see Gzip), each file of a batch
+     * included.
      * ARGS[0] is the name of a configuration file.
      * ARGS[1] is optional; when present, it names an input file
      * containing messages.  Otherwise, input comes from the standard
@@ -41,43 +73,109 @@ public final class Main {
      * Check ARGS and open the necessary files (see comment on main).
      */
     Main(String[] args) {
+        int first;
+        for (first = 0; first < args.length
+                 && args[first].startsWith("--"); first += 1) {
+            option(args[first]);
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_batch && args.length != 3) {
+            throw error("--batch requires CONFIG INPUT OUTDIR");
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (_batch) {
+            _batchInput = args[1];
+            _batchOutput = args[2];
+            return;
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            try {
+                _input = new Scanner(Gzip.input(System.in));
+            } catch (IOException excp) {
+                throw error("could not read the standard input");
+            }
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
+            _closeOutput = true;
         } else {
             _output = System.out;
         }
     }
 
     /**
-     * Return a Scanner reading from the file named NAMEX.
+     * A processor of the messages in INPUT with machine M, sending the
+     * results to OUTPUT with the engine named ENGINENAME.
+     */
+    private Main(Machine M, Scanner input, PrintStream output,
+                 String engineName) {
+        enigma = M;
+        _alphabet = M.alphabet();
+        _input = input;
+        _output = output;
+        _engineName = engineName;
+    }
+
+    /**
+     * Apply the command-line option OPT.
+     */
+    private void option(String opt) {
+        if (opt.equals("--batch")) {
+            _batch = true;
+        } else if (opt.equals("--pipeline")) {
+            _pipeline = true;
+        } else if (opt.equals("--stats")) {
+            _stats = true;
+        } else if (opt.startsWith("--jobs=")) {
+            try {
+                _jobs = Integer.parseInt(opt.substring("--jobs=".length()));
+            } catch (NumberFormatException excp) {
+                _jobs = 0;
+            }
+            if (_jobs < 1) {
+                throw error("bad number of jobs: %s", opt);
+            }
+        } else if (opt.startsWith("--foreign=")) {
+            _foreign = Normalizer.Policy.parse(
+                opt.substring("--foreign=".length()));
+        } else if (opt.startsWith("--engine=")) {
+            _engineName = opt.substring("--engine=".length());
+            if (!Arrays.asList(Engines.NAMES).contains(_engineName)) {
+                throw error("unknown engine: %s", _engineName);
+            }
+        } else {
+            throw error("unknown option: %s", opt);
+        }
+    }
+
+    /**
+     * Return a Scanner reading from the file named NAMEX, decompressed
+     * if need be.
      * https://docs.oracle.com/javase/10/docs/api/java/util/Scanner.html
      */
     private Scanner getInput(String namex) {
         try {
-            return new Scanner(new File(namex));
+            return new Scanner(Gzip.input(new File(namex)));
         } catch (IOException excp) {
             throw error("could not open %s", namex);
         }
     }
 
     /**
-     * Return a PrintStream writing to the file named NAME1.
+     * Return a PrintStream writing to the file named NAME1, compressed if
+     * its name ends in Gzip.SUFFIX.
      */
     private PrintStream getOutput(String name1) {
         try {
-            return new PrintStream(new File(name1));
+            return new PrintStream(Gzip.output(new File(name1)));
         } catch (IOException excp) {
             throw error("could not open %s", name1);
         }
@@ -85,11 +183,38 @@ public final class Main {
 
     /**
      * Configure an Enigma machine from the contents of configuration
-     * file _config and apply it to the messages in _input, sending the
-     * results to _output.
+     * file _configName and apply it to the messages in _input, sending
+     * the results to _output.
      */
-    private void process() {
-        enigma = readConfig();
+    void process() {
+        if (_batch) {
+            batch();
+            return;
+        }
+        try {
+            processMessages();
+        } finally {
+            if (_closeOutput) {
+                _output.close();
+            }
+        }
+        if (_output.checkError()) {
+            throw error("could not write output");
+        }
+    }
+
+    /**
+     * Process the messages in _input, sending the results to _output,
+     * as described for process().
+     */
+    private void processMessages() {
+        if (enigma == null) {
+            enigma = readConfig();
+        }
+        if (_pipeline) {
+            processPipelined();
+            return;
+        }
         String setting = _input.nextLine();
         if (setting.charAt(0) != '*') {
             throw error("Wrong setting format");
@@ -106,93 +231,390 @@ public final class Main {
             } else if ((setting.contains("*"))) {
                 setUp(enigma, setting);
             } else {
-                printMessageLine(enigma.convert(setting));
+                printMessageLine(convert(setting));
             }
         }
+        if (_stats) {
+            reportCaches();
+        }
+    }
 
+    /**
+     * Report the lookups in the caches of setting lines and keystreams
+     * on the standard error.
+     */
+    private void reportCaches() {
+        System.err.printf("setting lines: %d hits, %d misses, %d cached%n",
+                          _setups.hits(), _setups.misses(), _setups.size());
+        System.err.printf("keystreams:    %d hits, %d misses, %d built, "
+                          + "%d cached%n", _keystreams.hits(),
+                          _keystreams.misses(), _keystreams.builds(),
+                          _keystreams.size());
     }
 
     /**
-     * Return an Enigma machine configured from the contents of configuration
-     * file _config.
-     * "I" indicates its name
-     * "M" indicates it's type, in this case, moving
-     * "Q" indicates its notch position, in this case, at Q only.
-     * (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S) indicates it's cycles
-     * USE READ ROTOR AS HELPER FUNCTION
+     * Process the messages in _input as process() does, in three stages
+     * on separate threads: this thread reads and classifies lines, a
+     * second applies setting lines and converts messages, and a third
+     * formats and writes the results.  The stages pass lines to each
+     * other in order through bounded RingBuffers, in a fixed set of
+     * reusable Chunks that circulate back from the writer to the reader,
+     * so that a slow output delays conversion only once PIPELINE_DEPTH
+     * lines are waiting to be written, and vice versa.  An error in any
+     * stage travels down the pipeline in place of the line that caused
+     * it, so that everything before it is written; it is then thrown
+     * here.
      */
-    private Machine readConfig() {
+    private void processPipelined() {
+        RingBuffer<Chunk> free = new RingBuffer<>(PIPELINE_DEPTH),
+            read = new RingBuffer<>(PIPELINE_DEPTH),
+            converted = new RingBuffer<>(PIPELINE_DEPTH);
+        for (int i = 0; i < free.capacity(); i += 1) {
+            free.put(new Chunk());
+        }
+        Stage reader = new Stage("read"), converter = new Stage("convert"),
+            writer = new Stage("write");
+        RuntimeException[] failure = new RuntimeException[1];
+        Thread convert = new Thread(() -> convertStage(read, converted,
+                                                       converter));
+        Thread write = new Thread(() -> failure[0] =
+                                  writeStage(converted, free, writer));
+        convert.start();
+        write.start();
+        readStage(free, read, reader);
         try {
-            String letters = _config.nextLine();
-            _alphabet = new CharacterRange(letters.charAt(0),
-                    letters.charAt(letters.length() - 1));
-            if (letters.contains("(")) {
-                throw new EnigmaException("Wrong configuration format for (");
+            convert.join();
+            write.join();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        _output.flush();
+        if (_stats) {
+            for (Stage s : new Stage[] { reader, converter, writer }) {
+                System.err.println(s);
             }
-            if (letters.contains(")")) {
-                throw new EnigmaException("Wrong configuration format for ) ");
+            reportCaches();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Read the lines of _input into chunks taken from FREE and pass them
+     * to OUT, ending with an END chunk, and counting in STAGE.  Stops
+     * early once _pipelineFailed is set.
+     */
+    private void readStage(RingBuffer<Chunk> free, RingBuffer<Chunk> out,
+                           Stage stage) {
+        boolean first = true;
+        while (!_pipelineFailed) {
+            long start = System.nanoTime();
+            Chunk chunk = free.take();
+            long got = System.nanoTime();
+            if (!_input.hasNextLine()) {
+                chunk.kind = first ? Chunk.ERROR : Chunk.END;
+                chunk.error = first ? error("No setting line") : null;
+                stage.record(got - start, System.nanoTime() - got, 0);
+                out.put(chunk);
+                return;
             }
-            if (letters.contains("*")) {
-                throw new EnigmaException("Wrong configuration format for * ");
+            String line = _input.nextLine();
+            chunk.set(line);
+            if (first && (line.isEmpty() || line.charAt(0) != '*')) {
+                chunk.kind = Chunk.ERROR;
+                chunk.error = error("Wrong setting format");
+            } else if (line.isEmpty()) {
+                chunk.kind = Chunk.BLANK;
+            } else if (line.contains("*")) {
+                chunk.kind = Chunk.SETTING;
+            } else {
+                chunk.kind = Chunk.MESSAGE;
             }
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Wrong configuration format");
+            first = false;
+            stage.record(got - start, System.nanoTime() - got,
+                         line.length());
+            out.put(chunk);
+        }
+        Chunk end = free.take();
+        end.kind = Chunk.END;
+        out.put(end);
+    }
+
+    /**
+     * Apply the setting lines and convert the messages in the chunks
+     * from IN, in place, and pass them to OUT until an END chunk,
+     * counting in STAGE.  After an error, passes the chunk that caused
+     * it as an ERROR chunk and all later chunks unchanged, and sets
+     * _pipelineFailed.
+     */
+    private void convertStage(RingBuffer<Chunk> in, RingBuffer<Chunk> out,
+                              Stage stage) {
+        boolean failed = false;
+        while (true) {
+            long start = System.nanoTime();
+            Chunk chunk = in.take();
+            long got = System.nanoTime();
+            int kind = chunk.kind;
+            if (!failed) {
+                try {
+                    if (kind == Chunk.SETTING) {
+                        setUp(enigma,
+                              new String(chunk.data, 0, chunk.length));
+                    } else if (kind == Chunk.MESSAGE) {
+                        chunk.length = normalizer().convert(
+                            engine(chunk.length), chunk.data, 0,
+                            chunk.length, chunk.data, 0);
+                    }
+                } catch (RuntimeException excp) {
+                    chunk.kind = Chunk.ERROR;
+                    chunk.error = excp;
+                }
+                if (chunk.kind == Chunk.ERROR) {
+                    failed = _pipelineFailed = true;
+                }
             }
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Wrong configuration format");
+            stage.record(got - start, System.nanoTime() - got,
+                         kind == Chunk.MESSAGE ? chunk.length : 0);
+            out.put(chunk);
+            if (kind == Chunk.END) {
+                return;
             }
-            int rotators = _config.nextInt();
-            int pawlnumber = _config.nextInt();
-            if (pawlnumber > rotators) {
-                throw error("Number of pawls "
-                        + "cannot be greater than amount of rotors");
+        }
+    }
+
+    /**
+     * Write the messages in the chunks from IN in groups of five, and
+     * a blank line for each BLANK chunk, returning the chunks to FREE,
+     * until an END chunk, counting in STAGE.  Return the error of the
+     * first ERROR chunk, writing nothing after it, or null if none.
+     */
+    private RuntimeException writeStage(RingBuffer<Chunk> in,
+                                        RingBuffer<Chunk> free,
+                                        Stage stage) {
+        RuntimeException failure = null;
+        Writer output = new BufferedWriter(new OutputStreamWriter(_output),
+                                           1 << 16);
+        String newline = System.lineSeparator();
+        char[] line = new char[0];
+        while (true) {
+            long start = System.nanoTime();
+            Chunk chunk = in.take();
+            long got = System.nanoTime();
+            int kind = chunk.kind, chars = 0;
+            try {
+                if (kind == Chunk.ERROR && failure == null) {
+                    failure = chunk.error;
+                } else if (failure == null && kind == Chunk.BLANK) {
+                    output.write(newline);
+                } else if (failure == null && kind == Chunk.MESSAGE) {
+                    int n = chunk.length;
+                    if (line.length < n + n / 5) {
+                        line = new char[n + n / 5 + 16];
+                    }
+                    if (_foreign == Normalizer.Policy.PASS) {
+                        output.write(chunk.data, 0, n);
+                    } else {
+                        int k = 0;
+                        for (int i = 0; i < n; i += 1) {
+                            if (i > 0 && i % 5 == 0) {
+                                line[k++] = ' ';
+                            }
+                            line[k++] = chunk.data[i];
+                        }
+                        output.write(line, 0, k);
+                    }
+                    output.write(newline);
+                    chars = n;
+                } else if (kind == Chunk.END) {
+                    output.flush();
+                }
+            } catch (IOException excp) {
+                failure = error("could not write output");
+                _pipelineFailed = true;
             }
-            while (_config.hasNextLine()) {
-                Rotor addedRotor = readRotor();
-                allrotors.add(addedRotor);
+            chunk.error = null;
+            stage.record(got - start, System.nanoTime() - got, chars);
+            if (kind == Chunk.END) {
+                return failure;
             }
-            return new Machine(_alphabet, rotators, pawlnumber, allrotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            free.put(chunk);
         }
+    }
+
+    /**
+     * A line of input as it passes through the stages of
+     * processPipelined.  The character array is reused for later lines,
+     * and grows as needed.
+     */
+    private static class Chunk {
+
+        /** Kinds of chunk. */
+        static final int MESSAGE = 0, SETTING = 1, BLANK = 2, END = 3,
+            ERROR = 4;
+
+        /** Set my contents to the characters of S. */
+        void set(String s) {
+            if (data.length < s.length()) {
+                data = new char[Math.max(s.length(), 2 * data.length)];
+            }
+            s.getChars(0, s.length(), data, 0);
+            length = s.length();
+        }
+
+        /** My kind. */
+        private int kind;
+
+        /** My characters, of which the first LENGTH are in use. */
+        private char[] data = new char[128];
+        private int length;
 
+        /** For an ERROR chunk, the error. */
+        private RuntimeException error;
     }
 
+    /**
+     * Counters for one stage of processPipelined, each updated only by
+     * the thread running the stage.
+     */
+    private static class Stage {
+
+        /** Counters for the stage named NAME. */
+        Stage(String name) {
+            _name = name;
+        }
+
+        /** Record one item of CHARS characters, for which the stage
+         *  waited WAIT nanoseconds and then worked BUSY nanoseconds. */
+        void record(long wait, long busy, int chars) {
+            _items += 1;
+            _chars += chars;
+            _waitNanos += wait;
+            _busyNanos += busy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %8d lines %11d chars  busy %7.3f s"
+                                 + "  waiting %7.3f s  %8.2f M chars/s"
+                                 + " busy",
+                                 _name, _items, _chars, _busyNanos * 1e-9,
+                                 _waitNanos * 1e-9,
+                                 _busyNanos == 0 ? 0
+                                 : _chars * 1e3 / _busyNanos);
+        }
+
+        /** Name of the stage. */
+        private final String _name;
+
+        /** Items and characters handled, and time spent working on them
+         *  and waiting for them. */
+        private long _items, _chars, _busyNanos, _waitNanos;
+    }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Process each file named by _batchInput into a file of the same name
+     * in directory _batchOutput, concurrently on _jobs threads, each file
+     * with its own copy of the machine configured from _configName.
+     * Reports each file that fails and the aggregate throughput on the
+     * standard error, and throws an exception at the end if any file
+     * failed.
      */
-    private Rotor readRotor() {
-        try {
-            String currname = _config.next();
-            if (currname.contains("(") || currname.contains(")")) {
-                throw error("Not an acceptable name");
-            }
-            String typeNotch = _config.next();
-            String cycle = "";
-            while (_config.hasNext("([(][A-Z]+[)])+")) {
-                cycle += _config.next();
-            }
-            Permutation perm = new Permutation(cycle, _alphabet);
-            char canmove = typeNotch.charAt(0);
-            if (_config.hasNextLine()) {
-                _config.nextLine();
-            }
-            if (canmove == 'M' && typeNotch.length() == 1) {
-                throw error("No notches given");
-            }
-            if (canmove == 'M') {
-                return new MovingRotor(currname, perm, typeNotch.substring(1));
-            } else if (canmove == 'R') {
-                return new Reflector(currname, perm);
-            } else {
-                return new FixedRotor(currname, perm);
+    private void batch() {
+        Machine template = readConfig();
+        File[] inputs = batchInputs(_batchInput);
+        File outDir = new File(_batchOutput);
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw error("could not create %s", outDir);
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        List<Future<Long>> results = new ArrayList<>();
+        for (File in : inputs) {
+            File out = new File(outDir, in.getName());
+            results.add(pool.submit(() -> processFile(template, in, out)));
+        }
+        pool.shutdown();
+        long characters = 0;
+        int failed = 0;
+        for (int i = 0; i < inputs.length; i += 1) {
+            try {
+                characters += results.get(i).get();
+            } catch (ExecutionException excp) {
+                failed += 1;
+                System.err.printf("Error: %s: %s%n", inputs[i],
+                                  excp.getCause().getMessage());
+            } catch (InterruptedException excp) {
+                pool.shutdownNow();
+                throw error("batch interrupted");
             }
+        }
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.err.printf("%d files, %d failed, %d characters in %.2f s "
+                          + "(%.1f M characters/s)%n",
+                          inputs.length, failed, characters, seconds,
+                          characters / seconds * 1e-6);
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, inputs.length);
+        }
+    }
+
+    /**
+     * Return the regular files named by SPEC: those in SPEC if it is a
+     * directory, and otherwise those in its parent directory whose names
+     * match its last component as a glob pattern, in order of name.
+     */
+    private static File[] batchInputs(String spec) {
+        File named = new File(spec);
+        File[] result;
+        if (named.isDirectory()) {
+            result = named.listFiles(File::isFile);
+        } else {
+            PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + named.getName());
+            File dir = named.getAbsoluteFile().getParentFile();
+            result = dir.listFiles(f -> f.isFile()
+                                   && matcher.matches(f.toPath()
+                                                      .getFileName()));
+        }
+        if (result == null || result.length == 0) {
+            throw error("no input files match %s", spec);
+        }
+        Arrays.sort(result);
+        return result;
+    }
 
+    /**
+     * Process the messages in file IN into file OUT with a copy of
+     * TEMPLATE, and return the number of message characters converted.
+     */
+    private long processFile(Machine template, File in, File out)
+        throws IOException {
+        try (Scanner input = new Scanner(Gzip.input(in));
+             PrintStream output = new PrintStream(Gzip.output(out))) {
+            Main job = new Main(template.copy(), input, output,
+                                _engineName);
+            job._foreign = _foreign;
+            job.process();
+            output.flush();
+            if (output.checkError()) {
+                throw error("could not write %s", out);
+            }
+            return job._characters;
         } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            throw error("no setting line");
         }
+    }
 
+    /**
+     * Return an Enigma machine configured from the contents of configuration
+     * file _configName, whose rotors are parsed only as setting lines use
+     * them (see RotorCatalog).
+     */
+    private Machine readConfig() {
+        Machine result = ConfigReader.read(_configName);
+        _alphabet = result.alphabet();
+        return result;
     }
 
     /**
@@ -200,6 +622,41 @@ public final class Main {
      * which must have the format specified in the assignment.
      */
     private void setUp(Machine M, String settings) {
+        setUp(M, settings, _setups, _keystreams);
+        _engine = null;
+        _converted = 0;
+    }
+
+    /**
+     * Set M according to the setting line SETTINGS, as for a "*" line
+     * of the input, from SETUPS if it holds the line, and taking its
+     * keystream from KEYSTREAMS.
+     */
+    static void setUp(Machine M, String settings, SettingCache setups,
+                      KeystreamCache keystreams) {
+        if (!setups.apply(settings, M)) {
+            parseSetting(M, settings);
+            setups.record(settings, M, rotorNames(M, settings));
+        }
+        M.useKeystream(keystreams.get(settings, M));
+    }
+
+    /**
+     * Return the names of the rotors given by the setting line SETTINGS
+     * for M, which has just been set up by it.
+     */
+    private static String[] rotorNames(Machine M, String settings) {
+        String[] tokens = SettingCache.normalize(settings).split(" ");
+        return Arrays.copyOfRange(tokens, 1, M.numRotors() + 1);
+    }
+
+    /**
+     * Set M according to the setting line SETTINGS (see setUp).  The
+     * rotor positions may be followed by their ring settings in the same
+     * form, as in "* B I II III AQV BUL (AB)"; rings are A (0) if not
+     * given.
+     */
+    private static void parseSetting(Machine M, String settings) {
         String[] rotorarray = new String[M.numRotors()];
         Scanner mach = new Scanner(settings);
         String temp = mach.next();
@@ -212,6 +669,9 @@ public final class Main {
         }
         M.insertRotors(rotorarray);
         M.setRotors(mach.next());
+        if (mach.hasNext("[^(]+")) {
+            M.setRings(mach.next());
+        }
         String perm = "";
         for (int y = 0; y < M.numRotors(); y++) {
             if (mach.hasNext("([(][A-Z]+[)])+")) {
@@ -226,17 +686,69 @@ public final class Main {
                 }
             }
         }
-        M.setPlugboard(new Permutation(perm, _alphabet));
+        M.setPlugboard(new Permutation(perm, M.alphabet()));
         if (!M.getRotorsList()[0].reflecting()) {
             throw error("First Rotor should be a reflector");
         }
     }
 
+    /**
+     * Return the conversion of message line MSG by the engine for the
+     * current setting, choosing or upgrading the engine as needed.
+     */
+    private String convert(String msg) {
+        return normalizer().convert(engine(msg.length()), msg);
+    }
+
+    /**
+     * Return the normalizer of message text, creating it if need be.
+     */
+    private Normalizer normalizer() {
+        if (_normalizer == null) {
+            _normalizer = new Normalizer(enigma.alphabet(), _foreign);
+        }
+        return _normalizer;
+    }
+
+    /**
+     * Return the engine for the current setting to convert a message
+     * line of LENGTH characters, choosing or upgrading the engine as
+     * needed.
+     */
+    private EnigmaEngine engine(int length) {
+        _converted += length;
+        _characters += length;
+        if (_engineName.equals("auto")) {
+            _engine = Engines.reselect(_engine, enigma, _converted);
+        } else if (_engine == null) {
+            _engine = Engines.create(_engineName, enigma, _converted);
+        }
+        return _engine;
+    }
+
+    /**
+     * Return the cache of schedules for repeated setting lines.
+     */
+    KeystreamCache keystreams() {
+        return _keystreams;
+    }
+
+    /**
+     * Return the cache of setting lines already applied.
+     */
+    SettingCache setups() {
+        return _setups;
+    }
+
     /**
      * Print MSG in groups of five (except that the last group may
      * have fewer letters).
      */
     private void printMessageLine(String msg) {
+        if (_foreign == Normalizer.Policy.PASS) {
+            _output.println(msg);
+            return;
+        }
         for (int i = 0; i < msg.length(); i += 1) {
             if (i % 6 == 0) {
                 msg = msg.substring(0, i) + " "
@@ -263,15 +775,18 @@ public final class Main {
     private Scanner _input;
 
     /**
-     * Source of machine configuration.
+     * Name of the machine configuration file.
      */
-    private Scanner _config;
+    private String _configName;
 
     /**
      * File for encoded/decoded messages.
      */
     private PrintStream _output;
 
+    /** True iff _output is a file I opened, to be closed when done. */
+    private boolean _closeOutput;
+
 
     /**
      * What we are sending out.
@@ -294,12 +809,77 @@ public final class Main {
     private String notches;
 
     /**
-     * Makes an array list of all of the Rotors..
+     * Initalizes machine.
      */
-    private ArrayList<Rotor> allrotors = new ArrayList<>();
+    private Machine enigma;
 
     /**
-     * Initalizes machine.
+     * Name of the engine requested on the command line.
      */
-    private Machine enigma;
+    private String _engineName = "auto";
+
+    /**
+     * What becomes of message characters not in the alphabet, and the
+     * normalizer that applies it, once created.
+     */
+    private Normalizer.Policy _foreign = Normalizer.Policy.ERROR;
+    private Normalizer _normalizer;
+
+    /**
+     * Engine converting under the current setting, or null if none
+     * has been chosen yet.
+     */
+    private EnigmaEngine _engine;
+
+    /**
+     * Number of message characters read under the current setting.
+     */
+    private long _converted;
+
+    /**
+     * Number of message characters read in all.
+     */
+    private long _characters;
+
+    /**
+     * True iff processing a batch of files.
+     */
+    private boolean _batch;
+
+    /**
+     * Input files (a directory or pattern) and output directory of a
+     * batch.
+     */
+    private String _batchInput, _batchOutput;
+
+    /**
+     * True iff processing in stages on separate threads, and reporting
+     * the counters of the stages.
+     */
+    private boolean _pipeline, _stats;
+
+    /**
+     * Set when a stage of processPipelined fails, to stop reading.
+     */
+    private volatile boolean _pipelineFailed;
+
+    /**
+     * Number of lines in flight between the stages of processPipelined.
+     */
+    private static final int PIPELINE_DEPTH = 256;
+
+    /**
+     * Number of files of a batch processed at once.
+     */
+    private int _jobs = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Precomputed schedules for setting lines seen so far.
+     */
+    private final KeystreamCache _keystreams = new KeystreamCache();
+
+    /**
+     * Setting lines already applied to enigma.
+     */
+    private final SettingCache _setups = new SettingCache();
 }
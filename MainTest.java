@@ -0,0 +1,238 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ", "5 3",
+        "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+        + "(TV)", "");
+
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void batchReportsBadFile() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = write(dir, "enigma.conf", CONFIG);
+            File in = new File(dir, "in"), out = new File(dir, "out");
+            assertTrue(in.mkdir());
+            write(in, "a.in", SETTING + "\nFROM his shoulder Hiawatha\n");
+            write(in, "b.in", "no setting line here\n");
+            write(in, "c.in", SETTING + "\nHELLO WORLD\n\n"
+                  + "* B Beta II IV I AAAA\nHELLO WORLD\n");
+            write(in, "notes.txt", SETTING + "\nNOT PART OF THE BATCH\n");
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            PrintStream stderr = System.err;
+            System.setErr(new PrintStream(err, true));
+            try {
+                new Main(new String[] {
+                    "--batch", "--jobs=2", config.getPath(),
+                    new File(in, "*.in").getPath(), out.getPath()
+                }).process();
+                fail("failed file not reported");
+            } catch (EnigmaException excp) {
+                assertEquals("1 of 3 files failed", excp.getMessage());
+            } finally {
+                System.setErr(stderr);
+            }
+            String report = err.toString();
+            assertTrue(report, report.contains(
+                "Error: " + new File(in, "b.in")
+                + ": Wrong setting format"));
+            assertTrue(report, report.contains("3 files, 1 failed"));
+
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                         read(new File(out, "a.in")));
+            assertEquals(single(config, new File(in, "c.in"), dir),
+                         read(new File(out, "c.in")));
+            assertEquals(3, read(new File(out, "c.in")).split("\n").length);
+            assertFalse(new File(out, "notes.txt").exists());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void batchOfDirectory() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = write(dir, "enigma.conf", CONFIG);
+            File in = new File(dir, "in"),
+                out = new File(new File(dir, "out"), "nested");
+            assertTrue(in.mkdir());
+            for (int i = 0; i < 5; i += 1) {
+                write(in, "m" + i,
+                      SETTING + "\n" + "HIAWATHA".repeat(i + 1) + "\n");
+            }
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            PrintStream stderr = System.err;
+            System.setErr(new PrintStream(err, true));
+            try {
+                new Main(new String[] {
+                    "--batch", config.getPath(), in.getPath(),
+                    out.getPath() }).process();
+            } finally {
+                System.setErr(stderr);
+            }
+            assertTrue(err.toString(),
+                       err.toString().contains("5 files, 0 failed"));
+            for (int i = 0; i < 5; i += 1) {
+                assertEquals(single(config, new File(in, "m" + i), dir),
+                             read(new File(out, "m" + i)));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void pipelineMatchesLineByLine() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = write(dir, "enigma.conf", CONFIG);
+            File in = write(dir, "many.in", messages(3000, -1));
+            String expected = single(config, in, dir);
+            assertEquals(expected, pipelined(config, in, dir));
+            assertEquals(3000 - (3000 + 6) / 7,
+                         expected.split("\n", -1).length - 1);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void pipelineStopsAtError() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = write(dir, "enigma.conf", CONFIG);
+            for (int bad : new int[] { 1000, 2999 }) {
+                File in = write(dir, "bad.in", messages(3000, bad));
+                String[] expected = new String[2], actual = new String[2];
+                try {
+                    single(config, in, dir);
+                    fail("bad message accepted line by line");
+                } catch (EnigmaException excp) {
+                    expected[0] = excp.getMessage();
+                    expected[1] = read(_out);
+                }
+                try {
+                    pipelined(config, in, dir);
+                    fail("bad message accepted by the pipeline");
+                } catch (EnigmaException excp) {
+                    actual[0] = excp.getMessage();
+                    actual[1] = read(_out);
+                }
+                assertEquals(expected[0], actual[0]);
+                assertEquals(expected[1], actual[1]);
+                assertEquals(bad - (bad + 6) / 7,
+                             expected[1].split("\n", -1).length - 1);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Return LINES lines of input: a setting line every seven lines, a
+     *  blank line every eleven, and messages of varied lengths
+     *  otherwise, with a character not in the alphabet on line BAD
+     *  (numbered from 0), if it is not negative. */
+    private static String messages(int lines, int bad) {
+        String[] settings = {
+            SETTING, "* B Beta II IV I AAAA", "* B Beta I II III ZZZZ (AB)",
+        };
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            if (i == bad) {
+                result.append("HELLO1 WORLD");
+            } else if (i % 7 == 0) {
+                result.append(settings[i / 7 % settings.length]);
+            } else if (i % 11 == 0) {
+                result.append("");
+            } else {
+                for (int k = 0; k < i % 97 + 1; k += 1) {
+                    result.append((char) ('A' + (i * 31 + k * 7) % 26));
+                    if (k % 9 == 8) {
+                        result.append(' ');
+                    }
+                }
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the output of Main processing IN with CONFIG with
+     *  --pipeline, through a file in DIR, leaving the file in _out. */
+    private String pipelined(File config, File in, File dir)
+        throws IOException {
+        _out = File.createTempFile("enigma", ".out", dir);
+        new Main(new String[] {
+            "--pipeline", config.getPath(), in.getPath(), _out.getPath()
+        }).process();
+        return read(_out);
+    }
+
+    /** The output file of the last run of Main. */
+    private File _out;
+
+    /** Return the output of Main processing IN with CONFIG line by line,
+     *  through a file in DIR, leaving the file in _out. */
+    private String single(File config, File in, File dir)
+        throws IOException {
+        _out = File.createTempFile("enigma", ".out", dir);
+        new Main(new String[] {
+            config.getPath(), in.getPath(), _out.getPath() }).process();
+        return read(_out);
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    static void delete(File file) {
+        File[] contents = file.listFiles();
+        if (contents != null) {
+            for (File f : contents) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /** Write TEXT to the file NAME in DIR and return it. */
+    static File write(File dir, String name, String text)
+        throws IOException {
+        File result = new File(dir, name);
+        Files.write(result.toPath(), text.getBytes());
+        return result;
+    }
+
+    /** Return the contents of FILE, with line separators as "\n". */
+    static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()))
+            .replace(System.lineSeparator(), "\n");
+    }
+
+}
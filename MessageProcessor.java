@@ -0,0 +1,407 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.error;
+
+/** A Flow.Processor that converts a stream of Events, setting lines and
+ *  messages, with a machine, and publishes the conversion of each
+ *  message, in order, to a single subscriber.  A setting event sets the
+ *  machine up as a "*" line of Main's input does; each message event is
+ *  converted under the latest setting, as a message line is, and yields
+ *  one converted String (without the grouping into fives that Main
+ *  prints).
+ *
+ *  Buffering is bounded by a capacity: the number of events requested
+ *  from upstream and not yet either consumed (settings) or delivered
+ *  downstream (conversions) never exceeds it, so that a subscriber that
+ *  stops requesting stops the flow of events at most that many events
+ *  later.  Events are requested in batches of a quarter of the capacity
+ *  and converted in batches on an Executor, by a drain loop of which at
+ *  most one instance runs at a time, so that the machine is used by one
+ *  thread at a time.
+ *
+ *  An error in a setting or message is delivered by onError after the
+ *  conversions of the events before it, and cancels the upstream
+ *  subscription; so is an error from upstream.
+ *  @author Jennifer Hu
+ */
+class MessageProcessor
+    implements Flow.Processor<MessageProcessor.Event, String> {
+
+    /** Default capacity. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** Maximum number of events converted by one pass of the drain loop
+     *  before it delivers what it has converted. */
+    static final int BATCH = 64;
+
+    /** An event of the input stream: a setting line or a message. */
+    static final class Event {
+
+        /** Return a setting event for the setting line TEXT. */
+        static Event setting(String text) {
+            return new Event(true, text);
+        }
+
+        /** Return a message event for the message TEXT. */
+        static Event message(String text) {
+            return new Event(false, text);
+        }
+
+        /** An event of TEXT, a setting iff SETTING. */
+        private Event(boolean setting, String text) {
+            if (text == null) {
+                throw new NullPointerException();
+            }
+            _setting = setting;
+            _text = text;
+        }
+
+        /** Return true iff I am a setting line. */
+        boolean isSetting() {
+            return _setting;
+        }
+
+        /** Return my text. */
+        String text() {
+            return _text;
+        }
+
+        @Override
+        public String toString() {
+            return (_setting ? "setting " : "message ") + _text;
+        }
+
+        /** True iff I am a setting line. */
+        private final boolean _setting;
+
+        /** My text. */
+        private final String _text;
+    }
+
+    /** A processor converting with M, a configured machine, with the
+     *  engine named ENGINENAME (see Engines), buffering at most CAPACITY
+     *  events, and draining on EXECUTOR.  Characters of messages not in
+     *  the alphabet are errors, except blanks, which are left out. */
+    MessageProcessor(Machine M, String engineName, int capacity,
+                     Executor executor) {
+        this(M, engineName, Normalizer.Policy.ERROR, capacity, executor);
+    }
+
+    /** A processor converting with M, a configured machine, with the
+     *  engine named ENGINENAME (see Engines), dealing with characters of
+     *  messages not in the alphabet according to FOREIGN, buffering at
+     *  most CAPACITY events, and draining on EXECUTOR. */
+    MessageProcessor(Machine M, String engineName,
+                     Normalizer.Policy foreign, int capacity,
+                     Executor executor) {
+        if (capacity < 1) {
+            throw error("bad processor capacity: %d", capacity);
+        }
+        _machine = M;
+        _engineName = engineName;
+        _normalizer = new Normalizer(M.alphabet(), foreign);
+        _capacity = capacity;
+        _refill = Math.max(1, capacity / 4);
+        _executor = executor;
+    }
+
+    /** A processor converting with M with the automatically chosen
+     *  engine, the default capacity, and the common pool. */
+    MessageProcessor(Machine M) {
+        this(M, "auto", DEFAULT_CAPACITY, ForkJoinPool.commonPool());
+    }
+
+    /** Return the capacity. */
+    int capacity() {
+        return _capacity;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            if (_downstream == null) {
+                _downstream = subscriber;
+                subscriber.onSubscribe(new Outlet());
+                signal();
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(
+            "processor already has a subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        signal();
+    }
+
+    @Override
+    public void onNext(Event event) {
+        if (event == null) {
+            throw new NullPointerException();
+        }
+        _inputs.offer(event);
+        signal();
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        _upstreamError = excp;
+        _upstreamDone = true;
+        signal();
+    }
+
+    @Override
+    public void onComplete() {
+        _upstreamDone = true;
+        signal();
+    }
+
+    /** The subscription given to my subscriber. */
+    private class Outlet implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _failure = new IllegalArgumentException(
+                    "non-positive request: " + n);
+            } else {
+                _demand.getAndAccumulate(n, (a, b) -> a + b < 0
+                                         ? Long.MAX_VALUE : a + b);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            signal();
+        }
+    }
+
+    /** Arrange for the drain loop to run, unless it is running already,
+     *  in which case it will run once more. */
+    private void signal() {
+        if (_work.getAndIncrement() == 0) {
+            _executor.execute(this::drain);
+        }
+    }
+
+    /** Deliver converted messages while there is demand, convert events
+     *  while there is room, request more events, and deliver the end of
+     *  the stream, until there is nothing more to do until the next
+     *  signal. */
+    private void drain() {
+        int missed = 1;
+        while (true) {
+            if (_cancelled) {
+                cancelUpstream();
+                _inputs.clear();
+                _outputs.clear();
+            } else if (_downstream != null && !_finished) {
+                while (convert() + deliver() > 0) {
+                    requestMore();
+                }
+                requestMore();
+                finish();
+            }
+            missed = _work.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /** Deliver converted messages while there is demand, and return the
+     *  number delivered. */
+    private long deliver() {
+        long demand = _demand.get(), sent = 0;
+        while (sent < demand && !_cancelled && !_outputs.isEmpty()) {
+            _downstream.onNext(_outputs.poll());
+            sent += 1;
+            _freed += 1;
+        }
+        if (sent > 0 && demand != Long.MAX_VALUE) {
+            _demand.addAndGet(-sent);
+        }
+        return sent;
+    }
+
+    /** Convert up to BATCH events, without exceeding the capacity of
+     *  _outputs, stopping at the first error, and return the number
+     *  converted. */
+    private int convert() {
+        int n;
+        for (n = 0; n < BATCH && _error == null
+                 && _outputs.size() < _capacity; n += 1) {
+            Event event = _inputs.poll();
+            if (event == null) {
+                break;
+            }
+            try {
+                if (event.isSetting()) {
+                    Main.setUp(_machine, event.text(), _setups,
+                               _keystreams);
+                    _engine = null;
+                    _converted = 0;
+                    _set = true;
+                    _freed += 1;
+                } else if (!_set) {
+                    throw error("message before the first setting");
+                } else {
+                    String text = event.text();
+                    _converted += text.length();
+                    if (_engineName.equals("auto")) {
+                        _engine = Engines.reselect(_engine, _machine,
+                                                   _converted);
+                    } else if (_engine == null) {
+                        _engine = Engines.create(_engineName, _machine,
+                                                 _converted);
+                    }
+                    _outputs.add(_normalizer.convert(_engine, text));
+                }
+            } catch (RuntimeException excp) {
+                _error = excp;
+                cancelUpstream();
+                _inputs.clear();
+            }
+        }
+        return n;
+    }
+
+    /** Request more events from upstream once at least _refill have
+     *  been consumed or delivered since the last request. */
+    private void requestMore() {
+        if (_upstream == null || _upstreamDone || _error != null) {
+            return;
+        }
+        long room = _capacity - (_requested - _freed);
+        if (room >= _refill) {
+            _requested += room;
+            _upstream.request(room);
+        }
+    }
+
+    /** Signal the end of the stream to my subscriber, if it has come and
+     *  everything before it has been delivered. */
+    private void finish() {
+        Throwable failure = _failure;
+        if (failure == null) {
+            if (!_outputs.isEmpty()) {
+                return;
+            }
+            if (_error != null) {
+                failure = _error;
+            } else if (!_upstreamDone || !_inputs.isEmpty()) {
+                return;
+            } else {
+                failure = _upstreamError;
+            }
+        }
+        _finished = true;
+        if (failure != null) {
+            cancelUpstream();
+            _downstream.onError(failure);
+        } else {
+            _downstream.onComplete();
+        }
+    }
+
+    /** Cancel my upstream subscription, if any. */
+    private void cancelUpstream() {
+        if (_upstream != null && !_upstreamDone) {
+            _upstreamDone = true;
+            _upstream.cancel();
+        }
+    }
+
+    /** The machine. */
+    private final Machine _machine;
+
+    /** Name of the engine converting messages. */
+    private final String _engineName;
+
+    /** Maps the text of messages to and from the engine. */
+    private final Normalizer _normalizer;
+
+    /** Maximum number of events requested and not yet consumed or
+     *  delivered, and the number freed that triggers a new request. */
+    private final int _capacity, _refill;
+
+    /** Runs the drain loop. */
+    private final Executor _executor;
+
+    /** Setting lines already applied, and schedules for them. */
+    private final SettingCache _setups = new SettingCache();
+    private final KeystreamCache _keystreams = new KeystreamCache();
+
+    /** Events received and not yet converted. */
+    private final Queue<Event> _inputs = new ConcurrentLinkedQueue<>();
+
+    /** Conversions not yet delivered.  Used only by the drain loop. */
+    private final ArrayDeque<String> _outputs = new ArrayDeque<>();
+
+    /** Number of signals not yet handled by the drain loop. */
+    private final AtomicInteger _work = new AtomicInteger();
+
+    /** Number of conversions requested by my subscriber and not yet
+     *  delivered. */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** My subscriber, and my subscription to upstream. */
+    private volatile Flow.Subscriber<? super String> _downstream;
+    private volatile Flow.Subscription _upstream;
+
+    /** An error from upstream, and a violation of the protocol by my
+     *  subscriber. */
+    private volatile Throwable _upstreamError, _failure;
+
+    /** True once upstream has completed, failed or been cancelled, and
+     *  once my subscriber has cancelled. */
+    private volatile boolean _upstreamDone, _cancelled;
+
+    /** The following are used only by the drain loop. */
+
+    /** The engine for the current setting, or null if not chosen yet. */
+    private EnigmaEngine _engine;
+
+    /** Characters converted since the last setting. */
+    private long _converted;
+
+    /** True once a setting has been applied, and once my subscriber has
+     *  been told the end. */
+    private boolean _set, _finished;
+
+    /** An error converting an event. */
+    private RuntimeException _error;
+
+    /** Numbers of events ever requested, and ever consumed or
+     *  delivered. */
+    private long _requested, _freed;
+}
@@ -0,0 +1,241 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/** The suite of all JUnit tests for the MessageProcessor class.
+ *  @author
+ */
+public class MessageProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ", "5 3",
+        "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+        + "(TV)", "");
+
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B Beta I II III AAAA",
+    };
+
+    /** Return a new machine of CONFIG. */
+    private static Machine machine() {
+        return new ConfigReader(new Scanner(CONFIG)).read();
+    }
+
+    /** Return N events: a setting, then messages, with the other setting
+     *  every 50 events. */
+    private static List<MessageProcessor.Event> events(int n) {
+        List<MessageProcessor.Event> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            if (i % 50 == 0) {
+                result.add(MessageProcessor.Event.setting(
+                    SETTINGS[i / 50 % 2]));
+            } else {
+                result.add(MessageProcessor.Event.message(
+                    "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA "
+                    + (char) ('A' + i % 26)));
+            }
+        }
+        return result;
+    }
+
+    /** Return the conversions of the messages of EVENTS, converted one
+     *  at a time as Main would. */
+    private static List<String> expected(
+        List<MessageProcessor.Event> events) {
+        Machine M = machine();
+        SettingCache setups = new SettingCache(0);
+        KeystreamCache keystreams = new KeystreamCache();
+        List<String> result = new ArrayList<>();
+        for (MessageProcessor.Event e : events) {
+            if (e.isSetting()) {
+                Main.setUp(M, e.text(), setups, keystreams);
+            } else {
+                result.add(M.convert(e.text()));
+            }
+        }
+        return result;
+    }
+
+    /** A publisher of a list of events to one subscriber, publishing
+     *  synchronously as they are requested and recording how many have
+     *  been requested. */
+    private static class ListPublisher
+        implements Flow.Publisher<MessageProcessor.Event> {
+
+        ListPublisher(List<MessageProcessor.Event> events) {
+            _events = events;
+        }
+
+        @Override
+        public void subscribe(
+            Flow.Subscriber<? super MessageProcessor.Event> s) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    while (sent < Math.min(requested, _events.size())) {
+                        s.onNext(_events.get(sent));
+                        sent += 1;
+                    }
+                    if (sent == _events.size() && !done) {
+                        done = true;
+                        s.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+            });
+        }
+
+        long requested;
+        int sent;
+        boolean done;
+        private final List<MessageProcessor.Event> _events;
+    }
+
+    /** A subscriber that records what it receives, and requests only
+     *  when told to. */
+    private static class Recorder implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            error = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        Flow.Subscription subscription;
+        List<String> items = new ArrayList<>();
+        volatile Throwable error;
+        volatile boolean complete;
+    }
+
+    @Test
+    public void foreignCharacters() {
+        List<MessageProcessor.Event> events = new ArrayList<>();
+        events.add(MessageProcessor.Event.setting(SETTINGS[0]));
+        events.add(MessageProcessor.Event.message("From his shoulder,"));
+        events.add(MessageProcessor.Event.message("Hiawatha"));
+        Machine M = machine();
+        Main.setUp(M, SETTINGS[0], new SettingCache(0),
+                   new KeystreamCache());
+        String from = M.convert("FROMHISSHOULDER"),
+            hia = M.convert("HIAWATHA");
+
+        Recorder recorder = process(events, Normalizer.Policy.ERROR);
+        assertEquals(0, recorder.items.size());
+        assertEquals("character not in alphabet: ','",
+                     recorder.error.getMessage());
+        recorder = process(events, Normalizer.Policy.DROP);
+        assertNull(recorder.error);
+        assertEquals(List.of(from, hia), recorder.items);
+        recorder = process(events, Normalizer.Policy.PASS);
+        assertEquals(List.of(from.substring(0, 4) + " "
+                             + from.substring(4, 7) + " "
+                             + from.substring(7) + ",", hia),
+                     recorder.items);
+    }
+
+    /** Return a Recorder of everything a processor dealing with foreign
+     *  characters according to FOREIGN delivers from EVENTS. */
+    private static Recorder process(List<MessageProcessor.Event> events,
+                                    Normalizer.Policy foreign) {
+        MessageProcessor processor =
+            new MessageProcessor(machine(), "table", foreign, 40,
+                                 Runnable::run);
+        ListPublisher publisher = new ListPublisher(events);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(processor);
+        processor.subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        return recorder;
+    }
+
+    @Test
+    public void boundsBufferingForSlowSubscriber() {
+        List<MessageProcessor.Event> events = events(1000);
+        MessageProcessor processor =
+            new MessageProcessor(machine(), "table", 40, Runnable::run);
+        ListPublisher publisher = new ListPublisher(events);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(processor);
+        assertEquals(0, publisher.requested);
+        processor.subscribe(recorder);
+        assertEquals(40, publisher.requested);
+
+        for (int i = 0; i < 20; i += 1) {
+            recorder.subscription.request(7);
+            assertEquals(7 * (i + 1), recorder.items.size());
+            long settings = events.subList(0, publisher.sent).stream()
+                .filter(MessageProcessor.Event::isSetting).count();
+            assertTrue(publisher.requested - recorder.items.size()
+                       - settings <= 40);
+        }
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(recorder.complete);
+        assertNull(recorder.error);
+        assertEquals(expected(events), recorder.items);
+    }
+
+    @Test
+    public void convertsAsynchronouslyAndReportsErrors() throws Exception {
+        List<MessageProcessor.Event> events = events(300);
+        events.add(MessageProcessor.Event.setting("* B Beta I I III AAAA"));
+        events.add(MessageProcessor.Event.message("NEVER CONVERTED"));
+        MessageProcessor processor =
+            new MessageProcessor(machine(), "auto", 16,
+                                 ForkJoinPool.commonPool());
+        Recorder recorder = new Recorder();
+        processor.subscribe(recorder);
+        try (SubmissionPublisher<MessageProcessor.Event> publisher =
+             new SubmissionPublisher<>(ForkJoinPool.commonPool(), 8)) {
+            publisher.subscribe(processor);
+            recorder.subscription.request(Long.MAX_VALUE);
+            for (MessageProcessor.Event e : events) {
+                publisher.offer(e, 5, TimeUnit.SECONDS, null);
+            }
+        }
+        while (recorder.error == null && !recorder.complete) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected(events.subList(0, 300)), recorder.items);
+        assertEquals("Repeated Rotor", recorder.error.getMessage());
+    }
+
+}
@@ -16,6 +16,19 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _notches = notches;
         _permutation = perm;
+        _notchMask = notchMask(notches, perm.alphabet());
+    }
+
+    /** Return a bitmask of the settings, over ALPHABET, of the characters
+     *  in NOTCHES: bit p % 64 of element p / 64 is set iff setting p is
+     *  a notch. */
+    static long[] notchMask(String notches, Alphabet alphabet) {
+        long[] result = new long[(alphabet.size() + 63) >>> 6];
+        for (int i = 0; i < notches.length(); i += 1) {
+            int p = alphabet.toInt(notches.charAt(i));
+            result[p >>> 6] |= 1L << p;
+        }
+        return result;
     }
 
 
@@ -28,15 +41,27 @@ class MovingRotor extends Rotor {
 
 
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), _permutation, _notches);
+    }
+
+    /** Returns my notches. */
+    @Override
+    String notches() {
+        return _notches;
+    }
+
+    @Override
+    long[] notchMask() {
+        return _notchMask;
+    }
+
     /** checks if currently at notch.*/
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+        int p = setting();
+        return (_notchMask[p >>> 6] & 1L << p) != 0;
     }
 
 
@@ -54,5 +79,8 @@ class MovingRotor extends Rotor {
     /** Saves permutation.*/
     private Permutation _permutation;
 
+    /** My notches as a bitmask of settings (see notchMask). */
+    private final long[] _notchMask;
+
 
 }
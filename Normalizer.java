@@ -0,0 +1,178 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Converts text with an engine in one pass over the characters, folding
+ *  case and dealing with characters foreign to the alphabet according to
+ *  a Policy.  Characters are mapped to indices by a table built once from
+ *  the alphabet, which includes the characters whose upper-case forms are
+ *  in it; the indices of each stretch of up to CHUNK characters are
+ *  converted together by the engine's bulk conversion and mapped back
+ *  into place, so no intermediate Strings are made.  A Normalizer keeps
+ *  scratch buffers and so is for use by one thread at a time.
+ *  @author Jennifer Hu
+ */
+class Normalizer {
+
+    /** What becomes of characters that are not in the alphabet (in
+     *  either case). */
+    enum Policy {
+        /** Left out of the result. */
+        DROP,
+        /** Copied to the result unchanged, without advancing the
+         *  machine. */
+        PASS,
+        /** Rejected with an EnigmaException, except for blanks, which
+         *  are left out, as Machine.convert(String) always did. */
+        ERROR;
+
+        /** Return the policy named NAME, in either case. */
+        static Policy parse(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException excp) {
+                throw error("unknown policy for foreign characters: %s",
+                            name);
+            }
+        }
+    }
+
+    /** Number of characters converted by each call of the engine's bulk
+     *  conversion. */
+    static final int CHUNK = 4096;
+
+    /** A normalizer for ALPHABET following POLICY. */
+    Normalizer(Alphabet alphabet, Policy policy) {
+        _policy = policy;
+        int size = alphabet.size();
+        _chars = new char[size];
+        int limit = 0;
+        for (int i = 0; i < size; i += 1) {
+            _chars[i] = alphabet.toChar(i);
+            limit = Math.max(limit, _chars[i] + 1);
+        }
+        for (int c = limit; c <= Character.MAX_VALUE; c += 1) {
+            if (alphabet.contains(Character.toUpperCase((char) c))) {
+                limit = c + 1;
+            }
+        }
+        _index = new int[limit];
+        for (int c = 0; c < limit; c += 1) {
+            char ch = (char) c;
+            if (!alphabet.contains(ch)) {
+                ch = Character.toUpperCase(ch);
+            }
+            _index[c] = alphabet.contains(ch) ? alphabet.toInt(ch) : -1;
+        }
+    }
+
+    /** Return my policy. */
+    Policy policy() {
+        return _policy;
+    }
+
+    /** Return the index of C, or of its upper-case form, in my alphabet,
+     *  or -1 if neither is in it. */
+    int index(char c) {
+        return c < _index.length ? _index[c] : -1;
+    }
+
+    /** Return the message of LINE, a line of a file of messages, as the
+     *  indices of its characters in my alphabet, or null if LINE is a
+     *  setting line.  Characters not in the alphabet (in either case)
+     *  are left out whatever my policy.  DepthFinder and CorpusProfile
+     *  both find their messages this way. */
+    int[] message(CharSequence line) {
+        return isSetting(line) ? null : indices(line);
+    }
+
+    /** Return the indices in my alphabet of the characters of TEXT,
+     *  leaving out those not in it (in either case). */
+    int[] indices(CharSequence text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int x = index(text.charAt(i));
+            if (x >= 0) {
+                result[n] = x;
+                n += 1;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /** Return true iff LINE is a setting line: one whose first character
+     *  other than blanks is SETTING. */
+    static boolean isSetting(CharSequence line) {
+        int i = 0;
+        while (i < line.length() && isBlank(line.charAt(i))) {
+            i += 1;
+        }
+        return i < line.length() && line.charAt(i) == SETTING;
+    }
+
+    /** Return true iff C is a blank or tab. */
+    static boolean isBlank(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /** The character that begins a setting line. */
+    static final char SETTING = '*';
+
+    /** Convert the LEN characters of SRC starting at OFF with ENGINE,
+     *  storing the result in DST starting at DSTOFF, and return the
+     *  number of characters stored.  SRC and DST may be the same
+     *  array. */
+    int convert(EnigmaEngine engine, char[] src, int off, int len,
+                char[] dst, int dstOff) {
+        int k = dstOff;
+        for (int start = off; start < off + len; start += CHUNK) {
+            int end = Math.min(off + len, start + CHUNK), n = 0;
+            for (int i = start; i < end; i += 1) {
+                char ch = src[i];
+                int x = ch < _index.length ? _index[ch] : -1;
+                if (x >= 0) {
+                    _indices[n] = x;
+                    _slots[n] = k;
+                    n += 1;
+                    k += 1;
+                } else if (_policy == Policy.PASS) {
+                    dst[k] = ch;
+                    k += 1;
+                } else if (_policy == Policy.ERROR && ch != ' ') {
+                    throw error("character not in alphabet: '%c'", ch);
+                }
+            }
+            engine.convert(_indices, 0, n);
+            for (int j = 0; j < n; j += 1) {
+                dst[_slots[j]] = _chars[_indices[j]];
+            }
+        }
+        return k - dstOff;
+    }
+
+    /** Return the conversion of MSG with ENGINE, as for convert(...,
+     *  char[], ...). */
+    String convert(EnigmaEngine engine, String msg) {
+        char[] buf = msg.toCharArray();
+        return new String(buf, 0, convert(engine, buf, 0, buf.length,
+                                          buf, 0));
+    }
+
+    /** What becomes of foreign characters. */
+    private final Policy _policy;
+
+    /** _index[c] is the index of character c, or -1 if it is foreign;
+     *  characters beyond its end are all foreign. */
+    private final int[] _index;
+
+    /** The character of each index. */
+    private final char[] _chars;
+
+    /** Indices of the alphabetic characters of the current chunk, and
+     *  their places in the result. */
+    private final int[] _indices = new int[CHUNK], _slots = new int[CHUNK];
+
+}
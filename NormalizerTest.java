@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Normalizer class.
+ *  @author
+ */
+public class NormalizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+    private static final String PLAIN = "FROMHISSHOULDERHIAWATHA";
+    private static final String TEXT = "From his shoulder, Hiawatha!";
+
+    /** Return a fresh machine at the standard setting. */
+    private static Machine machine() {
+        return navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+    }
+
+    @Test
+    public void policies() {
+        String cipher = machine().convert(PLAIN);
+        Machine M = machine();
+        Normalizer drop = new Normalizer(M.alphabet(), Normalizer.Policy.DROP);
+        assertEquals(cipher, drop.convert(new ReferenceEngine(M), TEXT));
+
+        M = machine();
+        Normalizer pass =
+            new Normalizer(M.alphabet(), Normalizer.Policy.parse("pass"));
+        String passed = pass.convert(new ReferenceEngine(M), TEXT);
+        assertEquals(TEXT.length(), passed.length());
+        assertEquals(cipher, passed.replaceAll("[^A-Z]", ""));
+        assertEquals("  , !", passed.replaceAll("[A-Z]", ""));
+        assertEquals(' ', passed.charAt(4));
+
+        Normalizer strict =
+            new Normalizer(M.alphabet(), Normalizer.Policy.ERROR);
+        assertEquals(cipher, strict.convert(new ReferenceEngine(machine()),
+                                            "from his shoulder hiawatha"));
+        try {
+            strict.convert(new ReferenceEngine(machine()), TEXT);
+            fail("foreign character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("character not in alphabet: ','", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void convertsInPlaceAcrossChunks() {
+        StringBuilder plain = new StringBuilder(), text = new StringBuilder();
+        for (int i = 0; plain.length() < 3 * Normalizer.CHUNK; i += 1) {
+            char c = (char) ('A' + i * 7 % 26);
+            plain.append(c);
+            text.append(i % 3 == 0 ? Character.toLowerCase(c) : c);
+            if (i % 11 == 0) {
+                text.append(". ");
+            }
+        }
+        String cipher = machine().convert(plain.toString());
+        Machine M = machine();
+        Normalizer drop = new Normalizer(M.alphabet(), Normalizer.Policy.DROP);
+        char[] buf = text.toString().toCharArray();
+        int n = drop.convert(new ReferenceEngine(M), buf, 0, buf.length,
+                             buf, 0);
+        assertEquals(cipher, new String(buf, 0, n));
+    }
+
+    @Test
+    public void messages() {
+        Normalizer drop = new Normalizer(machine().alphabet(),
+                                         Normalizer.Policy.DROP);
+        assertNull(drop.message("* B Beta III IV I AXLE"));
+        assertNull(drop.message(" \t* B Beta III IV I AXLE"));
+        assertArrayEquals(new int[] { 0, 23, 11, 4 },
+                          drop.message("a*X, 12 le!"));
+        assertArrayEquals(new int[0], drop.message(", * 12"));
+        assertArrayEquals(new int[0], drop.message(""));
+        assertArrayEquals(new int[] { 0, 23 }, drop.indices("* ax"));
+    }
+
+}
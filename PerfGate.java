@@ -0,0 +1,396 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Guards against performance regressions.  Each of a fixed list of
+ * scenarios generates a Workload and measures the throughput, in
+ * message letters per second, either of Main processing it end to end
+ * from and to files, of an engine converting a long message of its
+ * letters, or of a BatchConverter converting one message in many lanes.
+ * The best of a few rounds is compared with the throughput
+ * recorded for the scenario in a baseline file, and the gate fails if
+ * any is slower than the baseline by more than a tolerance.  Baselines
+ * depend on the machine, so they are recorded (with --record) on the
+ * machine that runs the gate.  A baseline recorded after a regression
+ * hides it, so the gate also fails if a scenario falls below a fixed
+ * fraction of another measured in the same run (see FLOORS), such as
+ * Main against converting the same input directly with caching off.
+ *
+ * @author Jennifer Hu
+ */
+public final class PerfGate {
+
+    /**
+     * Run the gate, as specified by ARGS:
+     *     [--baseline=FILE] [--record] [--tolerance=T] [--rounds=R]
+     *     [--only=NAME,...]
+     * measures each scenario (or only those NAMEd) R times (default 3)
+     * and compares the best throughput with that in FILE (default
+     * perf.baseline).  It is an error if any is below the baseline by
+     * more than the fraction T (default 0.15), or if any falls below its
+     * floor.  With --record, the measurements are written to FILE
+     * instead, replacing those of the same scenarios, unless any falls
+     * below its floor.
+     */
+    public static void main(String... args) {
+        try {
+            String baseline = DEFAULT_BASELINE;
+            boolean record = false;
+            double tolerance = DEFAULT_TOLERANCE;
+            int rounds = DEFAULT_ROUNDS;
+            List<String> only = null;
+            for (String arg : args) {
+                if (arg.equals("--record")) {
+                    record = true;
+                    continue;
+                }
+                String[] opt = arg.split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", arg);
+                }
+                switch (opt[0]) {
+                case "--baseline":
+                    baseline = opt[1];
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(opt[1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(opt[1]);
+                    break;
+                case "--only":
+                    only = Arrays.asList(opt[1].split(","));
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            if (rounds < 1 || tolerance < 0 || tolerance >= 1) {
+                throw error("bad rounds or tolerance");
+            }
+            Map<String, Double> expected = new File(baseline).exists()
+                ? readBaseline(baseline) : new LinkedHashMap<>();
+            if (!record && expected.isEmpty()) {
+                throw error("no baseline in %s; record one with --record",
+                            baseline);
+            }
+            Map<String, Double> measured = new LinkedHashMap<>();
+            System.out.printf("%-16s %12s %12s %7s%n", "scenario",
+                              "baseline", "letters/s", "ratio");
+            for (String[] scenario : SCENARIOS) {
+                if (only != null && !only.contains(scenario[0])) {
+                    continue;
+                }
+                double rate = measure(scenario, rounds);
+                if (rate == 0) {
+                    System.out.printf("%-16s skipped%n", scenario[0]);
+                    continue;
+                }
+                measured.put(scenario[0], rate);
+                Double base = expected.get(scenario[0]);
+                System.out.printf("%-16s %12s %12.0f %7s%n", scenario[0],
+                                  base == null ? "-"
+                                  : String.format("%.0f", base), rate,
+                                  base == null ? "new"
+                                  : String.format("%.2f", rate / base));
+            }
+            List<String> low = belowFloors(measured);
+            if (!low.isEmpty()) {
+                throw error("below the floor set by another scenario%s: %s",
+                            record ? " (baseline not recorded)" : "",
+                            String.join(", ", low));
+            }
+            if (record) {
+                expected.putAll(measured);
+                writeBaseline(baseline, expected);
+                return;
+            }
+            List<String> slow = regressions(expected, measured, tolerance);
+            if (!slow.isEmpty()) {
+                throw error("slower than baseline by more than %.0f%%: %s",
+                            100 * tolerance, String.join(", ", slow));
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the names of the scenarios whose throughput in MEASURED is
+     *  below that in BASELINE by more than the fraction TOLERANCE.
+     *  Scenarios missing from either are not compared. */
+    static List<String> regressions(Map<String, Double> baseline,
+                                    Map<String, Double> measured,
+                                    double tolerance) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Double> e : measured.entrySet()) {
+            Double base = baseline.get(e.getKey());
+            if (base != null && e.getValue() < base * (1 - tolerance)) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Return descriptions of the FLOORS that the throughputs in MEASURED
+     *  fall below.  Floors of scenarios not measured are not checked. */
+    static List<String> belowFloors(Map<String, Double> measured) {
+        List<String> result = new ArrayList<>();
+        for (String[] floor : FLOORS) {
+            Double rate = measured.get(floor[0]),
+                reference = measured.get(floor[1]);
+            double fraction = Double.parseDouble(floor[2]);
+            if (rate != null && reference != null
+                && rate < fraction * reference) {
+                result.add(String.format("%s at %.2f of %s (floor %s)",
+                                         floor[0], rate / reference,
+                                         floor[1], floor[2]));
+            }
+        }
+        return result;
+    }
+
+    /** Return the throughputs recorded in the baseline file NAME, which
+     *  has a scenario name and its throughput on each line, and may
+     *  have comment lines starting with '#'. */
+    static Map<String, Double> readBaseline(String name) throws IOException {
+        Map<String, Double> result = new LinkedHashMap<>();
+        try (Scanner in = new Scanner(new File(name))) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw error("bad baseline line: %s", line);
+                }
+                result.put(fields[0], Double.parseDouble(fields[1]));
+            }
+        }
+        return result;
+    }
+
+    /** Write RATES to the baseline file NAME. */
+    static void writeBaseline(String name, Map<String, Double> rates)
+        throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(name))) {
+            out.println("# Throughput (message letters per second) of "
+                        + "each PerfGate scenario.");
+            for (Map.Entry<String, Double> e : rates.entrySet()) {
+                out.printf("%s %.0f%n", e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Return the best throughput of ROUNDS runs of SCENARIO, or 0 if
+     *  it cannot run here. */
+    private static double measure(String[] scenario, int rounds)
+        throws IOException {
+        String mode = scenario[1];
+        Workload workload = new Workload();
+        for (int i = 2; i < scenario.length; i += 1) {
+            workload.option(scenario[i]);
+        }
+        if (mode.equals("specialized") && !Specializer.available()
+            || mode.equals(VECTOR_LANES) && !BatchConverter.VECTORS) {
+            return 0;
+        }
+        double best = 0;
+        boolean gzip = mode.equals(GZIP);
+        if (mode.startsWith("--") || gzip) {
+            String suffix = gzip ? Gzip.SUFFIX : "";
+            File config = File.createTempFile("enigma", ".conf"),
+                input = File.createTempFile("enigma", ".in" + suffix),
+                output = File.createTempFile("enigma", ".out" + suffix);
+            long letters;
+            try (Writer c = new FileWriter(config);
+                 Writer in = new OutputStreamWriter(Gzip.output(input))) {
+                c.write(workload.config());
+                letters = workload.writeInput(in);
+            }
+            try {
+                for (int r = 0; r < rounds; r += 1) {
+                    long start = System.nanoTime();
+                    new Main(new String[] {
+                        gzip ? "--engine=auto" : mode, config.getPath(),
+                        input.getPath(), output.getPath() }).process();
+                    best = Math.max(best, rate(letters, start));
+                }
+            } finally {
+                config.delete();
+                input.delete();
+                output.delete();
+            }
+        } else if (mode.equals(DIRECT)) {
+            Machine M = new ConfigReader(new Scanner(workload.config()))
+                .read();
+            String[] lines = inputLines(workload);
+            Alphabet alpha = M.alphabet();
+            for (int r = 0; r < rounds; r += 1) {
+                long start = System.nanoTime(), letters = 0;
+                for (String line : lines) {
+                    if (line.startsWith("*")) {
+                        Main.setUp(M, line, new SettingCache(0),
+                                   new KeystreamCache(0, 0));
+                        continue;
+                    }
+                    for (int i = 0; i < line.length(); i += 1) {
+                        if (alpha.contains(line.charAt(i))) {
+                            M.convert(alpha.toInt(line.charAt(i)));
+                            letters += 1;
+                        }
+                    }
+                }
+                best = Math.max(best, rate(letters, start));
+            }
+        } else if (mode.equals(LANES) || mode.equals(VECTOR_LANES)) {
+            Machine M = new ConfigReader(new Scanner(workload.config()))
+                .read();
+            Main.setUp(M, inputLines(workload)[0], new SettingCache(0),
+                       new KeystreamCache(0, 0));
+            int[][] settings = new int[BATCH_LANES][];
+            for (int j = 0; j < settings.length; j += 1) {
+                settings[j] = M.settings();
+                settings[j][settings[j].length - 1] =
+                    j % M.alphabet().size();
+            }
+            SplittableRandom random = new SplittableRandom(ENGINE_LETTERS);
+            int[] msg = new int[BATCH_BLOCK];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = random.nextInt(M.alphabet().size());
+            }
+            int[][] out = new int[BATCH_LANES][msg.length];
+            for (int r = 0; r < rounds; r += 1) {
+                BatchConverter batch = new BatchConverter(
+                    new Wiring(M), settings, mode.equals(VECTOR_LANES));
+                long start = System.nanoTime();
+                for (int done = 0; done < ENGINE_LETTERS;
+                     done += BATCH_LANES * msg.length) {
+                    batch.convert(msg, 0, msg.length, out);
+                }
+                best = Math.max(best, rate(ENGINE_LETTERS, start));
+            }
+        } else {
+            Machine M = new ConfigReader(new Scanner(workload.config()))
+                .read();
+            String[] lines = inputLines(workload);
+            SplittableRandom random = new SplittableRandom(ENGINE_LETTERS);
+            int[] msg = new int[ENGINE_LETTERS];
+            for (int r = 0; r < rounds; r += 1) {
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = random.nextInt(M.alphabet().size());
+                }
+                Main.setUp(M, lines[0], new SettingCache(0),
+                           new KeystreamCache(0, 0));
+                long start = System.nanoTime();
+                Engines.create(mode, M, msg.length)
+                    .convert(msg, 0, msg.length);
+                best = Math.max(best, rate(msg.length, start));
+            }
+        }
+        return best;
+    }
+
+    /** Return the lines of the input of WORKLOAD. */
+    private static String[] inputLines(Workload workload)
+        throws IOException {
+        StringWriter text = new StringWriter();
+        workload.writeInput(text);
+        return text.toString().split("\n");
+    }
+
+    /** Return the throughput of LETTERS letters converted since START, a
+     *  value of System.nanoTime(). */
+    private static double rate(long letters, long start) {
+        return letters * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+
+    /** The scenarios: each has a name, then either an option of Main
+     *  with which it processes the workload, GZIP for Main processing
+     *  it gzip-compressed into a compressed output, DIRECT for setting
+     *  up and converting its lines in memory with the caches off, LANES
+     *  or VECTOR_LANES for a BatchConverter without or with the Vector
+     *  API converting ENGINE_LETTERS letters in BATCH_LANES lanes, or
+     *  the name of an engine that converts ENGINE_LETTERS letters, and
+     *  then the options of the Workload. */
+    private static final String[][] SCENARIOS = {
+        { "main-short", "--engine=auto", "--seed=1", "--lines=100000",
+          "--min=5", "--max=60", "--settings=8", "--distinct=64" },
+        { "main-gzip", "gzip", "--seed=1", "--lines=100000",
+          "--min=5", "--max=60", "--settings=8", "--distinct=64" },
+        { "main-settings", "--engine=auto", "--seed=2", "--lines=5000",
+          "--min=5", "--max=30", "--settings=1" },
+        { "direct-settings", "direct", "--seed=2", "--lines=5000",
+          "--min=5", "--max=30", "--settings=1" },
+        { "main-long", "--engine=auto", "--seed=3", "--lines=40",
+          "--min=20000", "--max=60000", "--settings=20" },
+        { "main-pipeline", "--pipeline", "--seed=3", "--lines=40",
+          "--min=20000", "--max=60000", "--settings=20" },
+        { "main-wide", "--engine=auto", "--seed=4", "--alphabet=A-L",
+          "--rotors=12", "--pawls=10", "--lines=2000", "--min=500",
+          "--max=2000", "--settings=4" },
+        { "reference", "reference", "--seed=5", "--lines=1" },
+        { "table", "table", "--seed=5", "--lines=1" },
+        { "specialized", "specialized", "--seed=5", "--lines=1" },
+        { "lanes", "lanes", "--seed=5", "--lines=1" },
+        { "lanes-vector", "lanes-vector", "--seed=5", "--lines=1" },
+    };
+
+    /** Floors: the throughput of the first scenario of each must be at
+     *  least the fraction given third of that of the second.  Every
+     *  setting line of main-settings is new, so caching setting lines
+     *  must cost Main little over setting up directly.  The Vector API
+     *  is worth using only if it is well ahead of the plain lane loops. */
+    private static final String[][] FLOORS = {
+        { "main-settings", "direct-settings", "0.5" },
+        { "lanes-vector", "lanes", "1.5" },
+    };
+
+    /** Mode of the scenarios that set up and convert directly. */
+    private static final String DIRECT = "direct";
+
+    /** Modes of the scenarios of a BatchConverter without and with the
+     *  Vector API. */
+    private static final String LANES = "lanes",
+        VECTOR_LANES = "lanes-vector";
+
+    /** Lanes of the BatchConverter scenarios, and letters converted per
+     *  call. */
+    private static final int BATCH_LANES = 64, BATCH_BLOCK = 4096;
+
+    /** Mode of the scenarios of compressed input and output. */
+    private static final String GZIP = "gzip";
+
+    /** Letters converted by each run of an engine scenario. */
+    private static final int ENGINE_LETTERS = 1 << 23;
+
+    /** Default baseline file. */
+    private static final String DEFAULT_BASELINE = "perf.baseline";
+
+    /** Default tolerated fraction of slowdown. */
+    private static final double DEFAULT_TOLERANCE = 0.15;
+
+    /** Default number of runs of each scenario. */
+    private static final int DEFAULT_ROUNDS = 3;
+
+}
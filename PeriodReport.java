@@ -0,0 +1,103 @@
+package enigma;
+
+import java.math.BigInteger;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Reports the stepping period of a choice of rotors (see StepPeriod):
+ * the number of keypresses after which their settings repeat, how many
+ * keypresses from given settings pass before they start repeating, and
+ * how often each rotor advances.  All are computed from the notches,
+ * without pressing keys, unless the notches are irregular.
+ *
+ * @author Jennifer Hu
+ */
+public final class PeriodReport {
+
+    /**
+     * Print the report specified by ARGS:
+     *     [--settings=POSITIONS] CONFIG ROTOR...
+     * for the machine described by the configuration file CONFIG with
+     * the named ROTORs in its slots, the reflector first, starting at
+     * POSITIONS, a string of letters as on a setting line (default all
+     * at the first letter).
+     */
+    public static void main(String... args) {
+        try {
+            String positions = null;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2 || !opt[0].equals("--settings")) {
+                    throw error("bad option: %s", args[first]);
+                }
+                positions = opt[1];
+            }
+            if (first == args.length) {
+                throw error(USAGE);
+            }
+            Machine M = ConfigReader.read(args[first]);
+            String[] rotors = new String[args.length - first - 1];
+            System.arraycopy(args, first + 1, rotors, 0, rotors.length);
+            if (rotors.length != M.numRotors()) {
+                throw error(USAGE + " (%d rotors)", M.numRotors());
+            }
+            for (String name : rotors) {
+                if (M.rotor(name) == null) {
+                    throw error("unknown rotor: %s", name);
+                }
+            }
+            M.insertRotors(rotors);
+            if (positions == null) {
+                positions = new String(new char[rotors.length - 1])
+                    .replace('\0', M.alphabet().toChar(0));
+            } else if (positions.length() != rotors.length - 1) {
+                throw error("settings must have %d letters",
+                            rotors.length - 1);
+            }
+            M.setRotors(positions);
+            report(M, positions);
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Print the report for M, whose rotors are at POSITIONS. */
+    private static void report(Machine M, String positions) {
+        StepPeriod period = M.stepping().period();
+        System.out.printf("period: %d keypresses (%s)%n", period.period(),
+                          period.analytic() ? "from the notches"
+                          : "simulated from the first settings");
+        long limit = period.analytic() ? Long.MAX_VALUE
+            : StepPeriod.SIMULATION_LIMIT;
+        long[] orbit = period.orbit(M.settings(), limit);
+        if (orbit == null) {
+            System.out.printf("from %s: more than %d settings reached%n",
+                              positions, limit);
+        } else {
+            System.out.printf("from %s: %d keypresses before the settings "
+                              + "repeat every %d; %d settings reached%n",
+                              positions, orbit[0], orbit[1],
+                              orbit[0] + orbit[1]);
+        }
+        System.out.printf("%4s %-10s %7s %24s %12s%n", "slot", "rotor",
+                          "notches", "advances per period",
+                          "per keypress");
+        Rotor[] rotors = M.getRotorsList();
+        for (int i = 1; i < rotors.length; i += 1) {
+            BigInteger turnovers = period.turnovers(i);
+            System.out.printf("%4d %-10s %7d %24d %12.6f%n", i,
+                              rotors[i].name(), period.notches(i),
+                              turnovers, period.turnoverRate(i));
+        }
+    }
+
+    /** Describes the arguments. */
+    private static final String USAGE =
+        "usage: PeriodReport [--settings=POSITIONS] CONFIG ROTOR...";
+
+}
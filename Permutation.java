@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -19,22 +21,93 @@ class Permutation {
         temp = temp.replace("(", " ");
         temp = temp.replace(")", " ");
         _cycles = temp.split(" ");
+        int[] forward = identity(), inverse = identity();
+        boolean[] mapped = new boolean[size()];
+        for (String cycle : _cycles) {
+            addCycle(cycle, forward, inverse, mapped);
+        }
+        _forward = IndexTable.of(forward);
+        _inverse = IndexTable.of(inverse);
     }
 
+    /** Set this Permutation to that given by CYCLES, each an array of
+     *  indices into ALPHABET, as for Permutation(String, Alphabet).  This
+     *  suits alphabets, such as ByteAlphabet, whose characters include
+     *  parentheses and whitespace. */
+    Permutation(int[][] cycles, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _cycles = new String[0];
+        int[] forward = identity(), inverse = identity();
+        boolean[] mapped = new boolean[size()];
+        for (int[] cycle : cycles) {
+            for (int c : cycle) {
+                if (c < 0 || c >= size()) {
+                    throw error("character index out of range");
+                }
+            }
+            addCycle(cycle, forward, inverse, mapped);
+        }
+        _forward = IndexTable.of(forward);
+        _inverse = IndexTable.of(inverse);
+    }
 
+    /** A permutation of ALPHABET with images FORWARD and inverse images
+     *  INVERSE. */
+    private Permutation(Alphabet alphabet, IndexTable forward,
+                        IndexTable inverse) {
+        _alphabet = alphabet;
+        _cycles = new String[0];
+        _forward = forward;
+        _inverse = inverse;
+    }
 
+    /** Return this permutation rotated by K: the map taking x + K to
+     *  permute(x) + K, modulo size(). */
+    Permutation rotated(int k) {
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            int y = wrap(_forward.get(wrap(x - k)) + k);
+            forward[x] = y;
+            inverse[y] = x;
+        }
+        return new Permutation(_alphabet, IndexTable.of(forward),
+                               IndexTable.of(inverse));
+    }
 
+    /** Return the identity map on 0..size()-1. */
+    private int[] identity() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        String[] addedCycle = new String[_cycles.length + 1];
-        for (int i = 0; i < _cycles.length; i++) {
-            addedCycle[i] = _cycles[i];
+    /** Add the cycle c0->c1->...->cm->c0 to the maps FORWARD and INVERSE,
+     *  where CYCLE is c0c1...cm.  Characters already marked in MAPPED keep
+     *  the mapping given by an earlier cycle. */
+    private void addCycle(String cycle, int[] forward, int[] inverse,
+                          boolean[] mapped) {
+        int[] indices = new int[cycle.length()];
+        for (int j = 0; j < indices.length; j += 1) {
+            indices[j] = _alphabet.toInt(cycle.charAt(j));
         }
-        addedCycle[_cycles.length + 1] = cycle;
-        _cycles = addedCycle;
+        addCycle(indices, forward, inverse, mapped);
+    }
 
+    /** Add the cycle CYCLE, of indices, as for addCycle(String, ...). */
+    private void addCycle(int[] cycle, int[] forward, int[] inverse,
+                          boolean[] mapped) {
+        for (int j = 0; j < cycle.length; j += 1) {
+            int from = cycle[j];
+            if (!mapped[from]) {
+                int to = cycle[(j + 1) % cycle.length];
+                mapped[from] = true;
+                forward[from] = to;
+                inverse[to] = from;
+            }
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -54,42 +127,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char n = _alphabet.toChar(wrap(p));
-        char newChar = '0';
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == n) {
-                    if (j != _cycles[i].length() - 1) {
-                        newChar = _cycles[i].charAt(j + 1);
-                    } else {
-                        newChar = _cycles[i].charAt(0);
-                    }
-                    return _alphabet.toInt(newChar);
-                }
-            }
-        }
-        return p;
+        return _forward.get(wrap(p));
     }
 
-
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char n = _alphabet.toChar(wrap(c));
-        char newChar = '0';
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == n) {
-                    if (j != 0) {
-                        newChar = _cycles[i].charAt(j - 1);
-                    } else {
-                        newChar = _cycles[i].charAt(_cycles[i].length() - 1);
-                    }
-                    return _alphabet.toInt(newChar);
-                }
-            }
-        }
-        return c;
+        return _inverse.get(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -113,15 +157,48 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int charcount = 0;
-        boolean derang = false;
-        for (int i = 0; i < _cycles.length; i++) {
-            charcount += _cycles[i].length();
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward.get(i) == i) {
+                return false;
+            }
         }
-        if (charcount == _alphabet.size()) {
-            derang = true;
+        return true;
+    }
+
+    /** Return a description of how my tables are stored, such as
+     *  "byte[26]" or "sparse[12 of 65536]", and how many bytes they
+     *  take. */
+    String storage() {
+        return String.format("%s, %d bytes", _forward,
+                             _forward.bytes() + _inverse.bytes());
+    }
+
+    /** Return the lengths of the cycles of this permutation, including
+     *  cycles of length 1, in increasing order. */
+    int[] cycleLengths() {
+        return cycleLengths(_forward.toArray());
+    }
+
+    /** Return the lengths of the cycles of MAP, a permutation of
+     *  0..MAP.length-1 given by its images, in increasing order. */
+    static int[] cycleLengths(int[] map) {
+        boolean[] seen = new boolean[map.length];
+        int[] lengths = new int[map.length];
+        int count = 0;
+        for (int i = 0; i < map.length; i += 1) {
+            if (!seen[i]) {
+                int len = 0;
+                for (int j = i; !seen[j]; j = map[j]) {
+                    seen[j] = true;
+                    len += 1;
+                }
+                lengths[count] = len;
+                count += 1;
+            }
         }
-        return derang;
+        int[] result = Arrays.copyOf(lengths, count);
+        Arrays.sort(result);
+        return result;
     }
 
     /** Alphabet of this permutation. */
@@ -129,4 +206,11 @@ class Permutation {
 
     /** String array of cycles. */
     private String [] _cycles;
+
+    /** The image of each index under this permutation, in the most
+     *  compact form that IndexTable offers for it. */
+    private final IndexTable _forward;
+
+    /** The image of each index under the inverse of this permutation. */
+    private final IndexTable _inverse;
 }
@@ -78,6 +78,34 @@ public class PermutationTest {
 
     }
 
+    @Test
+    public void compactStorage() {
+        Permutation p = new Permutation("(PNH) (ABDFIKLZYXW) (JC)", UPPER);
+        assertEquals("byte[26], 52 bytes", p.storage());
+        int[] big = new int[40000];
+        for (int i = 0; i < big.length; i += 1) {
+            big[i] = (i + 20000) % big.length;
+        }
+        assertEquals(IndexTable.SHORT, IndexTable.of(
+            java.util.Arrays.copyOf(big, 10000)).form());
+        IndexTable wide = IndexTable.of(big);
+        assertEquals(IndexTable.CHAR, wide.form());
+        assertArrayEquals(big, wide.toArray());
+
+        int[] plugs = new int[4096];
+        for (int i = 0; i < plugs.length; i += 1) {
+            plugs[i] = i;
+        }
+        for (int i = 0; i < 20; i += 2) {
+            plugs[i * 97] = (i + 1) * 97;
+            plugs[(i + 1) * 97] = i * 97;
+        }
+        IndexTable sparse = IndexTable.of(plugs);
+        assertEquals("sparse[20 of 4096]", sparse.toString());
+        assertEquals(64 * 8, sparse.bytes());
+        assertArrayEquals(plugs, sparse.toArray());
+    }
+
 
 
 
@@ -0,0 +1,58 @@
+package enigma;
+
+/** The reference engine: converts directly with a Machine and its Rotor
+ *  objects.  It needs no setup, and so suits short messages.
+ *  @author Jennifer Hu
+ */
+class ReferenceEngine implements EnigmaEngine {
+
+    /** An engine converting with M, which it shares with the caller. */
+    ReferenceEngine(Machine M) {
+        _machine = M;
+    }
+
+    @Override
+    public String name() {
+        return "reference";
+    }
+
+    @Override
+    public Alphabet alphabet() {
+        return _machine.alphabet();
+    }
+
+    @Override
+    public int convert(int c) {
+        return _machine.convert(c);
+    }
+
+    @Override
+    public int[] settings() {
+        return _machine.settings();
+    }
+
+    @Override
+    public void setSettings(int[] settings) {
+        _machine.setSettings(settings);
+    }
+
+    @Override
+    public void convert(int[] msg, int off, int len) {
+        _machine.convert(msg, off, len);
+    }
+
+    @Override
+    public int convert(char[] src, int off, int len,
+                       char[] dst, int dstOff) {
+        return _machine.convert(src, off, len, dst, dstOff);
+    }
+
+    @Override
+    public String convert(String msg) {
+        return _machine.convert(msg);
+    }
+
+    /** The machine converted with. */
+    private final Machine _machine;
+
+}
@@ -13,6 +13,11 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation(0));
+    }
+
     /** Returns true after it determines if reflects. */
     boolean reflecting() {
         return true;
@@ -0,0 +1,331 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A catalog of the characteristic cycle structures of a key space, after
+ * Rejewski.  When a message key of L = numRotors()-1 letters is sent
+ * twice at the start of each message (a doubled indicator), the machine
+ * at the starting position of the day applies permutations A1..A2L to
+ * the 2L indicator letters.  Each product A(i+L) A(i) maps the i-th
+ * enciphered indicator letter to the (i+L)-th, and the lengths of its
+ * cycles are independent of the plugboard.  The catalog maps the cycle
+ * lengths of all L products (the signature) to the keys producing them,
+ * so that the keys consistent with a day's indicators are found by
+ * lookup.
+ *
+ * The index file holds a header followed by one long per key, sorted,
+ * whose high bits are the signature hash and whose low bits are the key.
+ * Since only the high bits of the hash are stored, a lookup recomputes
+ * the full 64-bit hash of each key it finds, so keys that merely share
+ * those bits are never candidates.  Keys whose different signatures
+ * have the same 64-bit hash are, though, so a candidate is consistent
+ * with the indicators only with overwhelming probability.
+ *
+ * @author Jennifer Hu
+ */
+public final class RejewskiCatalog {
+
+    /**
+     * Build or query a catalog, as specified by ARGS:
+     *     build CONFIG INDEX
+     *         writes the catalog of the machine described in CONFIG to
+     *         the file INDEX.
+     *     lookup CONFIG INDEX [INDICATORS]
+     *         prints the keys consistent with the doubled indicators,
+     *         one per line, in the file INDICATORS (or the standard
+     *         input).
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("build")) {
+                long start = System.nanoTime();
+                build(new KeySpace(ConfigReader.read(args[1])),
+                      new File(args[2]));
+                System.err.printf("built in %.1f s%n",
+                                  (System.nanoTime() - start) * 1e-9);
+            } else if ((args.length == 3 || args.length == 4)
+                       && args[0].equals("lookup")) {
+                KeySpace keys = new KeySpace(ConfigReader.read(args[1]));
+                RejewskiCatalog catalog =
+                    new RejewskiCatalog(keys, new File(args[2]));
+                List<String> lines = args.length == 4
+                    ? Files.readAllLines(new File(args[3]).toPath())
+                    : Arrays.asList(new String(System.in.readAllBytes())
+                                    .split("\n"));
+                long start = System.nanoTime();
+                long[] found = catalog.candidates(lines.toArray(
+                                                      new String[0]));
+                for (long key : found) {
+                    System.out.println(keys.describe(key));
+                }
+                System.err.printf("%d candidates in %.3f ms%n", found.length,
+                                  (System.nanoTime() - start) * 1e-6);
+            } else {
+                throw error("usage: RejewskiCatalog build CONFIG INDEX | "
+                            + "lookup CONFIG INDEX [INDICATORS]");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Write the catalog of KEYS to INDEX, computing it on all
+     * available cores.
+     */
+    static void build(KeySpace keys, File index) {
+        if (keys.size() > Integer.MAX_VALUE - 8) {
+            throw error("key space too large to catalog");
+        }
+        int n = (int) keys.size();
+        int keyBits = keyBits(keys.size());
+        long[] entries = new long[n];
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(ch -> {
+            Work work = new Work(keys);
+            long order = -1;
+            Wiring wiring = null;
+            for (int k = ch * CHUNK; k < Math.min(n, (ch + 1) * CHUNK);
+                 k += 1) {
+                if (keys.order(k) != order) {
+                    order = keys.order(k);
+                    wiring = keys.wiring(order, null);
+                }
+                long hash = work.signature(wiring, keys.position(k));
+                entries[k] = (hash >>> keyBits << keyBits) | k;
+            }
+        });
+        Arrays.parallelSort(entries);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(index),
+                                          1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(keys.alphabet().size());
+            out.writeInt(keys.numRotors());
+            out.writeInt(keyBits);
+            out.writeLong(keys.orders());
+            out.writeLong(keys.positions());
+            for (long e : entries) {
+                out.writeLong(e);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", index);
+        }
+    }
+
+    /**
+     * The catalog of KEYS stored in INDEX by build.
+     */
+    RejewskiCatalog(KeySpace keys, File index) {
+        _keys = keys;
+        try (RandomAccessFile file = new RandomAccessFile(index, "r")) {
+            if (file.readInt() != MAGIC
+                || file.readInt() != keys.alphabet().size()
+                || file.readInt() != keys.numRotors()) {
+                throw error("%s is not a catalog of this machine", index);
+            }
+            _keyBits = file.readInt();
+            if (file.readLong() != keys.orders()
+                || file.readLong() != keys.positions()) {
+                throw error("%s is not a catalog of this machine", index);
+            }
+            FileChannel channel = file.getChannel();
+            _entries = channel.map(FileChannel.MapMode.READ_ONLY,
+                                   HEADER, channel.size() - HEADER)
+                .asLongBuffer();
+        } catch (IOException excp) {
+            throw error("could not read %s", index);
+        }
+    }
+
+    /**
+     * Return the keys, in increasing order, whose characteristic is that
+     * of INDICATORS, a set of enciphered doubled indicators (blanks and
+     * case ignored), which must between them determine every product.
+     */
+    long[] candidates(String[] indicators) {
+        return lookup(products(_keys, indicators));
+    }
+
+    /**
+     * Return the keys, in increasing order, whose characteristic products
+     * (see Work.signature) have the same 64-bit signature hash as
+     * PRODUCTS.
+     */
+    long[] lookup(int[][] products) {
+        long hash = signature(products);
+        long low = hash >>> _keyBits << _keyBits;
+        long high = low | ((1L << _keyBits) - 1);
+        int lo = 0, hi = _entries.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_entries.get(mid) < low) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<Long> found = new ArrayList<>();
+        Work work = new Work(_keys);
+        long mask = (1L << _keyBits) - 1;
+        for (int i = lo; i < _entries.limit() && _entries.get(i) <= high;
+             i += 1) {
+            long key = _entries.get(i) & mask;
+            Wiring wiring = _keys.wiring(_keys.order(key), null);
+            if (work.signature(wiring, _keys.position(key)) == hash) {
+                found.add(key);
+            }
+        }
+        long[] result = new long[found.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = found.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Return the characteristic products determined by INDICATORS for
+     * the machine of KEYS.
+     */
+    static int[][] products(KeySpace keys, String[] indicators) {
+        Alphabet alpha = keys.alphabet();
+        int len = keys.numRotors() - 1, size = alpha.size();
+        int[][] result = new int[len][size];
+        for (int[] p : result) {
+            Arrays.fill(p, -1);
+        }
+        for (String line : indicators) {
+            String ind = line.replace(" ", "").toUpperCase();
+            if (ind.isEmpty()) {
+                continue;
+            }
+            if (ind.length() != 2 * len) {
+                throw error("indicator %s is not %d letters long",
+                            line, 2 * len);
+            }
+            for (int i = 0; i < len; i += 1) {
+                int x = alpha.toInt(ind.charAt(i)),
+                    y = alpha.toInt(ind.charAt(i + len));
+                if (result[i][x] != -1 && result[i][x] != y) {
+                    throw error("inconsistent indicators");
+                }
+                result[i][x] = y;
+            }
+        }
+        for (int[] p : result) {
+            for (int y : p) {
+                if (y == -1) {
+                    throw error("indicators do not determine the "
+                                + "characteristic");
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the signature hash of the characteristic PRODUCTS.
+     */
+    static long signature(int[][] products) {
+        long hash = FNV_OFFSET;
+        for (int[] p : products) {
+            for (int len : Permutation.cycleLengths(p)) {
+                hash = (hash ^ len) * FNV_PRIME;
+            }
+            hash = (hash ^ -1) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Return the number of low bits needed to hold any of N keys.
+     */
+    private static int keyBits(long n) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(n - 1));
+    }
+
+    /** Per-thread scratch space for computing signatures. */
+    private static class Work {
+
+        /** Scratch space for keys in KEYS. */
+        Work(KeySpace keys) {
+            _keys = keys;
+            int len = keys.numRotors() - 1, size = keys.alphabet().size();
+            _settings = new int[keys.numRotors()];
+            _perms = new int[2 * len][size];
+            _products = new int[len][size];
+        }
+
+        /** Return the signature hash of the products of WIRING starting
+         *  at POSITION: the permutations applied to the 2L letters of a
+         *  doubled indicator, composed in pairs as A(i+L) A(i). */
+        long signature(Wiring wiring, long position) {
+            _keys.settings(position, _settings);
+            for (int[] perm : _perms) {
+                wiring.step(_settings);
+                for (int c = 0; c < perm.length; c += 1) {
+                    perm[c] = wiring.convert(_settings, c);
+                }
+            }
+            int len = _products.length;
+            for (int i = 0; i < len; i += 1) {
+                for (int c = 0; c < _products[i].length; c += 1) {
+                    _products[i][c] = _perms[i + len][_perms[i][c]];
+                }
+            }
+            return RejewskiCatalog.signature(_products);
+        }
+
+        /** The key space. */
+        private final KeySpace _keys;
+
+        /** Current settings. */
+        private final int[] _settings;
+
+        /** Permutations at each indicator position, and their products. */
+        private final int[][] _perms, _products;
+    }
+
+    /** Identifies catalog files. */
+    private static final int MAGIC = 0x454e5243;
+
+    /** Size of the header of a catalog file, in bytes. */
+    private static final int HEADER = 32;
+
+    /** Number of keys computed per parallel task. */
+    private static final int CHUNK = 4096;
+
+    /** Parameters of the FNV-1a hash. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** The key space cataloged. */
+    private final KeySpace _keys;
+
+    /** Number of low bits of each entry holding its key. */
+    private final int _keyBits;
+
+    /** The sorted entries. */
+    private final LongBuffer _entries;
+
+}
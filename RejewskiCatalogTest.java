@@ -0,0 +1,149 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the RejewskiCatalog class.
+ *  @author
+ */
+public class RejewskiCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private static final Alphabet AH = new CharacterRange('A', 'H');
+
+    private static final String[] ORDER = {"R", "M2", "M4", "M1"};
+    private static final String GROUND = "BDG";
+
+    @Test
+    public void findsKey() throws IOException {
+        KeySpace keys = new KeySpace(machine(null));
+        File index = File.createTempFile("enigma", ".cat");
+        index.deleteOnExit();
+        RejewskiCatalog.build(keys, index);
+        assertEquals(32 + 8 * keys.size(), index.length());
+        RejewskiCatalog catalog = new RejewskiCatalog(keys, index);
+
+        long key = key(keys);
+        assertEquals("R M2 M4 M1 " + GROUND, keys.describe(key));
+        long[] found = catalog.candidates(indicators(300));
+        assertTrue(found.length > 0);
+        assertTrue(found.length < keys.size() / 10);
+        assertTrue(Arrays.binarySearch(found, key) >= 0);
+        long[] sorted = found.clone();
+        Arrays.sort(sorted);
+        assertEquals(Arrays.toString(sorted), Arrays.toString(found));
+
+        long expected = RejewskiCatalog.signature(products(keys, key));
+        for (long k : found) {
+            assertEquals(keys.describe(k), expected,
+                         RejewskiCatalog.signature(products(keys, k)));
+        }
+    }
+
+    @Test
+    public void absentSignature() throws IOException {
+        KeySpace keys = new KeySpace(machine(null));
+        File index = File.createTempFile("enigma", ".cat");
+        index.deleteOnExit();
+        RejewskiCatalog.build(keys, index);
+        RejewskiCatalog catalog = new RejewskiCatalog(keys, index);
+        int[][] products = new int[3][AH.size()];
+        for (int[] p : products) {
+            for (int c = 0; c < p.length; c += 1) {
+                p[c] = (c + 1) % p.length;
+            }
+        }
+        assertEquals(0, catalog.lookup(products).length);
+    }
+
+    @Test
+    public void incompleteIndicators() {
+        KeySpace keys = new KeySpace(machine(null));
+        try {
+            RejewskiCatalog.products(keys, new String[] { "ABCDEF" });
+            fail("incomplete indicators accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("indicators do not determine the characteristic",
+                         excp.getMessage());
+        }
+    }
+
+    /** Return a machine of four slots over A-H, with ORDER inserted,
+     *  set to GROUND and with the plugboard PLUGS (none if null). */
+    private static Machine machine(String plugs) {
+        List<Rotor> rotors = new ArrayList<>(Arrays.asList(
+            new Reflector("R", new Permutation("(AE) (BF) (CG) (DH)", AH)),
+            new MovingRotor("M1", new Permutation("(ABDHCG) (EF)", AH), "C"),
+            new MovingRotor("M2", new Permutation("(AHGFEDCB)", AH), "F"),
+            new MovingRotor("M3", new Permutation("(ACE) (BDFHG)", AH), "A"),
+            new MovingRotor("M4", new Permutation("(AG) (BHCFDE)", AH),
+                            "DH")));
+        Machine result = new Machine(AH, 4, 3, rotors);
+        result.insertRotors(ORDER);
+        result.setRotors(GROUND);
+        if (plugs != null) {
+            result.setPlugboard(new Permutation(plugs, AH));
+        }
+        return result;
+    }
+
+    /** Return the key of ORDER at GROUND in KEYS. */
+    private static long key(KeySpace keys) {
+        Machine m = machine(null);
+        for (long order = 0; order < keys.orders(); order += 1) {
+            Rotor[] rotors = keys.rotors(order);
+            String[] names = new String[rotors.length];
+            for (int i = 0; i < names.length; i += 1) {
+                names[i] = rotors[i].name();
+            }
+            if (Arrays.equals(ORDER, names)) {
+                return keys.key(order, keys.position(m.settings()));
+            }
+        }
+        throw new AssertionError("no such rotor order");
+    }
+
+    /** Return N doubled random message keys enciphered from GROUND with a
+     *  plugboard. */
+    private static String[] indicators(int n) {
+        Random random = new Random(31);
+        String[] result = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            String k = "";
+            for (int j = 0; j < 3; j += 1) {
+                k += AH.toChar(random.nextInt(AH.size()));
+            }
+            result[i] = machine("(AB) (CH)").convert(k + k);
+        }
+        return result;
+    }
+
+    /** Return the characteristic products of KEY in KEYS, found by
+     *  enciphering every doubled message key of one repeated letter
+     *  with a machine set to KEY. */
+    private static int[][] products(KeySpace keys, long key) {
+        String[] parts = keys.describe(key).split(" ");
+        String[] indicators = new String[AH.size()];
+        for (int c = 0; c < AH.size(); c += 1) {
+            Machine m = new Machine(AH, 4, 3, machine(null).allRotors());
+            m.insertRotors(Arrays.copyOf(parts, 4));
+            m.setRotors(parts[4]);
+            String k = String.valueOf(AH.toChar(c)).repeat(3);
+            indicators[c] = m.convert(k + k);
+        }
+        return RejewskiCatalog.products(keys, indicators);
+    }
+
+}
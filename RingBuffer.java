@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** A bounded first-in-first-out queue for passing items from exactly one
+ *  producer thread to exactly one consumer thread without locks.  Items
+ *  occupy a circular array indexed by two ever-increasing counters, the
+ *  number of items ever added (written only by the producer) and the
+ *  number ever removed (written only by the consumer); each side keeps a
+ *  cached copy of the other's counter and rereads it only when the
+ *  queue looks full or empty.  The blocking operations spin briefly,
+ *  then yield, then park for short intervals while they wait.
+ *  @author Jennifer Hu
+ */
+class RingBuffer<T> {
+
+    /** A queue holding at most CAPACITY items, rounded up to a power of
+     *  two. */
+    RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw EnigmaException.error("bad ring buffer capacity: %d",
+                                        capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        _items = new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Return the number of items I can hold. */
+    int capacity() {
+        return _items.length;
+    }
+
+    /** Return the number of items I hold (approximate, if the other side
+     *  is active). */
+    int size() {
+        return (int) (_tail.get() - _head.get());
+    }
+
+    /** Add X, returning false instead if I am full.  Only the producer
+     *  may call this. */
+    boolean offer(T x) {
+        long tail = _tail.get();
+        if (tail - _headCache >= _items.length) {
+            _headCache = _head.get();
+            if (tail - _headCache >= _items.length) {
+                return false;
+            }
+        }
+        _items[(int) tail & _mask] = x;
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** Remove and return my oldest item, or null if I am empty.  Only
+     *  the consumer may call this. */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = _head.get();
+        if (head >= _tailCache) {
+            _tailCache = _tail.get();
+            if (head >= _tailCache) {
+                return null;
+            }
+        }
+        int i = (int) head & _mask;
+        T result = (T) _items[i];
+        _items[i] = null;
+        _head.lazySet(head + 1);
+        return result;
+    }
+
+    /** Add X, waiting while I am full. */
+    void put(T x) {
+        for (int tries = 0; !offer(x); tries += 1) {
+            backOff(tries);
+        }
+    }
+
+    /** Remove and return my oldest item, waiting while I am empty. */
+    T take() {
+        T result;
+        for (int tries = 0; (result = poll()) == null; tries += 1) {
+            backOff(tries);
+        }
+        return result;
+    }
+
+    /** Wait a little after TRIES unsuccessful attempts. */
+    private static void backOff(int tries) {
+        if (tries < SPINS) {
+            Thread.onSpinWait();
+        } else if (tries < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Attempts spent spinning and then yielding before parking. */
+    private static final int SPINS = 128, YIELDS = 16;
+
+    /** Time parked per attempt after that. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** The items, at their counter values modulo the length. */
+    private final Object[] _items;
+
+    /** Length of _items minus 1. */
+    private final int _mask;
+
+    /** Number of items ever removed, and ever added. */
+    private final AtomicLong _head = new AtomicLong(),
+        _tail = new AtomicLong();
+
+    /** The producer's last reading of _head. */
+    private long _headCache;
+
+    /** The consumer's last reading of _tail. */
+    private long _tailCache;
+
+}
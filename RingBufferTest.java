@@ -0,0 +1,50 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RingBuffer class.
+ *  @author
+ */
+public class RingBufferTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void boundedAndOrdered() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i += 1) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i <= 4; i += 1) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void passesBetweenThreads() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(16);
+        int n = 200_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i += 1) {
+                ring.put(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < n; i += 1) {
+            assertEquals(i, (int) ring.take());
+        }
+        producer.join();
+        assertEquals(0, ring.size());
+    }
+
+}
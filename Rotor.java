@@ -11,6 +11,7 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _wiring = perm;
         _setting = 0;
     }
 
@@ -24,9 +25,50 @@ class Rotor {
         return _permutation.alphabet();
     }
 
-    /** Return my permutation. */
+    /** Return a new rotor like me at its 0 setting and ring setting,
+     *  sharing my permutation. */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
+    /** Return my permutation at setting 0 with my current ring setting,
+     *  which is what I implement. */
     Permutation permutation() {
-        return _permutation;
+        return _wiring;
+    }
+
+    /** Return my permutation at setting 0 with ring setting RING: my
+     *  permutation with ring setting 0 rotated by RING (see
+     *  Permutation.rotated).  Rotated permutations are kept once made. */
+    Permutation permutation(int ring) {
+        if (ring == 0) {
+            return _permutation;
+        }
+        if (_ringed == null) {
+            _ringed = new Permutation[size()];
+        }
+        if (_ringed[ring] == null) {
+            _ringed[ring] = _permutation.rotated(ring);
+        }
+        return _ringed[ring];
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING, in the range 0..size()-1.  Where the rotor at
+     *  setting p with ring setting 0 maps x to y, at setting p + RING
+     *  with ring setting RING it maps x + RING to y + RING.  The rotation
+     *  is folded into permutation(), so conversion costs the same at any
+     *  ring setting; my notches stay with my settings. */
+    void setRing(int ring) {
+        if (ring < 0 || ring >= size()) {
+            throw error("ring setting out of range: %d", ring);
+        }
+        _ring = ring;
+        _wiring = permutation(ring);
     }
 
     /** Return the size of my alphabet. */
@@ -65,21 +107,33 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int in = _permutation.wrap(p + _setting);
-        int out = _permutation.permute(in);
-        int converted = _permutation.wrap(out - _setting);
+        int in = _wiring.wrap(p + _setting);
+        int out = _wiring.permute(in);
+        int converted = _wiring.wrap(out - _setting);
         return converted;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int in = _permutation.wrap(e + _setting);
-        int out = _permutation.invert(in);
-        int converted = _permutation.wrap(out - _setting);
+        int in = _wiring.wrap(e + _setting);
+        int out = _wiring.invert(in);
+        int converted = _wiring.wrap(out - _setting);
         return converted;
     }
 
+    /** Return the characters at which I am at a notch.  By default,
+     *  none. */
+    String notches() {
+        return "";
+    }
+
+    /** Return my notches as a bitmask of settings (see
+     *  MovingRotor.notchMask).  Not to be modified. */
+    long[] notchMask() {
+        return MovingRotor.notchMask(notches(), alphabet());
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
@@ -98,9 +152,19 @@ class Rotor {
     /** My name. */
     private final String _name;
 
-    /** The permutation implemented by this rotor in its 0 position. */
+    /** The permutation implemented by this rotor in its 0 position
+     *  with ring setting 0. */
     private Permutation _permutation;
 
+    /** The permutation implemented in its 0 position with its current
+     *  ring setting, _ring. */
+    private Permutation _wiring;
+    private int _ring;
+
+    /** Permutations rotated for each ring setting, once made, or null
+     *  if none has been. */
+    private Permutation[] _ringed;
+
     /** Private int setting. */
     private int _setting;
 
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors described by a configuration file, each parsed only when
+ *  it is first asked for.  Opening a catalog maps the file into memory
+ *  and makes one pass over it that reads the header as ConfigReader
+ *  does and records the name and byte range of each rotor's
+ *  description; a rotor's permutation is built the first time it is
+ *  looked up, and kept.  So the time to open a catalog grows with the
+ *  size of the file, but the time and memory spent on permutations
+ *  grow only with the rotors used.  Errors in a rotor's description
+ *  are reported when it is first looked up.  Lookups may come from
+ *  any thread.
+ *  @author Jennifer Hu
+ */
+class RotorCatalog {
+
+    /** Return the catalog of the configuration file named NAME. */
+    static RotorCatalog open(String name) {
+        try (FileChannel file = FileChannel.open(Paths.get(name),
+                                                 StandardOpenOption.READ)) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw error("configuration file too large: %s", name);
+            }
+            return new RotorCatalog(
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** The catalog of the configuration whose text, in UTF-8, is the
+     *  contents of TEXT. */
+    RotorCatalog(ByteBuffer text) {
+        _text = text;
+        int limit = text.limit();
+        int pos = 0;
+        while (pos < limit && text.get(pos) != '\n') {
+            pos += 1;
+        }
+        for (int i = 0; i < 2; i += 1) {
+            pos = tokenEnd(skipSpace(pos));
+        }
+        ConfigReader header = new ConfigReader(new Scanner(decode(0, pos)));
+        _alphabet = header.readHeader();
+        _numRotors = header.numRotors();
+        _numPawls = header.numPawls();
+        for (pos = skipSpace(pos); pos < limit; pos = skipSpace(pos)) {
+            int start = pos, nameEnd = tokenEnd(pos);
+            pos = skipSpace(nameEnd);
+            if (pos == limit) {
+                throw error("bad rotor description");
+            }
+            int end = tokenEnd(pos);
+            for (pos = skipSpace(end); pos < limit && text.get(pos) == '(';
+                 pos = skipSpace(end)) {
+                end = tokenEnd(pos);
+            }
+            String name = decode(start, nameEnd);
+            if (name.contains("(") || name.contains(")")) {
+                throw error("Not an acceptable name");
+            }
+            int k = _names.size();
+            if (k == _starts.length) {
+                _starts = Arrays.copyOf(_starts, 2 * k);
+                _ends = Arrays.copyOf(_ends, 2 * k);
+            }
+            _index.put(name.toUpperCase(), k);
+            _names.add(name);
+            _starts[k] = start;
+            _ends[k] = end;
+            for (pos = end; pos < limit && text.get(pos) != '\n'; ) {
+                pos += 1;
+            }
+        }
+        _rotors = new Rotor[_names.size()];
+    }
+
+    /** Return a machine over my alphabet with my numbers of slots and
+     *  pawls whose available rotors are mine. */
+    Machine machine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotors described. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Return the number of rotors parsed so far. */
+    synchronized int parsed() {
+        return _parsed;
+    }
+
+    /** Return the names of my rotors, in the order described.  Where two
+     *  rotors have the same name (in either case), the later one is the
+     *  one looked up. */
+    List<String> names() {
+        return _names;
+    }
+
+    /** Return my rotor named NAME, in either case, at its 0 setting,
+     *  parsing it if this is the first time it is asked for, or null if
+     *  there is none.  The same rotor is returned each time; copy it
+     *  before changing its setting. */
+    synchronized Rotor rotor(String name) {
+        Integer k = _index.get(name.toUpperCase());
+        if (k == null) {
+            return null;
+        }
+        if (_rotors[k] == null) {
+            _rotors[k] = ConfigReader.readRotor(decode(_starts[k], _ends[k]),
+                                                _alphabet);
+            _parsed += 1;
+        }
+        return _rotors[k];
+    }
+
+    /** Return the position of the first non-whitespace byte of my text
+     *  at or after POS, or the end of the text. */
+    private int skipSpace(int pos) {
+        int limit = _text.limit();
+        while (pos < limit && isSpace(_text.get(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the position just past the token starting at POS. */
+    private int tokenEnd(int pos) {
+        int limit = _text.limit();
+        while (pos < limit && !isSpace(_text.get(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return true iff B is an ASCII whitespace byte, as Scanner
+     *  delimits tokens.  No byte of a multi-byte UTF-8 character is. */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b >= '\t' && b <= '\r';
+    }
+
+    /** Return my text from position START to END, decoded. */
+    private String decode(int start, int end) {
+        ByteBuffer slice = _text.duplicate();
+        slice.limit(end).position(start);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /** The configuration text. */
+    private final ByteBuffer _text;
+
+    /** The alphabet, number of slots and number of pawls it gives. */
+    private final Alphabet _alphabet;
+    private final int _numRotors, _numPawls;
+
+    /** Names of the rotors described, and the byte range of each
+     *  description, from its name to its last cycle. */
+    private final List<String> _names = new ArrayList<>();
+    private int[] _starts = new int[16], _ends = new int[16];
+
+    /** Index in _names of the last rotor of each upper-cased name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+
+    /** Each rotor, once parsed. */
+    private final Rotor[] _rotors;
+
+    /** Number of rotors parsed. */
+    private int _parsed;
+
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the RotorCatalog class.
+ *  @author
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ", "  5 3",
+        "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III MV (ABDHPEJT)",
+        "     (CFLVMZOYQIRWUKXSG) (N)",
+        "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU) ignored",
+        "II MQ (AB)",
+        "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "Bad M (AB)",
+        "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+        + "(TV)", "");
+
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the catalog of TEXT. */
+    private static RotorCatalog catalog(String text) {
+        return new RotorCatalog(
+            ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void parsesOnlyRotorsUsed() {
+        RotorCatalog catalog = catalog(CONFIG);
+        assertEquals(8, catalog.size());
+        assertEquals(0, catalog.parsed());
+        Machine lazy = catalog.machine();
+        assertEquals(5, lazy.numRotors());
+        assertEquals(3, lazy.numPawls());
+        Machine eager = new ConfigReader(new Scanner(CONFIG.replace(
+            "Bad M (AB)\n", ""))).read();
+        KeystreamCache keystreams = new KeystreamCache(0, 0);
+        Main.setUp(lazy, SETTING, new SettingCache(), keystreams);
+        Main.setUp(eager, SETTING, new SettingCache(), keystreams);
+        assertEquals(5, catalog.parsed());
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(eager.convert(msg), lazy.convert(msg));
+
+        Machine copy = lazy.copy();
+        Main.setUp(copy, SETTING, new SettingCache(), keystreams);
+        assertEquals(5, catalog.parsed());
+        assertFalse(copy.getRotorsList()[4] == lazy.getRotorsList()[4]);
+        assertSame(copy.getRotorsList()[4].permutation(),
+                   lazy.getRotorsList()[4].permutation());
+
+        assertEquals("Q", catalog.rotor("ii").notches());
+        assertNull(catalog.rotor("V"));
+    }
+
+    @Test
+    public void errorsAreReportedWhenUsed() {
+        RotorCatalog catalog = catalog(CONFIG);
+        try {
+            catalog.rotor("bad");
+            fail("rotor without notches accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("No notches given", excp.getMessage());
+        }
+        try {
+            catalog("ABCD\n5 7\n");
+            fail("more pawls than rotors accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(0, catalog.parsed());
+        }
+    }
+
+}
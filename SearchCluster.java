@@ -0,0 +1,601 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A KeySearch spread over several processes, possibly on several hosts.
+ * A coordinator divides the key space into units of consecutive ordinals
+ * (see GrayWalk) and leases them to workers that connect to it; each
+ * worker searches its unit on all its threads and returns the unit's
+ * best results, which the coordinator merges into the global best.  A
+ * lease lasts a fixed time: units held by workers that disconnect are
+ * leased again at once, and units whose lease expires are leased again
+ * to the next worker that asks, so that lost or stalled workers delay
+ * the search but do not stop it.  Each lease belongs to one connection:
+ * only the worker currently holding a unit's lease may complete it, and
+ * a worker that disconnects gives up only the units it still holds.
+ *
+ * The protocol is over TCP.  On connection the coordinator sends the
+ * search (a Job); the worker then repeatedly sends LEASE and receives
+ * either UNIT (a unit number, its ordinal range and the least score
+ * worth reporting), WAIT (milliseconds to wait before asking again) or
+ * DONE, and after each UNIT sends RESULT with the unit number and its
+ * best results.
+ *
+ * @author Jennifer Hu
+ */
+public final class SearchCluster {
+
+    /**
+     * Coordinate or work as specified by ARGS:
+     *     coordinate [--port=P] [--unit=N] [--lease=SECONDS]
+     *         [--crib=TEXT@OFFSET] [--top=K] [--checkpoint=FILE]
+     *         CONFIG MESSAGE
+     *     work [--threads=N] HOST:PORT
+     * The coordinator listens on port P (default any free port, printed
+     * on the standard error), and prints the K best keys (default 20)
+     * when every unit of N keys (default 2^24) has been searched; the
+     * search and checkpoint are as for KeySearch.  A worker searches for
+     * the coordinator at HOST:PORT until it has nothing left to lease.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1) {
+                throw error("usage: SearchCluster coordinate [options] "
+                            + "CONFIG MESSAGE | work [options] HOST:PORT");
+            }
+            int port = 0, top = 20, offset = 0,
+                threads = Runtime.getRuntime().availableProcessors();
+            long unit = DEFAULT_UNIT, lease = DEFAULT_LEASE;
+            String crib = null, checkpoint = null;
+            int first;
+            for (first = 1; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--port":
+                    port = Integer.parseInt(opt[1]);
+                    break;
+                case "--unit":
+                    unit = Long.parseLong(opt[1]);
+                    break;
+                case "--lease":
+                    lease = Long.parseLong(opt[1]) * 1000;
+                    break;
+                case "--crib":
+                    int at = opt[1].lastIndexOf('@');
+                    if (at < 0) {
+                        throw error("crib must be TEXT@OFFSET");
+                    }
+                    crib = opt[1].substring(0, at);
+                    offset = Integer.parseInt(opt[1].substring(at + 1));
+                    break;
+                case "--top":
+                    top = Integer.parseInt(opt[1]);
+                    break;
+                case "--checkpoint":
+                    checkpoint = opt[1];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(opt[1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            if (args[0].equals("coordinate") && args.length - first == 2) {
+                String config = new String(
+                    Files.readAllBytes(new File(args[first]).toPath()),
+                    StandardCharsets.UTF_8);
+                Alphabet alpha = ConfigReader.read(args[first]).alphabet();
+                Job job = new Job(config,
+                    KeySearch.indices(alpha,
+                                      KeySearch.message(args[first + 1])),
+                    crib == null ? null : KeySearch.indices(alpha, crib),
+                    offset, top);
+                Checkpoint progress = null;
+                if (checkpoint != null) {
+                    progress = new Checkpoint(new File(checkpoint),
+                                              job.search(unit)
+                                              .fingerprint(),
+                                              1, 10_000);
+                }
+                Coordinator coordinator =
+                    new Coordinator(job, unit, lease, progress, port);
+                System.err.printf("listening on port %d%n",
+                                  coordinator.port());
+                long start = System.nanoTime();
+                for (KeySearch.Result r : coordinator.run()) {
+                    System.out.printf("%10.2f  %s%n", r.score(),
+                                      job.keys().describe(r.key()));
+                }
+                System.err.printf("%d units in %.1f s%n",
+                                  coordinator.units(),
+                                  (System.nanoTime() - start) * 1e-9);
+                if (progress != null) {
+                    progress.close();
+                }
+            } else if (args[0].equals("work") && args.length - first == 1) {
+                String[] address = args[first].split(":");
+                if (address.length != 2) {
+                    throw error("address must be HOST:PORT");
+                }
+                work(address[0], Integer.parseInt(address[1]), threads);
+            } else {
+                throw error("usage: SearchCluster coordinate [options] "
+                            + "CONFIG MESSAGE | work [options] HOST:PORT");
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Search units leased from the coordinator at HOST:PORT on THREADS
+     * threads until it has none left.
+     */
+    static void work(String host, int port, int threads) {
+        try (Socket socket = new Socket(host, port)) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            KeySearch search = Job.read(in).search(WORKER_CHUNK);
+            while (true) {
+                out.writeByte(LEASE);
+                out.flush();
+                switch (in.readByte()) {
+                case UNIT:
+                    long unit = in.readLong(), from = in.readLong(),
+                        to = in.readLong();
+                    double floor = in.readDouble();
+                    List<KeySearch.Result> best =
+                        search.run(from, to, threads, floor);
+                    out.writeByte(RESULT);
+                    out.writeLong(unit);
+                    out.writeInt(best.size());
+                    for (KeySearch.Result r : best) {
+                        out.writeLong(r.key());
+                        out.writeDouble(r.score());
+                    }
+                    break;
+                case WAIT:
+                    Thread.sleep(in.readInt());
+                    break;
+                case DONE:
+                    return;
+                default:
+                    throw error("protocol error");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("lost coordinator: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("worker interrupted");
+        }
+    }
+
+    /** A search as sent to workers. */
+    static class Job {
+
+        /** The search of the machine described by CONFIG (the text of a
+         *  configuration file) for the TOP keys best decrypting
+         *  CIPHERTEXT, restricted to CRIB at OFFSET unless CRIB is
+         *  null. */
+        Job(String config, int[] ciphertext, int[] crib, int offset,
+            int top) {
+            _config = config;
+            _keys = new KeySpace(new ConfigReader(new Scanner(config))
+                                 .read());
+            _cipher = ciphertext;
+            _crib = crib;
+            _offset = offset;
+            _top = top;
+        }
+
+        /** Return the key space searched. */
+        KeySpace keys() {
+            return _keys;
+        }
+
+        /** Return a KeySearch for this job visiting CHUNK keys at a
+         *  time. */
+        KeySearch search(long chunk) {
+            return new KeySearch(_keys, _cipher, _crib, _offset, _top,
+                                 chunk);
+        }
+
+        /** Send this job to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            byte[] config = _config.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(config.length);
+            out.write(config);
+            writeInts(out, _cipher);
+            writeInts(out, _crib);
+            out.writeInt(_offset);
+            out.writeInt(_top);
+        }
+
+        /** Return the job sent to IN by write. */
+        static Job read(DataInputStream in) throws IOException {
+            byte[] config = new byte[in.readInt()];
+            in.readFully(config);
+            int[] cipher = readInts(in), crib = readInts(in);
+            int offset = in.readInt(), top = in.readInt();
+            return new Job(new String(config, StandardCharsets.UTF_8),
+                           cipher, crib, offset, top);
+        }
+
+        /** Send A, which may be null, to OUT. */
+        private static void writeInts(DataOutputStream out, int[] a)
+            throws IOException {
+            out.writeInt(a == null ? -1 : a.length);
+            for (int i = 0; a != null && i < a.length; i += 1) {
+                out.writeInt(a[i]);
+            }
+        }
+
+        /** Return the array sent to IN by writeInts. */
+        private static int[] readInts(DataInputStream in)
+            throws IOException {
+            int n = in.readInt();
+            if (n < 0) {
+                return null;
+            }
+            int[] result = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                result[i] = in.readInt();
+            }
+            return result;
+        }
+
+        /** The text of the configuration file. */
+        private final String _config;
+
+        /** The key space it describes. */
+        private final KeySpace _keys;
+
+        /** Ciphertext and crib. */
+        private final int[] _cipher, _crib;
+
+        /** Crib offset and number of results kept. */
+        private final int _offset, _top;
+    }
+
+    /** Leases the units of a job to workers and merges their results. */
+    static class Coordinator {
+
+        /** A coordinator of JOB in units of UNIT keys, leased for LEASE
+         *  milliseconds at a time, serving workers on PORT (any free port
+         *  if 0) from now on, and recording completed units in PROGRESS
+         *  unless it is null. */
+        Coordinator(Job job, long unit, long lease, Checkpoint progress,
+                    int port) throws IOException {
+            long size = job.keys().size();
+            if (unit < 1 || (size + unit - 1) / unit > Integer.MAX_VALUE) {
+                throw error("bad unit size: %d", unit);
+            }
+            _job = job;
+            _best = job.search(unit);
+            _unit = unit;
+            _units = (int) ((size + unit - 1) / unit);
+            _lease = lease;
+            _progress = progress;
+            _remaining = _units;
+            if (progress != null) {
+                long[] keys = progress.keys();
+                double[] scores = progress.scores();
+                for (int i = 0; i < keys.length; i += 1) {
+                    _best.offer(new KeySearch.Result(keys[i], scores[i]));
+                }
+                for (int u = 0; u < _units; u += 1) {
+                    if (progress.completed(from(u), to(u))) {
+                        _done.set(u);
+                        _remaining -= 1;
+                    }
+                }
+            }
+            _server = new ServerSocket(port);
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = _server.accept();
+                        Thread handler = new Thread(() -> serve(socket));
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                } catch (IOException excp) {
+                    return;
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        /** Return the port on which I listen. */
+        int port() {
+            return _server.getLocalPort();
+        }
+
+        /** Return the number of units. */
+        int units() {
+            return _units;
+        }
+
+        /** Return the number of units leased and not yet complete. */
+        synchronized int leased() {
+            return _leases.size();
+        }
+
+        /** Serve workers until every unit is complete, and return the
+         *  best results, best first. */
+        List<KeySearch.Result> run() {
+            synchronized (this) {
+                while (_remaining > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException excp) {
+                        throw error("coordinator interrupted");
+                    }
+                }
+            }
+            try {
+                Thread.sleep(DONE_GRACE);
+                _server.close();
+            } catch (IOException | InterruptedException excp) {
+                /* Workers still connected will see the socket close. */
+            }
+            if (_progress != null) {
+                _progress.sync();
+            }
+            return _best.best();
+        }
+
+        /** Return the first ordinal of unit U. */
+        private long from(int u) {
+            return u * _unit;
+        }
+
+        /** Return the ordinal just past unit U. */
+        private long to(int u) {
+            return Math.min((u + 1) * _unit, _job.keys().size());
+        }
+
+        /** Converse with the worker connected on SOCKET until it is
+         *  done or lost, releasing any unit it still holds when it is
+         *  lost. */
+        private void serve(Socket socket) {
+            /* The units leased to this worker, which identify it to the
+             * synchronized methods, the only ones that use it. */
+            HashSet<Integer> held = new HashSet<>();
+            try (Socket s = socket) {
+                DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(s.getOutputStream()));
+                _job.write(out);
+                out.flush();
+                while (true) {
+                    byte request = in.readByte();
+                    if (request == RESULT) {
+                        int u = (int) in.readLong();
+                        ArrayList<KeySearch.Result> results =
+                            new ArrayList<>();
+                        for (int n = in.readInt(); n > 0; n -= 1) {
+                            results.add(new KeySearch.Result(
+                                in.readLong(), in.readDouble()));
+                        }
+                        complete(u, results, held);
+                    } else if (request == LEASE) {
+                        int u = lease(held);
+                        if (u >= 0) {
+                            out.writeByte(UNIT);
+                            out.writeLong(u);
+                            out.writeLong(from(u));
+                            out.writeLong(to(u));
+                            out.writeDouble(_best.threshold());
+                        } else if (u == NONE_YET) {
+                            out.writeByte(WAIT);
+                            out.writeInt(WAIT_MILLIS);
+                        } else {
+                            out.writeByte(DONE);
+                            out.flush();
+                            return;
+                        }
+                        out.flush();
+                    } else {
+                        return;
+                    }
+                }
+            } catch (IOException excp) {
+                /* The worker is lost: fall through to release its unit. */
+            } finally {
+                release(held);
+            }
+        }
+
+        /** Return a unit to lease to the worker holding the units HELD,
+         *  adding it to HELD, or NONE_YET if all incomplete units are
+         *  leased, or ALL_DONE if all are complete.  A unit whose lease
+         *  has expired is taken from the worker that held it. */
+        private synchronized int lease(HashSet<Integer> held) {
+            if (_remaining == 0) {
+                return ALL_DONE;
+            }
+            long now = System.currentTimeMillis();
+            Integer u = _lost.poll();
+            while (u != null && _done.get(u)) {
+                u = _lost.poll();
+            }
+            if (u == null) {
+                for (Map.Entry<Integer, Lease> e : _leases.entrySet()) {
+                    if (e.getValue()._deadline < now) {
+                        u = e.getKey();
+                        e.getValue()._owner.remove(u);
+                        break;
+                    }
+                }
+            }
+            if (u == null) {
+                int next = _done.nextClearBit(_next);
+                while (next < _units && _leases.containsKey(next)) {
+                    next = _done.nextClearBit(next + 1);
+                }
+                if (next >= _units) {
+                    return NONE_YET;
+                }
+                u = next;
+                _next = next + 1;
+            }
+            _leases.put(u, new Lease(held, now + _lease));
+            held.add(u);
+            return u;
+        }
+
+        /** Record that unit U is complete, with best results RESULTS,
+         *  if the worker holding the units HELD holds its lease. */
+        private synchronized void complete(int u, List<KeySearch.Result>
+                                           results, HashSet<Integer> held) {
+            Lease lease = _leases.get(u);
+            if (lease == null || lease._owner != held) {
+                return;
+            }
+            _done.set(u);
+            _leases.remove(u);
+            held.remove(u);
+            _remaining -= 1;
+            for (KeySearch.Result r : results) {
+                _best.offer(r);
+            }
+            if (_progress != null) {
+                List<KeySearch.Result> best = _best.best();
+                long[] keys = new long[best.size()];
+                double[] scores = new double[best.size()];
+                for (int k = 0; k < keys.length; k += 1) {
+                    keys[k] = best.get(k).key();
+                    scores[k] = best.get(k).score();
+                }
+                _progress.complete(from(u), to(u), keys, scores, 0);
+            }
+            if (_remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        /** Make the units leased to the worker holding the units HELD
+         *  available for lease at once. */
+        private synchronized void release(HashSet<Integer> held) {
+            for (int u : held) {
+                Lease lease = _leases.get(u);
+                if (lease != null && lease._owner == held) {
+                    _leases.remove(u);
+                    _lost.add(u);
+                }
+            }
+            held.clear();
+        }
+
+        /** A lease of a unit. */
+        private static class Lease {
+
+            /** A lease to the worker holding the units OWNER until
+             *  DEADLINE, in milliseconds since the epoch. */
+            Lease(HashSet<Integer> owner, long deadline) {
+                _owner = owner;
+                _deadline = deadline;
+            }
+
+            /** The units held by the worker holding this lease, which
+             *  identify it. */
+            private final HashSet<Integer> _owner;
+
+            /** When the lease expires. */
+            private final long _deadline;
+        }
+
+        /** The job. */
+        private final Job _job;
+
+        /** Holder of the best results. */
+        private final KeySearch _best;
+
+        /** Keys per unit. */
+        private final long _unit;
+
+        /** Number of units, and of incomplete units. */
+        private final int _units;
+        private int _remaining;
+
+        /** Lease time in milliseconds. */
+        private final long _lease;
+
+        /** Record of completed units, or null. */
+        private final Checkpoint _progress;
+
+        /** Completed units. */
+        private final BitSet _done = new BitSet();
+
+        /** Leases of leased, incomplete units. */
+        private final HashMap<Integer, Lease> _leases = new HashMap<>();
+
+        /** Units released by lost workers. */
+        private final ArrayDeque<Integer> _lost = new ArrayDeque<>();
+
+        /** No unit below this has never been leased. */
+        private int _next;
+
+        /** The listening socket. */
+        private final ServerSocket _server;
+    }
+
+    /** Messages from workers. */
+    static final byte LEASE = 1, RESULT = 2;
+
+    /** Replies from the coordinator. */
+    static final byte UNIT = 3, WAIT = 4, DONE = 5;
+
+    /** Results of Coordinator.lease other than a unit. */
+    private static final int NONE_YET = -1, ALL_DONE = -2;
+
+    /** Time a worker with nothing to lease waits before asking again,
+     *  in milliseconds. */
+    private static final int WAIT_MILLIS = 500;
+
+    /** Time the coordinator keeps answering DONE after the last unit
+     *  completes, in milliseconds. */
+    private static final long DONE_GRACE = 2 * WAIT_MILLIS;
+
+    /** Default keys per unit and lease time in milliseconds. */
+    static final long DEFAULT_UNIT = 1 << 24, DEFAULT_LEASE = 600_000;
+
+    /** Keys per chunk in a worker's search of a unit, small enough to
+     *  spread a unit over all of its threads. */
+    private static final long WORKER_CHUNK = 1 << 16;
+
+}
@@ -0,0 +1,200 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SearchCluster class.
+ *  @author
+ */
+public class SearchClusterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private static final String ROTORS = String.join("\n",
+        "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+        + "(TV)", "");
+
+    /** Machines of three slots, and of four, with rotors ROTORS. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n3 2\n" + ROTORS,
+        WIDE_CONFIG = "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n4 3\n" + ROTORS;
+
+    /** Return the job of finding the key of a message enciphered with
+     *  rotors B IV II at QE. */
+    private static SearchCluster.Job job() {
+        return job(CONFIG, new String[] {"B", "IV", "II"}, "QE");
+    }
+
+    /** Return the job of finding the key of a message enciphered by the
+     *  machine of CONFIG with rotors NAMES at SETTING. */
+    private static SearchCluster.Job job(String config, String[] names,
+                                         String setting) {
+        Machine m = new ConfigReader(new Scanner(config)).read();
+        m.insertRotors(names);
+        m.setRotors(setting);
+        return new SearchCluster.Job(config, KeySearch.indices(UPPER,
+            m.convert("THEREISNOTHINGLIKELOOKINGIFYOUWANTTOFINDSOMETHING")),
+            null, 0, 5);
+    }
+
+    /** Start a thread that works for the coordinator on PORT. */
+    private static Thread worker(int port) {
+        Thread result = new Thread(() ->
+                                   SearchCluster.work("localhost", port, 2));
+        result.start();
+        return result;
+    }
+
+    /** Start a separate JVM that works for the coordinator on PORT on
+     *  one thread. */
+    private static Process workerProcess(int port) throws IOException {
+        return new ProcessBuilder(
+            System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java",
+            "-cp", System.getProperty("java.class.path"),
+            "enigma.SearchCluster", "work", "--threads=1",
+            "localhost:" + port).inheritIO().start();
+    }
+
+    /** Connect to the coordinator on PORT, read the job, and return the
+     *  open socket. */
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        SearchCluster.Job.read(new DataInputStream(socket.getInputStream()));
+        return socket;
+    }
+
+    /** Lease a unit on SOCKET, connected by connect, and return its
+     *  number. */
+    private static long lease(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out =
+            new DataOutputStream(socket.getOutputStream());
+        out.writeByte(SearchCluster.LEASE);
+        out.flush();
+        assertEquals(SearchCluster.UNIT, in.readByte());
+        long unit = in.readLong();
+        in.readLong();
+        in.readLong();
+        in.readDouble();
+        return unit;
+    }
+
+    /** Connect to the coordinator on PORT, lease one unit, and return the
+     *  open socket without reporting on it. */
+    private static Socket leaseAndStall(int port) throws IOException {
+        Socket socket = connect(port);
+        lease(socket);
+        return socket;
+    }
+
+    @Test
+    public void mergesWorkers() throws Exception {
+        SearchCluster.Job job = job();
+        List<KeySearch.Result> expected =
+            job.search(1000).run(null, 2, 1, Long.MAX_VALUE);
+        assertEquals("B IV II QE",
+                     job.keys().describe(expected.get(0).key()));
+
+        SearchCluster.Coordinator coordinator =
+            new SearchCluster.Coordinator(job, 4000, 60_000, null, 0);
+        Thread a = worker(coordinator.port()), b = worker(coordinator.port());
+        assertEquals(expected, coordinator.run());
+        a.join();
+        b.join();
+    }
+
+    @Test
+    public void releasesLostAndStalledWorkers() throws Exception {
+        SearchCluster.Job job = job();
+        List<KeySearch.Result> expected =
+            job.search(1000).run(null, 2, 1, Long.MAX_VALUE);
+        SearchCluster.Coordinator coordinator =
+            new SearchCluster.Coordinator(job, 4000, 500, null, 0);
+        leaseAndStall(coordinator.port()).close();
+        try (Socket stalled = leaseAndStall(coordinator.port())) {
+            Thread a = worker(coordinator.port());
+            assertEquals(expected, coordinator.run());
+            a.join();
+        }
+    }
+
+    /** A worker whose lease expired neither completes nor, when it
+     *  disconnects, releases the unit now leased to another. */
+    @Test
+    public void expiredLeaseChangesHands() throws Exception {
+        SearchCluster.Coordinator coordinator =
+            new SearchCluster.Coordinator(job(), 4000, 1000, null, 0);
+        try (Socket a = connect(coordinator.port());
+             Socket b = connect(coordinator.port());
+             Socket c = connect(coordinator.port())) {
+            assertEquals(0, lease(a));
+            Thread.sleep(1100);
+            assertEquals(0, lease(b));
+            DataOutputStream out =
+                new DataOutputStream(a.getOutputStream());
+            out.writeByte(SearchCluster.RESULT);
+            out.writeLong(0);
+            out.writeInt(0);
+            out.flush();
+            a.close();
+            Thread.sleep(200);
+            assertEquals(1, coordinator.leased());
+            assertEquals(1, lease(c));
+            assertEquals(2, coordinator.leased());
+        }
+    }
+
+    @Test
+    public void killedWorkerProcess() throws Exception {
+        SearchCluster.Job job =
+            job(WIDE_CONFIG, new String[] {"B", "IV", "II", "I"}, "QEV");
+        List<KeySearch.Result> expected =
+            job.search(1000).run(null, 2, 1, Long.MAX_VALUE);
+        assertEquals("B IV II I QEV",
+                     job.keys().describe(expected.get(0).key()));
+
+        /* The lease outlasts the test, so the killed worker's unit can
+         * be leased again only because its connection is lost. */
+        SearchCluster.Coordinator coordinator =
+            new SearchCluster.Coordinator(job, job.keys().size() / 4,
+                                          600_000, null, 0);
+        Process killed = workerProcess(coordinator.port()), survivor = null;
+        try {
+            while (coordinator.leased() == 0 && killed.isAlive()) {
+                Thread.sleep(10);
+            }
+            assertTrue("worker process exited before leasing",
+                       killed.isAlive());
+            killed.destroyForcibly().waitFor();
+
+            survivor = workerProcess(coordinator.port());
+            assertEquals(expected, coordinator.run());
+            assertEquals(0, survivor.waitFor());
+        } finally {
+            killed.destroyForcibly();
+            if (survivor != null) {
+                survivor.destroyForcibly();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of setting lines ("*" lines) already applied to a
+ *  machine, so that a repeated line is applied by one lookup instead of
+ *  being parsed again.  Each entry holds the rotors the line puts in the
+ *  machine's slots, their ring settings and starting positions and its
+ *  plugboard, keyed by the line with its whitespace normalized.  Lines
+ *  are cached only once they have been applied without error, and only
+ *  for the machine they were applied to.  Once more than a given number
+ *  of lines are cached, the least recently used is evicted.
+ *  @author Jennifer Hu
+ */
+class SettingCache {
+
+    /** Default number of lines cached. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** A cache of the default capacity. */
+    SettingCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** A cache of at most CAPACITY lines. */
+    SettingCache(int capacity) {
+        if (capacity < 0) {
+            throw error("bad setting cache capacity: %d", capacity);
+        }
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Entry> eldest) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** If SETTING, normalized, has been recorded for M, set M's rotors,
+     *  rings, positions and plugboard as it specifies and return true.
+     *  Otherwise return false, leaving M unchanged. */
+    boolean apply(String setting, Machine M) {
+        Entry entry = _entries.get(normalize(setting));
+        if (entry == null || entry.machine != M) {
+            _misses += 1;
+            return false;
+        }
+        _hits += 1;
+        M.insertRotors(entry.rotors);
+        M.setRings(entry.rings);
+        M.setSettings(entry.positions);
+        M.setPlugboard(entry.plugboard);
+        return true;
+    }
+
+    /** Record that SETTING has just been applied to M, whose slots now
+     *  hold the rotors named NAMES, in order. */
+    void record(String setting, Machine M, String[] names) {
+        Rotor[] rotors = M.getRotorsList().clone();
+        for (int i = 0; i < rotors.length; i += 1) {
+            if (rotors[i] == null
+                || !rotors[i].name().equalsIgnoreCase(names[i])) {
+                return;
+            }
+        }
+        if (_capacity > 0) {
+            _entries.put(normalize(setting),
+                         new Entry(M, rotors, M.rings(), M.settings(),
+                                   M.plugboard()));
+        }
+    }
+
+    /** Return SETTING with surrounding whitespace removed and interior
+     *  whitespace collapsed to single blanks.  Returns SETTING itself,
+     *  without copying, when it is already in that form. */
+    static String normalize(String setting) {
+        int n = setting.length();
+        boolean blank = true;
+        for (int i = 0; i < n; i += 1) {
+            char c = setting.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (blank || c != ' ' || i == n - 1) {
+                    return setting.trim().replaceAll("\\s+", " ");
+                }
+                blank = true;
+            } else {
+                blank = false;
+            }
+        }
+        return setting;
+    }
+
+    /** Return the number of lookups that found a cached line. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of lines evicted to respect the capacity. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the fraction of lookups that were hits (0 if none). */
+    double hitRate() {
+        long total = _hits + _misses;
+        return total == 0 ? 0.0 : (double) _hits / total;
+    }
+
+    /** Return the number of lines currently cached. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** The effect of a setting line on a machine. */
+    private static class Entry {
+
+        /** The effect on MACHINE of putting ROTORS in its slots with
+         *  ring settings RINGS (as returned by Machine.rings()) at
+         *  POSITIONS (as returned by Machine.settings()) with
+         *  PLUGBOARD. */
+        Entry(Machine machine, Rotor[] rotors, int[] rings,
+              int[] positions, Permutation plugboard) {
+            this.machine = machine;
+            this.rotors = rotors;
+            this.rings = rings;
+            this.positions = positions;
+            this.plugboard = plugboard;
+        }
+
+        /** The machine the line was applied to. */
+        final Machine machine;
+
+        /** The rotors in its slots, the reflector first. */
+        final Rotor[] rotors;
+
+        /** Their ring settings. */
+        final int[] rings;
+
+        /** Their positions. */
+        final int[] positions;
+
+        /** Its plugboard. */
+        final Permutation plugboard;
+    }
+
+    /** Maximum number of lines cached. */
+    private final int _capacity;
+
+    /** Cached lines, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /** Lookup statistics. */
+    private long _hits, _misses, _evictions;
+
+}
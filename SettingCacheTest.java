@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingCache class.
+ *  @author
+ */
+public class SettingCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+    private static final String OTHER = "* B Gamma I II III AAAA (AB)";
+    private static final String MESSAGE = "FROMHISSHOULDERHIAWATHA";
+
+    @Test
+    public void repeatedLineIsLookedUp() {
+        Machine M = navalMachine(ROTORS, "AAAA", "");
+        SettingCache setups = new SettingCache();
+        KeystreamCache keystreams = new KeystreamCache(0, 0);
+        Main.setUp(M, SETTING, setups, keystreams);
+        String expected = M.convert(MESSAGE);
+        Main.setUp(M, OTHER, setups, keystreams);
+        String other = M.convert(MESSAGE);
+        assertEquals(0, setups.hits());
+        assertEquals(2, setups.misses());
+
+        for (int i = 0; i < 3; i += 1) {
+            Main.setUp(M, "  " + SETTING.replace(" ", "\t "), setups,
+                       keystreams);
+            assertEquals(expected, M.convert(MESSAGE));
+            Main.setUp(M, OTHER, setups, keystreams);
+            assertEquals(other, M.convert(MESSAGE));
+        }
+        assertEquals(6, setups.hits());
+        assertEquals(2, setups.size());
+        assertSame(SETTING, SettingCache.normalize(SETTING));
+    }
+
+    @Test
+    public void errorsAreNotCached() {
+        Machine M = navalMachine(ROTORS, "AAAA", "");
+        SettingCache setups = new SettingCache();
+        KeystreamCache keystreams = new KeystreamCache(0, 0);
+        for (int i = 0; i < 2; i += 1) {
+            try {
+                Main.setUp(M, "* B Beta I I III AAAA", setups, keystreams);
+                fail("repeated rotor accepted");
+            } catch (EnigmaException excp) {
+                assertEquals("Repeated Rotor", excp.getMessage());
+            }
+        }
+        assertEquals(0, setups.size());
+        assertEquals(2, setups.misses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        Machine M = navalMachine(ROTORS, "AAAA", "");
+        SettingCache setups = new SettingCache(1);
+        KeystreamCache keystreams = new KeystreamCache(0, 0);
+        Main.setUp(M, SETTING, setups, keystreams);
+        Main.setUp(M, OTHER, setups, keystreams);
+        Main.setUp(M, SETTING, setups, keystreams);
+        assertEquals(0, setups.hits());
+        assertEquals(2, setups.evictions());
+        assertEquals(1, setups.size());
+        assertFalse(setups.apply(SETTING, navalMachine(ROTORS, "AAAA", "")));
+    }
+
+}
@@ -0,0 +1,248 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static enigma.EnigmaException.*;
+
+/** Generates engines specialized to the shape of a configured machine:
+ *  its alphabet size, its number of slots, and which of them rotate.  The
+ *  generated code has the stepping logic, the forward pass, the reflection
+ *  and the backward pass fully unrolled, with the rotor settings held in
+ *  scalar fields, so that convert(int) is straight-line code.  Generated
+ *  classes are compiled at run time, defined as hidden classes, and cached
+ *  by shape; the tables themselves are supplied per instance.  Where no
+ *  compiler is available (e.g., on a bare runtime), a TableEngine is used
+ *  instead.
+ *  @author Jennifer Hu
+ */
+class Specializer {
+
+    /** Return an engine for the current configuration and settings of
+     *  M.  Later changes to M do not affect it. */
+    static EnigmaEngine specialize(Machine M) {
+        return specialize(new Wiring(M), M.settings());
+    }
+
+    /** Return an engine for WIRING, initially at SETTINGS. */
+    static EnigmaEngine specialize(Wiring wiring, int[] settings) {
+        MethodHandle ctor = constructor(wiring);
+        if (ctor == null) {
+            return new TableEngine(wiring, settings);
+        }
+        try {
+            return (EnigmaEngine) ctor.invoke(wiring, settings);
+        } catch (RuntimeException | Error excp) {
+            throw excp;
+        } catch (Throwable excp) {
+            throw error("could not instantiate specialized machine: %s",
+                        excp);
+        }
+    }
+
+    /** Return true iff specialized classes can be compiled here. */
+    static boolean available() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /** Return the number of distinct shapes compiled so far. */
+    static int compiledShapes() {
+        return SHAPES.size();
+    }
+
+    /** Return the constructor (taking a Wiring and settings) of the class
+     *  specialized to WIRING's shape, compiling it if needed, or null if
+     *  classes cannot be compiled here. */
+    private static MethodHandle constructor(Wiring wiring) {
+        if (!available()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(wiring.size()).append('_');
+        for (int i = 0; i < wiring.numRotors(); i += 1) {
+            key.append(wiring.rotates(i) ? 'M' : 'N');
+        }
+        return SHAPES.computeIfAbsent(key.toString(),
+                                      k -> define(k, wiring));
+    }
+
+    /** Compile and define the class for WIRING's shape, named after KEY,
+     *  returning its constructor. */
+    private static MethodHandle define(String key, Wiring wiring) {
+        String name = "Specialized_" + key;
+        byte[] bytes = compile(name, source(name, wiring));
+        try {
+            MethodHandles.Lookup lookup =
+                MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class, Wiring.class,
+                                      int[].class));
+        } catch (ReflectiveOperationException excp) {
+            throw error("could not define specialized machine: %s", excp);
+        }
+    }
+
+    /** Return the source of class NAME specialized to WIRING's shape. */
+    static String source(String name, Wiring wiring) {
+        int n = wiring.numRotors(), last = n - 1, size = wiring.size();
+        StringBuilder s = new StringBuilder();
+        s.append("package enigma;\n");
+        s.append("final class ").append(name)
+            .append(" implements EnigmaEngine {\n");
+        s.append("  private final Alphabet alpha;\n");
+        s.append("  private final int[] plug");
+        for (int i = 0; i < n; i += 1) {
+            s.append(", f").append(i).append(", b").append(i);
+        }
+        s.append(";\n  private final boolean[] n0");
+        for (int i = 1; i < n; i += 1) {
+            s.append(", n").append(i);
+        }
+        s.append(";\n  private int p0");
+        for (int i = 1; i < n; i += 1) {
+            s.append(", p").append(i);
+        }
+        s.append(";\n");
+
+        s.append("  ").append(name)
+            .append("(Wiring w, int[] settings) {\n");
+        s.append("    alpha = w.alphabet();\n    plug = w.plugboard();\n");
+        for (int i = 0; i < n; i += 1) {
+            s.append(String.format("    f%d = w.forward(%d); "
+                                   + "b%d = w.backward(%d);%n", i, i, i, i));
+            s.append(String.format("    n%d = new boolean[%d];%n", i, size));
+            s.append(String.format("    for (int k = 0; k < %d; k += 1) "
+                                   + "n%d[k] = w.atNotch(%d, k);%n",
+                                   size, i, i));
+        }
+        s.append("    p0 = settings[0];\n    setSettings(settings);\n  }\n");
+
+        s.append("  public String name() {\n    return \"specialized\";\n  }\n");
+        s.append("  public Alphabet alphabet() {\n    return alpha;\n  }\n");
+        s.append("  public int[] settings() {\n    return new int[] {p0");
+        for (int i = 1; i < n; i += 1) {
+            s.append(", p").append(i);
+        }
+        s.append("};\n  }\n");
+        s.append("  public void setSettings(int[] settings) {\n");
+        for (int i = 1; i < n; i += 1) {
+            s.append(String.format("    p%d = settings[%d];%n", i, i));
+        }
+        s.append("  }\n");
+
+        s.append("  public int convert(int c) {\n");
+        for (int i = last; i > 1; i -= 1) {
+            if (wiring.rotates(i) || wiring.rotates(i - 1)) {
+                s.append(String.format("    boolean at%d = n%d[p%d];%n",
+                                       i, i, i));
+            }
+        }
+        for (int i = last; i > 0; i -= 1) {
+            if (!wiring.rotates(i)) {
+                continue;
+            }
+            String advance = String.format("p%d = p%d + 1 == %d ? 0 : p%d + 1;",
+                                           i, i, size, i);
+            if (i == last) {
+                s.append("    ").append(advance).append("\n");
+            } else if (i > 1) {
+                s.append(String.format("    if (at%d || at%d) %s%n",
+                                       i + 1, i, advance));
+            } else {
+                s.append(String.format("    if (at%d) %s%n", i + 1, advance));
+            }
+        }
+        s.append("    int x = plug[c], v;\n");
+        for (int i = last; i >= 0; i -= 1) {
+            shift(s, "f" + i, "p" + i, size);
+        }
+        for (int i = 1; i < n; i += 1) {
+            shift(s, "b" + i, "p" + i, size);
+        }
+        s.append("    return plug[x];\n  }\n}\n");
+        return s.toString();
+    }
+
+    /** Append to S the statements applying TABLE to x as seen by a rotor
+     *  at setting POSN, for an alphabet of SIZE characters. */
+    private static void shift(StringBuilder s, String table, String posn,
+                              int size) {
+        s.append(String.format("    v = x + %s; if (v >= %d) v -= %d; "
+                               + "v = %s[v] - %s; x = v < 0 ? v + %d : v;%n",
+                               posn, size, size, table, posn, size));
+    }
+
+    /** Return the class file compiled from SOURCE, which defines the
+     *  class NAME in this package. */
+    private static byte[] compile(String name, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager standard =
+            compiler.getStandardFileManager(null, null, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ForwardingJavaFileManager<StandardJavaFileManager> files =
+            new ForwardingJavaFileManager<>(standard) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location loc,
+                    String cls, JavaFileObject.Kind kind, FileObject from) {
+                    return new SimpleJavaFileObject(URI.create("mem:///"
+                        + cls.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            return bytes;
+                        }
+                    };
+                }
+            };
+        JavaFileObject unit =
+            new SimpleJavaFileObject(URI.create("string:///enigma/" + name
+                + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignored) {
+                    return source;
+                }
+            };
+        List<String> options = Arrays.asList("-classpath", classPath(),
+                                             "-proc:none");
+        if (!compiler.getTask(null, files, null, options, null,
+                              Arrays.asList(unit)).call()) {
+            throw error("could not compile specialized machine %s", name);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return a class path from which this package can be compiled
+     *  against. */
+    private static String classPath() {
+        String result = System.getProperty("java.class.path");
+        try {
+            String here = new File(Specializer.class.getProtectionDomain()
+                                   .getCodeSource().getLocation().toURI())
+                .getPath();
+            result = here + File.pathSeparator + result;
+        } catch (Exception excp) {
+            /* Fall back on the class path alone. */
+        }
+        return result;
+    }
+
+    /** Constructors of the classes compiled so far, by shape. */
+    private static final ConcurrentHashMap<String, MethodHandle> SHAPES =
+        new ConcurrentHashMap<>();
+
+}
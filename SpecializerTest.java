@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Specializer class.
+ *  @author
+ */
+public class SpecializerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+
+    private static final Alphabet AD = new CharacterRange('A', 'D');
+
+    @Test
+    public void matchesMachine() {
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        EnigmaEngine e = Specializer.specialize(m);
+        assertEquals(Specializer.available() ? "specialized" : "table",
+                     e.name());
+        check("naval", m, e, 20000);
+    }
+
+    @Test
+    public void doubleStep() {
+        Machine m = small("ACB");
+        check("A-D", m, Specializer.specialize(m), 500);
+    }
+
+    @Test
+    public void shapeCacheHit() {
+        Machine first = small("AAA");
+        Specializer.specialize(first);
+        int shapes = Specializer.compiledShapes();
+
+        Machine second = small("DBC");
+        second.insertRotors(new String[] {"R1", "R4", "R2", "R3"});
+        second.setRotors("DBC");
+        second.setPlugboard(new Permutation("(AD)", AD));
+        EnigmaEngine e = Specializer.specialize(second);
+        assertEquals(shapes, Specializer.compiledShapes());
+        check("cached shape", second, e, 500);
+
+        EnigmaEngine again = Specializer.specialize(first);
+        assertEquals(shapes, Specializer.compiledShapes());
+        check("first machine again", first, again, 500);
+    }
+
+    @Test
+    public void independentOfMachine() {
+        Machine m = small("BCD");
+        EnigmaEngine e = Specializer.specialize(m);
+        int[] start = m.settings();
+        m.setRotors("AAA");
+        m.setPlugboard(new Permutation("(BC)", AD));
+        Machine fresh = small("BCD");
+        assertArrayEquals(start, e.settings());
+        check("after changes to the machine", fresh, e, 100);
+    }
+
+    /** Check that E converts COUNT characters as M does, from the same
+     *  settings, and ends at the same settings, reporting failures as
+     *  TESTID. */
+    private static void check(String testId, Machine m, EnigmaEngine e,
+                              int count) {
+        assertArrayEquals(testId, m.settings(), e.settings());
+        int size = m.alphabet().size();
+        for (int i = 0; i < count; i += 1) {
+            int c = (i * 7 + i / size) % size;
+            assertEquals(msg(testId, "character %d", i),
+                         m.convert(c), e.convert(c));
+        }
+        assertArrayEquals(testId, m.settings(), e.settings());
+    }
+
+    /** Return a machine of four slots, all three rotors moving, over A-D,
+     *  with rotors R1-R4 inserted and set to SETTING. */
+    private static Machine small(String setting) {
+        ArrayList<Rotor> rotors = new ArrayList<>(Arrays.asList(
+            new Reflector("R1", new Permutation("(AC) (BD)", AD)),
+            new MovingRotor("R2", new Permutation("(ABCD)", AD), "C"),
+            new MovingRotor("R3", new Permutation("(AB) (CD)", AD), "CA"),
+            new MovingRotor("R4", new Permutation("(ADB)", AD), "B")));
+        Machine result = new Machine(AD, 4, 3, rotors);
+        result.insertRotors(new String[] {"R1", "R2", "R3", "R4"});
+        result.setRotors(setting);
+        return result;
+    }
+
+}
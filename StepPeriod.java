@@ -0,0 +1,270 @@
+package enigma;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The period and turnover frequencies of a Stepping, computed from its
+ *  notches.  From any settings, the rotors pass through a few transient
+ *  states and then repeat a cycle of period() keypresses.  When no rotor
+ *  has two notches at adjacent positions and only rotating rotors have
+ *  notches, the cycle is found slot by slot from the right: the last
+ *  slot repeats every size() keypresses, and if the slots to the right
+ *  of slot i repeat every P keypresses, during which slot i + 1 is at a
+ *  notch E times, then slot i, which passes over its K notches without
+ *  stopping, rests at L = size() - K positions and takes E of them per
+ *  P keypresses, so that slots i and up repeat every P * L / gcd(L, E)
+ *  keypresses (slot 1 has no notches in this sense, since a rotor at a
+ *  notch moves itself only from slot 2 on).  Otherwise, the cycle from
+ *  all-zero settings is found by simulation, up to SIMULATION_LIMIT
+ *  keypresses.
+ *  @author Jennifer Hu
+ */
+class StepPeriod {
+
+    /** Maximum number of keypresses simulated for irregular notches. */
+    static final long SIMULATION_LIMIT = 1L << 28;
+
+    /** The analysis of STEPPING. */
+    StepPeriod(Stepping stepping) {
+        _stepping = stepping;
+        _size = stepping.size();
+        _last = stepping.numRotors() - 1;
+        _notches = new int[_last + 1];
+        _turnovers = new BigInteger[_last + 1];
+        Arrays.fill(_turnovers, BigInteger.ZERO);
+        boolean regular = true;
+        for (int i = 2; i <= _last; i += 1) {
+            for (int p = 0; p < _size; p += 1) {
+                if (stepping.atNotch(i, p)) {
+                    _notches[i] += 1;
+                    regular &= stepping.rotates(i)
+                        && !stepping.atNotch(i, (p + 1) % _size);
+                }
+            }
+        }
+        _analytic = regular;
+        if (_analytic) {
+            analyze();
+        }
+    }
+
+    /** Return true iff my results were computed from the notches rather
+     *  than by simulation. */
+    boolean analytic() {
+        return _analytic;
+    }
+
+    /** Return the number of keypresses in each repetition of the rotor
+     *  settings, once they repeat.  Unless analytic(), this is for the
+     *  repetition reached from all-zero settings, found by simulation
+     *  the first time it is asked for. */
+    BigInteger period() {
+        simulate();
+        return _period;
+    }
+
+    /** Return the number of keypresses in each period() at which the
+     *  rotor in SLOT advances. */
+    BigInteger turnovers(int slot) {
+        simulate();
+        return _turnovers[slot];
+    }
+
+    /** Return the fraction of keypresses, once the settings repeat, at
+     *  which the rotor in SLOT advances. */
+    double turnoverRate(int slot) {
+        simulate();
+        return _turnovers[slot].doubleValue() / _period.doubleValue();
+    }
+
+    /** Return the number of notches of the rotor in SLOT that move
+     *  rotors, or 0 for slots 0 and 1. */
+    int notches(int slot) {
+        return _notches[slot];
+    }
+
+    /** Return { T, C }, where from SETTINGS (in the form returned by
+     *  Machine.settings()) the rotors pass through T transient states
+     *  and then repeat a cycle of C states, so that T + C distinct
+     *  states are visited in all, or null if T + C exceeds LIMIT.
+     *  Unless analytic(), this simulates up to a few times LIMIT
+     *  keypresses. */
+    long[] orbit(int[] settings, long limit) {
+        if (!_analytic) {
+            return simulate(settings, limit);
+        }
+        int[] s = settings.clone();
+        long transients = 0;
+        while (!onCycle(s)) {
+            _stepping.step(s);
+            transients += 1;
+        }
+        if (_period.compareTo(BigInteger.valueOf(limit - transients)) > 0) {
+            return null;
+        }
+        return new long[] { transients, _period.longValue() };
+    }
+
+    /** Compute the period and turnovers slot by slot from the notches
+     *  (see the class comment). */
+    private void analyze() {
+        BigInteger[] periods = new BigInteger[_last + 1];
+        BigInteger size = BigInteger.valueOf(_size);
+        _period = BigInteger.ONE;
+        if (_stepping.rotates(_last)) {
+            _period = size;
+            _turnovers[_last] = size;
+            periods[_last] = size;
+            BigInteger pushes = BigInteger.valueOf(_notches[_last]);
+            for (int i = _last - 1; i > 0 && _stepping.rotates(i); i -= 1) {
+                BigInteger rests = BigInteger.valueOf(_size - _notches[i]);
+                if (pushes.signum() > 0) {
+                    BigInteger cycle = rests.divide(rests.gcd(pushes));
+                    BigInteger turns = pushes.multiply(cycle).divide(rests);
+                    _period = _period.multiply(cycle);
+                    _turnovers[i] = turns.multiply(size);
+                    pushes = turns.multiply(
+                        BigInteger.valueOf(_notches[i]));
+                }
+                periods[i] = _period;
+            }
+        }
+        for (int i = 1; i <= _last; i += 1) {
+            if (periods[i] != null) {
+                _turnovers[i] =
+                    _turnovers[i].multiply(_period.divide(periods[i]));
+            }
+        }
+    }
+
+    /** Unless analytic() or already done, compute the period and
+     *  turnovers by simulation from all-zero settings. */
+    private synchronized void simulate() {
+        if (_period != null) {
+            return;
+        }
+        int[] s = new int[_last + 1];
+        long[] orbit = simulate(s, SIMULATION_LIMIT);
+        if (orbit == null) {
+            throw error("stepping too irregular to analyze within %d "
+                        + "keypresses", SIMULATION_LIMIT);
+        }
+        step(s, orbit[0]);
+        long[] moves = new long[_last + 1];
+        int[] next = s.clone();
+        for (long n = 0; n < orbit[1]; n += 1) {
+            _stepping.step(next);
+            for (int i = 1; i <= _last; i += 1) {
+                if (next[i] != s[i]) {
+                    moves[i] += 1;
+                    s[i] = next[i];
+                }
+            }
+        }
+        for (int i = 1; i <= _last; i += 1) {
+            _turnovers[i] = BigInteger.valueOf(moves[i]);
+        }
+        _period = BigInteger.valueOf(orbit[1]);
+    }
+
+    /** Return orbit(SETTINGS, LIMIT), found by Brent's cycle-finding
+     *  algorithm. */
+    private long[] simulate(int[] settings, long limit) {
+        int[] tortoise = settings.clone(), hare = settings.clone();
+        _stepping.step(hare);
+        long power = 1, cycle = 1;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == cycle) {
+                if (power > limit) {
+                    return null;
+                }
+                tortoise = hare.clone();
+                power *= 2;
+                cycle = 0;
+            }
+            _stepping.step(hare);
+            cycle += 1;
+        }
+        tortoise = settings.clone();
+        hare = settings.clone();
+        step(hare, cycle);
+        long transients = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            _stepping.step(tortoise);
+            _stepping.step(hare);
+            transients += 1;
+        }
+        return transients + cycle > limit ? null
+            : new long[] { transients, cycle };
+    }
+
+    /** Advance SETTINGS by PRESSES keypresses, one at a time, since
+     *  Stepping.advance assumes that only rotating rotors have notches. */
+    private void step(int[] settings, long presses) {
+        for (long n = 0; n < presses; n += 1) {
+            _stepping.step(settings);
+        }
+    }
+
+    /** Return true iff SETTINGS recur.  A transient state has fewer than
+     *  numRotors() predecessors in a row, so SETTINGS recur iff they
+     *  have more. */
+    private boolean onCycle(int[] settings) {
+        return hasAncestors(settings, _last + 2);
+    }
+
+    /** Return true iff SETTINGS can be reached by DEPTH keypresses from
+     *  some other settings. */
+    private boolean hasAncestors(int[] settings, int depth) {
+        return depth == 0
+            || hasAncestors(settings, new int[_last + 1], _last, depth);
+    }
+
+    /** Return true iff SETTINGS have a predecessor, with slots above
+     *  SLOT as given by PRED, that can be reached by DEPTH - 1
+     *  keypresses.  PRED is overwritten from SLOT down. */
+    private boolean hasAncestors(int[] settings, int[] pred, int slot,
+                                 int depth) {
+        if (slot == 0) {
+            pred[0] = settings[0];
+            return hasAncestors(pred.clone(), depth - 1);
+        }
+        int s = settings[slot];
+        int[] candidates = { s, s == 0 ? _size - 1 : s - 1 };
+        int n = _stepping.rotates(slot) && _size > 1 ? 2 : 1;
+        for (int k = 0; k < n; k += 1) {
+            int p = candidates[k];
+            boolean rotates = _stepping.rotates(slot);
+            boolean moves = slot == _last ? rotates
+                : rotates && _stepping.atNotch(slot + 1, pred[slot + 1])
+                || slot > 1 && rotates && _stepping.atNotch(slot, p);
+            pred[slot] = p;
+            if (moves == (k == 1)
+                && hasAncestors(settings, pred, slot - 1, depth)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The stepping analyzed. */
+    private final Stepping _stepping;
+
+    /** Rotor positions, and the index of the last slot. */
+    private final int _size, _last;
+
+    /** Number of notches of each slot from 2 on. */
+    private final int[] _notches;
+
+    /** True iff the notches allow analysis without simulation. */
+    private final boolean _analytic;
+
+    /** Keypresses per repetition, once computed. */
+    private volatile BigInteger _period;
+
+    /** Advances of each slot per repetition. */
+    private final BigInteger[] _turnovers;
+
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StepPeriod class.
+ *  @author
+ */
+public class StepPeriodTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    private static final String[] ROTORS = {"B", "Beta", "III", "IV", "I"};
+
+    @Test
+    public void matchesSimulation() {
+        Random random = new Random(48);
+        int analytic = 0;
+        for (int n = 0; n < 400; n += 1) {
+            int size = 2 + random.nextInt(5), slots = 2 + random.nextInt(4);
+            boolean[] rotates = new boolean[slots];
+            long[][] notches = new long[slots][1];
+            for (int i = 1; i < slots; i += 1) {
+                rotates[i] = random.nextInt(5) > 0;
+                if (rotates[i] || random.nextInt(8) == 0) {
+                    notches[i][0] = random.nextLong() & (1L << size) - 1;
+                }
+            }
+            Stepping stepping = new Stepping(size, rotates, notches);
+            StepPeriod period = new StepPeriod(stepping);
+            String id = String.format("size %d, rotates %s, notches %s",
+                                      size, Arrays.toString(rotates),
+                                      Arrays.deepToString(notches));
+            if (period.analytic()) {
+                analytic += 1;
+            }
+            int[] start = new int[slots];
+            do {
+                long[] expected = simulate(stepping, start);
+                assertEquals(msg(id, "orbit of %s", Arrays.toString(start)),
+                             Arrays.toString(expected), Arrays.toString(
+                                 period.orbit(start, Long.MAX_VALUE)));
+                if (expected[0] + expected[1] > 1) {
+                    assertNull(period.orbit(start,
+                                            expected[0] + expected[1] - 1));
+                }
+                if (period.analytic()) {
+                    assertEquals(msg(id, "cycle"),
+                                 BigInteger.valueOf(expected[1]),
+                                 period.period());
+                }
+            } while (next(start, size));
+            int[] cycle = new int[slots];
+            for (long k = simulate(stepping, cycle)[0]; k > 0; k -= 1) {
+                stepping.step(cycle);
+            }
+            assertEquals(msg(id, "period"),
+                         BigInteger.valueOf(simulate(stepping, cycle)[1]),
+                         period.period());
+            long[] moves = new long[slots];
+            for (long k = 0; k < period.period().longValue(); k += 1) {
+                int[] before = cycle.clone();
+                stepping.step(cycle);
+                for (int i = 0; i < slots; i += 1) {
+                    moves[i] += before[i] != cycle[i] ? 1 : 0;
+                }
+            }
+            for (int i = 1; i < slots; i += 1) {
+                assertEquals(msg(id, "turnovers of slot %d", i),
+                             BigInteger.valueOf(moves[i]),
+                             period.turnovers(i));
+            }
+        }
+        assertTrue(analytic > 100);
+    }
+
+    @Test
+    public void navalPeriod() {
+        Machine m = navalMachine(ROTORS, "AXLE", "");
+        StepPeriod period = m.stepping().period();
+        assertTrue(period.analytic());
+        assertEquals(BigInteger.valueOf(26 * 25 * 25), period.period());
+        assertEquals(BigInteger.ZERO, period.turnovers(1));
+        assertEquals(BigInteger.valueOf(26), period.turnovers(2));
+        assertEquals(BigInteger.valueOf(26 * 25), period.turnovers(3));
+        assertEquals(period.period(), period.turnovers(4));
+        assertEquals(1.0 / 625, period.turnoverRate(2), 1e-12);
+    }
+
+    @Test
+    public void manyRotors() {
+        int slots = 40;
+        boolean[] rotates = new boolean[slots];
+        long[][] notches = new long[slots][1];
+        for (int i = 1; i < slots; i += 1) {
+            rotates[i] = true;
+            notches[i][0] = 1L << (i % 26);
+        }
+        StepPeriod period = new StepPeriod(new Stepping(26, rotates,
+                                                        notches));
+        BigInteger expected = BigInteger.valueOf(26).pow(2)
+            .multiply(BigInteger.valueOf(25).pow(slots - 3));
+        assertEquals(expected, period.period());
+        assertNull(period.orbit(new int[slots], Long.MAX_VALUE));
+    }
+
+    @Test
+    public void keystreamRepeats() {
+        Machine plain = navalMachine(ROTORS, "AXLE", "(HQ) (EX)");
+        Machine cycled = navalMachine(ROTORS, "AXLE", "(HQ) (EX)");
+        Keystream schedule = new Keystream(cycled, 20000);
+        assertEquals(26 * 25 * 25, schedule.cycle());
+        assertTrue(schedule.length() < 20000);
+        cycled.useKeystream(schedule);
+        for (int i = 0; i < 40000; i += 1) {
+            int c = (i * 11) % 26;
+            assertEquals(plain.convert(c), cycled.convert(c));
+        }
+        assertArrayEquals(plain.settings(), cycled.settings());
+        assertEquals(0, new Keystream(cycled, 100).cycle());
+    }
+
+    /** Return { transient states, cycle length } from SETTINGS of
+     *  STEPPING, found by recording every state visited. */
+    private static long[] simulate(Stepping stepping, int[] settings) {
+        HashMap<String, Long> seen = new HashMap<>();
+        int[] s = settings.clone();
+        for (long n = 0; ; n += 1) {
+            Long first = seen.put(Arrays.toString(s), n);
+            if (first != null) {
+                return new long[] { first, n - first };
+            }
+            stepping.step(s);
+        }
+    }
+
+    /** Set SETTINGS to the next of all settings of its slots from 1 on,
+     *  with SIZE positions each, and return false after the last. */
+    private static boolean next(int[] settings, int size) {
+        for (int i = settings.length - 1; i > 0; i -= 1) {
+            settings[i] += 1;
+            if (settings[i] < size) {
+                return true;
+            }
+            settings[i] = 0;
+        }
+        return false;
+    }
+
+}
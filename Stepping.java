@@ -0,0 +1,243 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping of the rotors of a Wiring, compiled from a bitmask of
+ *  notches per slot.  Settings are arrays of per-slot settings in the
+ *  form returned by Machine.settings(); a state is the number whose
+ *  digits, in base size(), are the settings of the slots whose rotors
+ *  rotate, the last slot least significant (the others never change).
+ *  The successor of each state is looked up in a table when there are
+ *  at most DENSE_LIMIT states, and computed from the masks otherwise.
+ *  For bulk conversion, untilTurnover tells how many keypresses remain
+ *  during which only the last slot moves, and period() analyzes the
+ *  cycle that the settings eventually repeat.
+ *  @author Jennifer Hu
+ */
+class Stepping {
+
+    /** Maximum number of states for which successors are tabulated. */
+    static final int DENSE_LIMIT = 1 << 20;
+
+    /** The stepping of SIZE-position rotors in slots that rotate as
+     *  given by ROTATES and have notches as given by NOTCHES (see
+     *  MovingRotor.notchMask), slot 0 (the reflector) first. */
+    Stepping(int size, boolean[] rotates, long[][] notches) {
+        _size = size;
+        _numRotors = rotates.length;
+        _rotates = rotates.clone();
+        _notches = notches.clone();
+        _last = _numRotors - 1;
+        _weights = new long[_numRotors];
+        long states = 1;
+        for (int i = _last; i > 0; i -= 1) {
+            if (_rotates[i]) {
+                _weights[i] = states;
+                states = states <= Long.MAX_VALUE / size
+                    ? states * size : Long.MAX_VALUE;
+            }
+        }
+        _states = states;
+        _toNotch = new int[size];
+        int next = -1;
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (int p = size - 1; p >= 0; p -= 1) {
+                if (atNotch(_last, p)) {
+                    next = p;
+                }
+                _toNotch[p] = next < 0 ? -1 : next >= p ? next - p
+                    : next + size - p;
+            }
+        }
+    }
+
+    /** The stepping of SIZE-position ROTORS, as placed in slots, the
+     *  reflector first. */
+    static Stepping of(int size, Rotor[] rotors) {
+        boolean[] rotates = new boolean[rotors.length];
+        long[][] notches = new long[rotors.length][];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotates[i] = rotors[i].rotates();
+            notches[i] = rotors[i].notchMask();
+        }
+        return new Stepping(size, rotates, notches);
+    }
+
+    /** Return the number of positions of each rotor. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return true iff the rotor in SLOT rotates. */
+    boolean rotates(int slot) {
+        return _rotates[slot];
+    }
+
+    /** Return true iff the rotor in SLOT is at a notch at POSN. */
+    boolean atNotch(int slot, int posn) {
+        return (_notches[slot][posn >>> 6] & 1L << posn) != 0;
+    }
+
+    /** Advance SETTINGS one keypress, as Machine.advanceRotors does.
+     *  Returns true iff a slot other than the last one advanced. */
+    boolean step(int[] settings) {
+        boolean stepPrev = _rotates[_last], inner = false;
+        for (int i = _last; i > 0; i -= 1) {
+            boolean notched = i > 1 && atNotch(i, settings[i]);
+            boolean steps = stepPrev || (notched && _rotates[i]);
+            stepPrev = notched && _rotates[i - 1];
+            if (steps) {
+                settings[i] = settings[i] + 1 == _size ? 0 : settings[i] + 1;
+                inner |= i < _last;
+            }
+        }
+        return inner;
+    }
+
+    /** Return the number of keypresses from SETTINGS up to and including
+     *  the first that advances a slot other than the last, or
+     *  Integer.MAX_VALUE if none ever does.  Until then, only the last
+     *  slot moves (if its rotor rotates). */
+    int untilTurnover(int[] settings) {
+        for (int i = 2; i < _last; i += 1) {
+            if (atNotch(i, settings[i]) && (_rotates[i] || _rotates[i - 1])) {
+                return 1;
+            }
+        }
+        if (_last < 2 || !_rotates[_last] || !_rotates[_last - 1]
+            || _toNotch[settings[_last]] < 0) {
+            return Integer.MAX_VALUE;
+        }
+        return _toNotch[settings[_last]] + 1;
+    }
+
+    /** Advance SETTINGS by PRESSES keypresses, moving the last slot
+     *  directly between turnovers. */
+    void advance(int[] settings, long presses) {
+        while (presses > 0) {
+            long quiet = Math.min(untilTurnover(settings) - 1L, presses);
+            if (quiet > 0) {
+                if (_rotates[_last]) {
+                    settings[_last] =
+                        (int) ((settings[_last] + quiet) % _size);
+                }
+                presses -= quiet;
+            } else {
+                step(settings);
+                presses -= 1;
+            }
+        }
+    }
+
+    /** Return the number of states. */
+    long states() {
+        return _states;
+    }
+
+    /** Return the state of SETTINGS.  There must be no more states than
+     *  fit in an int. */
+    int state(int[] settings) {
+        checkIntStates();
+        long result = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            result += _weights[i] * settings[i];
+        }
+        return (int) result;
+    }
+
+    /** Set the settings of the rotating slots in SETTINGS to those of
+     *  STATE, leaving the others unchanged. */
+    void settings(int state, int[] settings) {
+        for (int i = _last; i > 0; i -= 1) {
+            if (_rotates[i]) {
+                settings[i] = state % _size;
+                state /= _size;
+            }
+        }
+    }
+
+    /** Return the state one keypress after STATE: one table lookup when
+     *  dense(), and otherwise computed by step. */
+    int next(int state) {
+        int[] next = _next;
+        if (next == null && dense()) {
+            next = tabulate();
+        }
+        if (next != null) {
+            return next[state];
+        }
+        checkIntStates();
+        int[] settings = new int[_numRotors];
+        settings(state, settings);
+        step(settings);
+        return state(settings);
+    }
+
+    /** Return the analysis of my period, computing it if need be. */
+    synchronized StepPeriod period() {
+        if (_period == null) {
+            _period = new StepPeriod(this);
+        }
+        return _period;
+    }
+
+    /** Return true iff successors are tabulated. */
+    boolean dense() {
+        return _states <= DENSE_LIMIT;
+    }
+
+    /** Return the table of successors, computing it if need be. */
+    private synchronized int[] tabulate() {
+        if (_next == null) {
+            int[] next = new int[(int) _states];
+            int[] settings = new int[_numRotors];
+            for (int s = 0; s < next.length; s += 1) {
+                settings(s, settings);
+                step(settings);
+                next[s] = state(settings);
+            }
+            _next = next;
+        }
+        return _next;
+    }
+
+    /** Throw an exception if states do not fit in an int. */
+    private void checkIntStates() {
+        if (_states > Integer.MAX_VALUE) {
+            throw error("too many rotor states to number: %d", _states);
+        }
+    }
+
+    /** Rotor positions. */
+    private final int _size;
+
+    /** Number of slots, and the index of the last. */
+    private final int _numRotors, _last;
+
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** Notch bitmask of each slot. */
+    private final long[][] _notches;
+
+    /** Place value of each slot in a state (0 for those that do not
+     *  rotate), and the number of states. */
+    private final long[] _weights;
+    private final long _states;
+
+    /** _toNotch[p] is the number of keypresses that take the last slot
+     *  from p to a notch, or -1 if it has none. */
+    private final int[] _toNotch;
+
+    /** Successor of each state, once tabulated. */
+    private volatile int[] _next;
+
+    /** Analysis of my period, once computed. */
+    private StepPeriod _period;
+
+}
@@ -0,0 +1,202 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Reports how Permutations of alphabets of various sizes store their
+ * tables (see IndexTable), how many bytes the tables take, and how fast
+ * they are to look up, against a plain int[] table of the same map.
+ * Each size is tried with a random permutation of the whole alphabet
+ * and with one of a few transpositions, like a plugboard.
+ *
+ * @author Jennifer Hu
+ */
+public final class TableBench {
+
+    /**
+     * Run the benchmark, as specified by ARGS:
+     *     [--lookups=N] [--pairs=K] [SIZE ...]
+     * Each permutation is looked up N times (default 50 million) at
+     * random indices; the sparse permutations swap K pairs (default 10).
+     * The SIZEs default to 26, 256, 4096, 32768 and 65536.
+     */
+    public static void main(String... args) {
+        try {
+            long lookups = DEFAULT_LOOKUPS;
+            int pairs = DEFAULT_PAIRS;
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                String[] opt = args[first].split("=", 2);
+                if (opt.length != 2) {
+                    throw error("bad option: %s", args[first]);
+                }
+                switch (opt[0]) {
+                case "--lookups":
+                    lookups = Long.parseLong(opt[1]);
+                    break;
+                case "--pairs":
+                    pairs = Integer.parseInt(opt[1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", opt[0]);
+                }
+            }
+            List<Integer> sizes = new ArrayList<>();
+            for (int i = first; i < args.length; i += 1) {
+                int size = Integer.parseInt(args[i]);
+                if (size < 2 || size > 1 << 16) {
+                    throw error("alphabet size out of range: %d", size);
+                }
+                sizes.add(size);
+            }
+            if (sizes.isEmpty()) {
+                for (int size : DEFAULT_SIZES) {
+                    sizes.add(size);
+                }
+            }
+            System.out.printf("%6s %-7s %-22s %10s %9s %9s%n", "size",
+                              "kind", "storage", "bytes", "ns/table",
+                              "ns/int[]");
+            for (int size : sizes) {
+                Alphabet alphabet = new Codes(size);
+                SplittableRandom random = new SplittableRandom(size);
+                report("random", new Permutation(
+                    new int[][] { shuffled(size, random) }, alphabet),
+                       lookups);
+                report("sparse", new Permutation(
+                    transpositions(size, pairs, random), alphabet), lookups);
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Print a line describing the storage of PERM, labeled KIND, and
+     *  the time of LOOKUPS lookups in it and in an int[] copy. */
+    private static void report(String kind, Permutation perm,
+                               long lookups) {
+        int size = perm.size();
+        int[] plain = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            plain[i] = perm.permute(i);
+        }
+        String[] storage = perm.storage().split(", ");
+        double table = 0, array = 0;
+        for (int round = 0; round < ROUNDS; round += 1) {
+            table = time(perm, null, lookups);
+            array = time(null, plain, lookups);
+        }
+        System.out.printf("%6d %-7s %-22s %10s %9.2f %9.2f%n", size, kind,
+                          storage[0], storage[1].split(" ")[0], table,
+                          array);
+    }
+
+    /** Return the time in nanoseconds per lookup of LOOKUPS lookups at
+     *  pseudo-random indices in PERM, or in PLAIN if PERM is null. */
+    private static double time(Permutation perm, int[] plain,
+                               long lookups) {
+        int size = perm == null ? plain.length : perm.size();
+        int x = 1, sum = 0;
+        long start = System.nanoTime();
+        for (long n = 0; n < lookups; n += 1) {
+            x = x * LCG_MULTIPLIER + 1;
+            int i = (int) (((x >>> 1) * (long) size) >>> 31);
+            sum += perm == null ? plain[i] : perm.permute(i);
+        }
+        long nanos = System.nanoTime() - start;
+        _sink = sum;
+        return (double) nanos / lookups;
+    }
+
+    /** Return 0..SIZE-1 in an order chosen by RANDOM. */
+    private static int[] shuffled(int size, SplittableRandom random) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return up to PAIRS disjoint transpositions of 0..SIZE-1 chosen by
+     *  RANDOM. */
+    private static int[][] transpositions(int size, int pairs,
+                                          SplittableRandom random) {
+        int[] order = shuffled(size, random);
+        int[][] result = new int[Math.min(pairs, size / 2)][];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = new int[] { order[2 * k], order[2 * k + 1] };
+        }
+        return result;
+    }
+
+    /** The alphabet of the first SIZE char codes, the character of index
+     *  i being the char with code i.  Unlike a CharacterRange, it does
+     *  not fold cases. */
+    private static class Codes extends Alphabet {
+
+        /** The alphabet of the SIZE chars from code 0. */
+        Codes(int size) {
+            _size = size;
+        }
+
+        @Override
+        int size() {
+            return _size;
+        }
+
+        @Override
+        boolean contains(char ch) {
+            return ch < _size;
+        }
+
+        @Override
+        char toChar(int index) {
+            if (index < 0 || index >= _size) {
+                throw error("character index out of range");
+            }
+            return (char) index;
+        }
+
+        @Override
+        int toInt(char ch) {
+            if (!contains(ch)) {
+                throw error("character not in alphabet");
+            }
+            return ch;
+        }
+
+        /** Number of characters. */
+        private final int _size;
+    }
+
+    /** Alphabet sizes tried by default. */
+    private static final int[] DEFAULT_SIZES = {
+        26, 256, 4096, 32768, 65536
+    };
+
+    /** Default number of lookups per measurement. */
+    private static final long DEFAULT_LOOKUPS = 50_000_000;
+
+    /** Default number of pairs in a sparse permutation. */
+    private static final int DEFAULT_PAIRS = 10;
+
+    /** Number of times each measurement is made, the last counting. */
+    private static final int ROUNDS = 3;
+
+    /** Multiplier of the generator of lookup indices. */
+    private static final int LCG_MULTIPLIER = 1664525;
+
+    /** Receives the sum of each timed loop, so that the loop is not
+     *  optimized away. */
+    private static volatile int _sink;
+
+}
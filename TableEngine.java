@@ -0,0 +1,68 @@
+package enigma;
+
+/** A table-driven engine: interprets a Wiring, holding the rotor settings
+ *  in an array.  Between turnovers, when only the last rotor moves (see
+ *  Stepping.untilTurnover), it advances that rotor alone.
+ *  @author Jennifer Hu
+ */
+class TableEngine implements EnigmaEngine {
+
+    /** An engine for WIRING, initially at SETTINGS. */
+    TableEngine(Wiring wiring, int[] settings) {
+        _wiring = wiring;
+        _stepping = wiring.stepping();
+        _settings = settings.clone();
+        _last = _settings.length - 1;
+    }
+
+    @Override
+    public String name() {
+        return "table";
+    }
+
+    @Override
+    public Alphabet alphabet() {
+        return _wiring.alphabet();
+    }
+
+    @Override
+    public int convert(int c) {
+        if (_quiet > 0) {
+            _quiet -= 1;
+            int p = _settings[_last] + 1;
+            _settings[_last] = p == _wiring.size() ? 0 : p;
+        } else {
+            _stepping.step(_settings);
+            _quiet = _stepping.rotates(_last)
+                ? _stepping.untilTurnover(_settings) - 1 : 0;
+        }
+        return _wiring.convert(_settings, c);
+    }
+
+    @Override
+    public int[] settings() {
+        return _settings.clone();
+    }
+
+    @Override
+    public void setSettings(int[] settings) {
+        System.arraycopy(settings, 1, _settings, 1, _settings.length - 1);
+        _quiet = 0;
+    }
+
+    /** The wiring interpreted. */
+    private final Wiring _wiring;
+
+    /** The stepping of its rotors. */
+    private final Stepping _stepping;
+
+    /** The current settings. */
+    private final int[] _settings;
+
+    /** Index of the last slot. */
+    private final int _last;
+
+    /** Number of keypresses to come that move only the last slot. */
+    private int _quiet;
+
+}
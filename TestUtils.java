@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,48 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a new set of all the naval rotors in their 0 settings:
+     *  moving rotors I-VIII, fixed rotors Beta and Gamma, and reflectors
+     *  B and C. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                result.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                result.add(new Reflector(name, perm));
+            } else {
+                result.add(new FixedRotor(name, perm));
+            }
+        }
+        return result;
+    }
+
+    /** Return a naval machine with the rotors named ROTORS (reflector
+     *  first) at SETTING, with plugboard cycles PLUGBOARD. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String plugboard) {
+        Machine result = new Machine(UPPER, rotors.length,
+                                     rotors.length - 2, navalRotors());
+        result.insertRotors(rotors);
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(plugboard, UPPER));
+        return result;
+    }
+
 }
@@ -10,7 +10,18 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class, MachineTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class, MachineTest.class,
+                          KeystreamCacheTest.class, BatchConverterTest.class,
+                          AllocationTest.class, EngineTest.class,
+                          KeyVerifierTest.class, CheckpointTest.class,
+                          SearchClusterTest.class, RingBufferTest.class,
+                          ByteModeTest.class, MessageProcessorTest.class,
+                          SettingCacheTest.class, NormalizerTest.class,
+                          WorkloadTest.class, RotorCatalogTest.class,
+                          StepPeriodTest.class, GzipTest.class,
+                          CorpusProfileTest.class,
+                          RejewskiCatalogTest.class, DepthFinderTest.class,
+                          SpecializerTest.class, MainTest.class);
     }
 
 }
@@ -0,0 +1,135 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LT;
+
+/** The lane loops of a BatchConverter written with the Vector API, which
+ *  converts width() lanes per operation.  Table lookups (rotor, plugboard
+ *  and notch tables) are gathers through an index map, and the wraparound
+ *  of signals and settings is an add or subtract masked by a comparison.
+ *  The arrays of per-lane settings are padded to a multiple of width(),
+ *  so that no operation needs a mask for a partial group of lanes: those
+ *  are slower in JDK 17 and allocate.  This class must be loaded only
+ *  when the module jdk.incubator.vector is present (see
+ *  BatchConverter.VECTORS).
+ *  @author Jennifer Hu
+ */
+class VectorLanes {
+
+    /** Lane loops for LANES lanes of WIRING. */
+    VectorLanes(Wiring wiring, int lanes) {
+        _wiring = wiring;
+        _lanes = lanes;
+        _size = wiring.size();
+        int n = wiring.numRotors();
+        _rotates = new int[n];
+        _notches = new int[n][_size];
+        for (int i = 0; i < n; i += 1) {
+            _rotates[i] = wiring.rotates(i) ? 1 : 0;
+            for (int p = 0; p < _size; p += 1) {
+                _notches[i][p] = wiring.atNotch(i, p) ? 1 : 0;
+            }
+        }
+        _signal = new int[width()];
+        _carry = new int[width()];
+        _index = new int[width()];
+    }
+
+    /** Return the number of lanes converted per operation. */
+    static int width() {
+        return SPECIES.length();
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF in every lane,
+     *  where POSN[i][j] is the setting of slot i in lane j, as for
+     *  BatchConverter.convert.  The rows of POSN are padded to a
+     *  multiple of width() lanes. */
+    void convert(int[] msg, int off, int len, int[][] out, int[][] posn) {
+        int n = _wiring.numRotors(), width = width();
+        int[] plugboard = _wiring.plugboard();
+        for (int t = off; t < off + len; t += 1) {
+            for (int j = 0; j < _lanes; j += width) {
+                step(posn, j);
+                IntVector.broadcast(SPECIES, plugboard[msg[t]])
+                    .intoArray(_signal, 0);
+                for (int i = n - 1; i >= 0; i -= 1) {
+                    shift(_wiring.forward(i), posn[i], j);
+                }
+                for (int i = 1; i < n; i += 1) {
+                    shift(_wiring.backward(i), posn[i], j);
+                }
+                for (int k = 0; k < width && j + k < _lanes; k += 1) {
+                    out[j + k][t] = plugboard[_signal[k]];
+                }
+            }
+        }
+    }
+
+    /** Advance lanes J..J+width()-1 of POSN one keypress.  A slot's step
+     *  depends only on the slot after it and on its own setting before
+     *  the keypress, so each slot is advanced as soon as its step is
+     *  known.  Steps are vectors of 0 and 1, and the step passed on to
+     *  the next slot is kept in _carry. */
+    private void step(int[][] posn, int j) {
+        int last = _wiring.numRotors() - 1;
+        IntVector.broadcast(SPECIES, _rotates[last]).intoArray(_carry, 0);
+        for (int i = last; i > 1; i -= 1) {
+            IntVector p = IntVector.fromArray(SPECIES, posn[i], j);
+            IntVector notched = gather(_notches[i], p);
+            IntVector steps = IntVector.fromArray(SPECIES, _carry, 0)
+                .or(notched.and(_rotates[i]));
+            notched.and(_rotates[i - 1]).intoArray(_carry, 0);
+            advance(p.add(steps), posn[i], j);
+        }
+        if (last > 0) {
+            advance(IntVector.fromArray(SPECIES, posn[1], j)
+                    .add(IntVector.fromArray(SPECIES, _carry, 0)),
+                    posn[1], j);
+        }
+    }
+
+    /** Store the settings P, each at most _size, at POSN[J..], wrapping
+     *  _size around to 0. */
+    private void advance(IntVector p, int[] posn, int j) {
+        p.sub(_size, p.compare(GE, _size)).intoArray(posn, j);
+    }
+
+    /** Replace each lane of _signal by its image under TABLE as seen by
+     *  a rotor at the setting in POSN[J..]. */
+    private void shift(int[] table, int[] posn, int j) {
+        IntVector p = IntVector.fromArray(SPECIES, posn, j);
+        IntVector v = IntVector.fromArray(SPECIES, _signal, 0).add(p);
+        v = gather(table, v.sub(_size, v.compare(GE, _size))).sub(p);
+        v.add(_size, v.compare(LT, 0)).intoArray(_signal, 0);
+    }
+
+    /** Return the entries of TABLE at the lanes of X. */
+    private IntVector gather(int[] table, IntVector x) {
+        x.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** The preferred shape of vectors on this machine. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** The wiring shared by all lanes. */
+    private final Wiring _wiring;
+
+    /** Number of lanes, and alphabet size. */
+    private final int _lanes, _size;
+
+    /** _rotates[i] is 1 iff the rotor in slot i rotates, else 0. */
+    private final int[] _rotates;
+
+    /** _notches[i][p] is 1 iff the rotor in slot i is at a notch at p. */
+    private final int[][] _notches;
+
+    /** The signals of the current group of lanes, the steps passed to
+     *  the next slot, and the index map of the current gather. */
+    private final int[] _signal, _carry, _index;
+
+}
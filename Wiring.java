@@ -0,0 +1,165 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable snapshot of the wiring of a configured Machine: the rotors
+ *  in its slots and its plugboard, compiled into index tables.  The rotor
+ *  settings are kept outside, as an array of per-slot settings in the form
+ *  returned by Machine.settings(), so that one Wiring can drive any number
+ *  of independent machine states.
+ *  @author Jennifer Hu
+ */
+class Wiring {
+
+    /** The wiring of M, whose rotors must all have been inserted. */
+    Wiring(Machine M) {
+        this(M.alphabet(), M.getRotorsList(), M.plugboard());
+    }
+
+    /** The wiring of a machine over ALPHA with ROTORS in its slots (the
+     *  reflector first) and plugboard PLUGBOARD (none if null). */
+    Wiring(Alphabet alpha, Rotor[] rotors, Permutation plugboard) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _numRotors = rotors.length;
+        _forward = new int[_numRotors][_size];
+        _backward = new int[_numRotors][_size];
+        _rotates = new boolean[_numRotors];
+        long[][] notches = new long[_numRotors][];
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor r = rotors[i];
+            if (r == null) {
+                throw error("rotor slot %d is empty", i);
+            }
+            Permutation perm = r.permutation();
+            for (int c = 0; c < _size; c += 1) {
+                _forward[i][c] = perm.permute(c);
+                _backward[i][c] = perm.invert(c);
+            }
+            _rotates[i] = r.rotates();
+            notches[i] = r.notchMask();
+        }
+        _stepping = new Stepping(_size, _rotates, notches);
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugboard[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return true iff the rotor in SLOT rotates. */
+    boolean rotates(int slot) {
+        return _rotates[slot];
+    }
+
+    /** Return true iff the rotor in SLOT is at a notch at POSN. */
+    boolean atNotch(int slot, int posn) {
+        return _stepping.atNotch(slot, posn);
+    }
+
+    /** Return the stepping of my rotors. */
+    Stepping stepping() {
+        return _stepping;
+    }
+
+    /** Return the table of the rotor in SLOT at setting 0: entry c is
+     *  the conversion of c entering from the right.  Not to be modified. */
+    int[] forward(int slot) {
+        return _forward[slot];
+    }
+
+    /** Return the inverse of forward(SLOT).  Not to be modified. */
+    int[] backward(int slot) {
+        return _backward[slot];
+    }
+
+    /** Return the plugboard table.  Not to be modified. */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Advance SETTINGS one keypress, as Machine.advanceRotors does.
+     *  Returns true iff a slot other than the last one advanced. */
+    boolean step(int[] settings) {
+        return _stepping.step(settings);
+    }
+
+    /** Return the conversion of C by the rotors at SETTINGS and the
+     *  plugboard, without stepping. */
+    int convert(int[] settings, int c) {
+        int n = _size;
+        int x = _plugboard[c];
+        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+            x = shift(_forward[i], x, settings[i]);
+        }
+        for (int i = 1; i < _numRotors; i += 1) {
+            x = shift(_backward[i], x, settings[i]);
+        }
+        return _plugboard[x];
+    }
+
+    /** Return the combined conversion of X, at SETTINGS, by every slot
+     *  but the last: the signal leaving the last rotor towards the
+     *  reflector at X returns to it at the result.  For as long as only
+     *  the last slot moves, this part of the conversion does not
+     *  change. */
+    int inner(int[] settings, int x) {
+        int last = _numRotors - 1;
+        for (int i = last - 1; i >= 0; i -= 1) {
+            x = shift(_forward[i], x, settings[i]);
+        }
+        for (int i = 1; i < last; i += 1) {
+            x = shift(_backward[i], x, settings[i]);
+        }
+        return x;
+    }
+
+    /** Return TABLE applied to X as seen by a rotor at setting POSN. */
+    int shift(int[] table, int x, int posn) {
+        int v = x + posn;
+        if (v >= _size) {
+            v -= _size;
+        }
+        v = table[v] - posn;
+        if (v < 0) {
+            v += _size;
+        }
+        return v;
+    }
+
+    /** Alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Forward and inverse tables per slot, at setting 0. */
+    private final int[][] _forward, _backward;
+
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** The stepping of the rotors, from their notches. */
+    private final Stepping _stepping;
+
+    /** Plugboard table (identity if there is no plugboard). */
+    private final int[] _plugboard;
+
+}
@@ -0,0 +1,295 @@
+package enigma;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Generates reproducible workloads for Main: a configuration with random
+ * wirings over a range of letters, and an input of setting lines and
+ * messages of random letters, both determined by a seed and the options
+ * (see main).  The configuration names its reflectors RA and RB, its
+ * fixed rotors F1, F2, ... and its moving rotors M1, M2, ...; each
+ * setting line chooses among them at random, with random positions and
+ * plugboard pairs.  Since ConfigReader reads cycles of the letters A-Z
+ * only, alphabets are ranges within A-Z.
+ *
+ * @author Jennifer Hu
+ */
+public final class Workload {
+
+    /**
+     * Write a workload, as specified by ARGS:
+     *     [options] CONFIG INPUT
+     * writes the configuration to the file CONFIG and the input to the
+     * file INPUT, and reports the number of message letters written.
+     * The options are
+     *     --seed=S         the seed of all random choices (default 0);
+     *     --alphabet=X-Y   the letters X to Y (default A-Z);
+     *     --rotors=N       slots, the reflector included (default 5);
+     *     --pawls=P        moving slots (default 3);
+     *     --catalog=C      moving rotors described (default P + 2);
+     *     --lines=L        message lines (default 1000);
+     *     --settings=K     a setting line before one message line in K,
+     *                      on average (default 10), besides the first;
+     *     --distinct=D     the setting lines are drawn from D different
+     *                      ones, or are all random if D is 0 (default);
+     *     --min=A, --max=B the letters of each message line (default 1
+     *                      to 80).
+     */
+    public static void main(String... args) {
+        try {
+            Workload workload = new Workload();
+            int first;
+            for (first = 0; first < args.length
+                     && args[first].startsWith("--"); first += 1) {
+                workload.option(args[first]);
+            }
+            if (args.length - first != 2) {
+                throw error("usage: Workload [options] CONFIG INPUT");
+            }
+            try (Writer config = new FileWriter(args[first]);
+                 Writer input = new FileWriter(args[first + 1])) {
+                config.write(workload.config());
+                System.out.printf("%d message letters%n",
+                                  workload.writeInput(input));
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A workload with the default options. */
+    Workload() {
+    }
+
+    /** Apply OPT, one of the options described for main. */
+    void option(String opt) {
+        String[] parts = opt.split("=", 2);
+        if (parts.length != 2) {
+            throw error("bad option: %s", opt);
+        }
+        String value = parts[1];
+        switch (parts[0]) {
+        case "--seed":
+            _seed = Long.parseLong(value);
+            break;
+        case "--alphabet":
+            if (!value.matches("[A-Z]-[A-Z]")
+                || value.charAt(0) >= value.charAt(2)) {
+                throw error("bad alphabet: %s", value);
+            }
+            _first = value.charAt(0);
+            _last = value.charAt(2);
+            break;
+        case "--rotors":
+            _rotors = Integer.parseInt(value);
+            break;
+        case "--pawls":
+            _pawls = Integer.parseInt(value);
+            break;
+        case "--catalog":
+            _catalog = Integer.parseInt(value);
+            break;
+        case "--lines":
+            _lines = Integer.parseInt(value);
+            break;
+        case "--settings":
+            _settingsEvery = Integer.parseInt(value);
+            break;
+        case "--distinct":
+            _distinct = Integer.parseInt(value);
+            break;
+        case "--min":
+            _minLength = Integer.parseInt(value);
+            break;
+        case "--max":
+            _maxLength = Integer.parseInt(value);
+            break;
+        default:
+            throw error("unknown option: %s", parts[0]);
+        }
+        _config = null;
+    }
+
+    /** Return the text of my configuration. */
+    String config() {
+        if (_config == null) {
+            check();
+            SplittableRandom random = new SplittableRandom(_seed);
+            StringBuilder result = new StringBuilder();
+            for (char c = _first; c <= _last; c += 1) {
+                result.append(c);
+            }
+            result.append(String.format("\n%d %d\n", _rotors, _pawls));
+            for (String name : REFLECTORS) {
+                char[] letters = shuffled(random);
+                result.append(name).append(" R");
+                for (int i = 0; i + 1 < letters.length; i += 2) {
+                    result.append(" (").append(letters[i])
+                        .append(letters[i + 1]).append(')');
+                }
+                result.append('\n');
+            }
+            for (int k = 1; k <= fixedRotors(); k += 1) {
+                result.append('F').append(k).append(" N (")
+                    .append(shuffled(random)).append(")\n");
+            }
+            for (int k = 1; k <= catalog(); k += 1) {
+                result.append('M').append(k).append(" M")
+                    .append(letter(random));
+                if (random.nextInt(4) == 0) {
+                    result.append(letter(random));
+                }
+                result.append(" (").append(shuffled(random)).append(")\n");
+            }
+            _config = result.toString();
+        }
+        return _config;
+    }
+
+    /** Write my input to OUT, and return the number of message letters
+     *  in it. */
+    long writeInput(Writer out) throws IOException {
+        config();
+        SplittableRandom random = new SplittableRandom(~_seed);
+        String[] settings = new String[_distinct];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = setting(random);
+        }
+        long letters = 0;
+        StringBuilder line = new StringBuilder();
+        for (int n = 0; n < _lines; n += 1) {
+            if (n == 0 || random.nextInt(_settingsEvery) == 0) {
+                out.write(settings.length == 0 ? setting(random)
+                          : settings[random.nextInt(settings.length)]);
+                out.write('\n');
+            }
+            int length = _minLength
+                + random.nextInt(_maxLength - _minLength + 1);
+            line.setLength(0);
+            for (int i = 0; i < length; i += 1) {
+                if (i > 0 && i % 5 == 0) {
+                    line.append(' ');
+                }
+                line.append(letter(random));
+            }
+            out.write(line.append('\n').toString());
+            letters += length;
+        }
+        return letters;
+    }
+
+    /** Return a random setting line for my configuration, chosen by
+     *  RANDOM. */
+    private String setting(SplittableRandom random) {
+        StringBuilder result = new StringBuilder("* ")
+            .append(REFLECTORS[random.nextInt(REFLECTORS.length)]);
+        for (int k : chosen(fixedRotors(), _rotors - _pawls - 1, random)) {
+            result.append(" F").append(k + 1);
+        }
+        for (int k : chosen(catalog(), _pawls, random)) {
+            result.append(" M").append(k + 1);
+        }
+        result.append(' ');
+        for (int i = 1; i < _rotors; i += 1) {
+            result.append(letter(random));
+        }
+        char[] letters = shuffled(random);
+        int pairs = random.nextInt(Math.min(_rotors, letters.length / 2)
+                                   + 1);
+        for (int i = 0; i < pairs; i += 1) {
+            result.append(" (").append(letters[2 * i])
+                .append(letters[2 * i + 1]).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Check that my options describe a workload. */
+    private void check() {
+        if (_rotors < 2 || _pawls < 0 || _pawls >= _rotors) {
+            throw error("bad number of rotors or pawls: %d %d", _rotors,
+                        _pawls);
+        }
+        if (catalog() < _pawls) {
+            throw error("catalog of %d rotors cannot fill %d slots",
+                        catalog(), _pawls);
+        }
+        if (_lines < 0 || _settingsEvery < 1 || _distinct < 0
+            || _minLength < 0 || _maxLength < _minLength) {
+            throw error("bad description of input");
+        }
+    }
+
+    /** Return the number of fixed rotors described, one more than the
+     *  slots that hold them, so that they vary. */
+    private int fixedRotors() {
+        return _rotors - _pawls - 1 > 0 ? _rotors - _pawls : 0;
+    }
+
+    /** Return the number of moving rotors described. */
+    private int catalog() {
+        return _catalog < 0 ? _pawls + 2 : _catalog;
+    }
+
+    /** Return a letter of my alphabet chosen by RANDOM. */
+    private char letter(SplittableRandom random) {
+        return (char) (_first + random.nextInt(_last - _first + 1));
+    }
+
+    /** Return the letters of my alphabet in an order chosen by RANDOM. */
+    private char[] shuffled(SplittableRandom random) {
+        char[] result = new char[_last - _first + 1];
+        for (int i = 0; i < result.length; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = (char) (_first + i);
+        }
+        return result;
+    }
+
+    /** Return K different numbers in 0..N-1 in an order chosen by
+     *  RANDOM. */
+    private static int[] chosen(int n, int k, SplittableRandom random) {
+        int[] all = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            all[i] = all[j];
+            all[j] = i;
+        }
+        return Arrays.copyOf(all, Math.max(k, 0));
+    }
+
+    /** Names of the reflectors. */
+    private static final String[] REFLECTORS = { "RA", "RB" };
+
+    /** Seed of all random choices. */
+    private long _seed;
+
+    /** First and last letters of the alphabet. */
+    private char _first = 'A', _last = 'Z';
+
+    /** Slots, moving slots, and moving rotors described (-1 for the
+     *  default). */
+    private int _rotors = 5, _pawls = 3, _catalog = -1;
+
+    /** Message lines, the average number of message lines per setting
+     *  line, and the number of distinct setting lines (0 for all
+     *  random). */
+    private int _lines = 1000, _settingsEvery = 10, _distinct;
+
+    /** Bounds on the letters of a message line. */
+    private int _minLength = 1, _maxLength = 80;
+
+    /** My configuration, once generated. */
+    private String _config;
+
+}
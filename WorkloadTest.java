@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the Workload and PerfGate classes.
+ *  @author
+ */
+public class WorkloadTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a workload with OPTIONS. */
+    private static Workload workload(String... options) {
+        Workload result = new Workload();
+        for (String opt : options) {
+            result.option(opt);
+        }
+        return result;
+    }
+
+    /** Return the input of W. */
+    private static String input(Workload w) throws IOException {
+        StringWriter result = new StringWriter();
+        w.writeInput(result);
+        return result.toString();
+    }
+
+    @Test
+    public void workloadsAreReproducibleAndValid() throws IOException {
+        String[] options = { "--seed=17", "--alphabet=D-U", "--rotors=7",
+                             "--pawls=4", "--lines=300", "--settings=3",
+                             "--distinct=5", "--min=0", "--max=40" };
+        Workload w = workload(options);
+        assertEquals(w.config(), workload(options).config());
+        assertEquals(input(w), input(workload(options)));
+        assertFalse(input(w).equals(input(workload("--seed=18"))));
+
+        Machine M = new ConfigReader(new Scanner(w.config())).read();
+        assertEquals(7, M.numRotors());
+        assertEquals(4, M.numPawls());
+        assertEquals(18, M.alphabet().size());
+        StringWriter text = new StringWriter();
+        long letters = w.writeInput(text);
+        String[] lines = text.toString().split("\n", -1);
+        assertTrue(lines[0].startsWith("*"));
+        SettingCache setups = new SettingCache();
+        KeystreamCache keystreams = new KeystreamCache();
+        long converted = 0, settings = 0;
+        for (String line : Arrays.copyOf(lines, lines.length - 1)) {
+            if (line.startsWith("*")) {
+                Main.setUp(M, line, setups, keystreams);
+                settings += 1;
+            } else {
+                converted += M.convert(line).length();
+            }
+        }
+        assertEquals(letters, converted);
+        assertTrue(settings > 50 && settings < 200);
+        assertTrue(setups.size() <= 5);
+    }
+
+    @Test
+    public void gateFlagsRegressions() throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        baseline.put("fast", 1000.0);
+        baseline.put("slow", 1000.0);
+        baseline.put("gone", 1000.0);
+        Map<String, Double> measured = new LinkedHashMap<>();
+        measured.put("fast", 900.0);
+        measured.put("slow", 800.0);
+        measured.put("new", 1.0);
+        assertEquals(Arrays.asList("slow"),
+                     PerfGate.regressions(baseline, measured, 0.15));
+        assertEquals(Arrays.asList("fast", "slow"),
+                     PerfGate.regressions(baseline, measured, 0.05));
+
+        File file = File.createTempFile("enigma", ".baseline");
+        try {
+            PerfGate.writeBaseline(file.getPath(), baseline);
+            assertEquals(baseline, PerfGate.readBaseline(file.getPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void gateFlagsFloors() {
+        Map<String, Double> measured = new LinkedHashMap<>();
+        measured.put("main-settings", 100.0);
+        assertTrue(PerfGate.belowFloors(measured).isEmpty());
+        measured.put("direct-settings", 150.0);
+        assertTrue(PerfGate.belowFloors(measured).isEmpty());
+        measured.put("direct-settings", 250.0);
+        assertEquals(Arrays.asList("main-settings at 0.40 of "
+                                   + "direct-settings (floor 0.5)"),
+                     PerfGate.belowFloors(measured));
+    }
+
+}